@@ -0,0 +1,38 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+//Детерминированные тестовые данные, одинаковые для всех прогонов
+final class BenchmarkData {
+
+    private static final String[] FIRSTNAMES = {"Ivan", "Petr", "Anna", "Maria", "Sergey", "Olga", "Dmitry", "Elena"};
+    private static final String[] LASTNAMES = {"Ivanov", "Petrov", "Sidorova", "Smirnov", "Kuznetsova", "Popov"};
+
+    private BenchmarkData() {
+    }
+
+    static UserDto user(int i) {
+        Random random = new Random(i);
+        return new UserDto(new UUID(random.nextLong(), random.nextLong()), FIRSTNAMES[i % FIRSTNAMES.length],
+                LASTNAMES[i % LASTNAMES.length], 18 + random.nextInt(60));
+    }
+
+    static UserEntity entity(int i) {
+        UserDto user = user(i);
+        return new UserEntity(user.getId(), user.getFirstname(), user.getLastname(), user.getAge());
+    }
+
+    static Page<UserDto> page(int size) {
+        List<UserDto> content = IntStream.range(0, size).mapToObj(BenchmarkData::user).toList();
+        return new PageImpl<>(content, PageRequest.of(0, size), 10_000);
+    }
+}
@@ -0,0 +1,115 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.repository.UserBatchRepository;
+import ru.bellintegrator.users_service.repository.UserCopyRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Вставка пачки create в Postgres тремя путями, результат - строк в секунду:
+//  JPA    - persist в одной сессии с JDBC-батчами Hibernate по 1000;
+//  INSERT - многострочный INSERT ... ON CONFLICT из UserBatchRepository.insertAll;
+//  COPY   - бинарный COPY в users_staging и слияние из UserCopyRepository.insertAll.
+//Таблица users создаётся в отдельной базе и очищается перед каждой итерацией:
+//  mvn -Pjmh test-compile exec:exec -Djmh.args="BulkInsertBenchmark -jvmArgs -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/users_bench"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BulkInsertBenchmark {
+
+    private static final int BATCH = 10_000;
+
+    @Param({"JPA", "INSERT", "COPY"})
+    public String path;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transaction;
+    private UserBatchRepository userBatchRepository;
+    private UserCopyRepository userCopyRepository;
+    private SessionFactory sessionFactory;
+
+    @Setup
+    public void setUp() {
+        String url = System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/users_bench");
+        String user = System.getProperty("benchmark.jdbc.user", "postgres");
+        String password = System.getProperty("benchmark.jdbc.password", "root");
+        dataSource = new SingleConnectionDataSource(url, user, password, true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS users (id UUID PRIMARY KEY, firstname VARCHAR(255),"
+                + " lastname VARCHAR(255), age INTEGER NOT NULL, version BIGINT NOT NULL DEFAULT 0)");
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        userBatchRepository = new UserBatchRepository(jdbcTemplate);
+        userCopyRepository = new UserCopyRepository(jdbcTemplate, 1);
+        if ("JPA".equals(path)) {
+            sessionFactory = new Configuration()
+                    .addAnnotatedClass(UserEntity.class)
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_URL, url)
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_USER, user)
+                    .setProperty(AvailableSettings.JAKARTA_JDBC_PASSWORD, password)
+                    .setProperty(AvailableSettings.POOL_SIZE, "1")
+                    .setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, "1000")
+                    .setProperty(AvailableSettings.ORDER_INSERTS, "true")
+                    .buildSessionFactory();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() {
+        jdbcTemplate.execute("TRUNCATE users");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (sessionFactory != null) sessionFactory.close();
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int insertBatch() {
+        return switch (path) {
+            case "JPA" -> {
+                try (Session session = sessionFactory.openSession()) {
+                    session.beginTransaction();
+                    for (int i = 0; i < BATCH; i++) {
+                        session.persist(new UserEntity(UUID.randomUUID(), "Ivan" + i, "Petrov" + i, 18 + i % 60));
+                    }
+                    session.getTransaction().commit();
+                }
+                yield BATCH;
+            }
+            case "INSERT" -> Objects.requireNonNull(transaction.execute(status -> userBatchRepository.insertAll(events()))).size();
+            case "COPY" -> Objects.requireNonNull(transaction.execute(status -> userCopyRepository.insertAll(events()))).size();
+            default -> throw new IllegalArgumentException(path);
+        };
+    }
+
+    private static List<UserEvent> events() {
+        List<UserEvent> events = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            events.add(new UserEvent(UserEventType.CREATE,
+                    new UserDto(UUID.randomUUID(), "Ivan" + i, "Petrov" + i, 18 + i % 60), null));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import ru.bellintegrator.users_service.kafka.UserEventDeserializer;
+import ru.bellintegrator.users_service.kafka.UserEventSerializer;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.concurrent.TimeUnit;
+
+//События пользователя в Kafka: JsonSerializer/JsonDeserializer с заголовками типа (как было в application.yml)
+//против бинарного UserEventSerializer/UserEventDeserializer. Размер сообщения печатается при запуске.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaSerializationBenchmark {
+
+    private static final String TOPIC = "USER_UPDATE";
+
+    private JsonSerializer<UserDto> jsonSerializer;
+    private JsonDeserializer<UserDto> jsonDeserializer;
+    private final UserEventSerializer binarySerializer = new UserEventSerializer();
+    private final UserEventDeserializer binaryDeserializer = new UserEventDeserializer();
+    private UserDto user;
+    private RecordHeaders jsonHeaders;
+    private byte[] jsonPayload;
+    private byte[] binaryPayload;
+
+    @Setup
+    public void setUp() {
+        jsonSerializer = new JsonSerializer<>();
+        jsonDeserializer = new JsonDeserializer<>(UserDto.class);
+        jsonDeserializer.addTrustedPackages("ru.bellintegrator.users_service.model");
+        user = BenchmarkData.user(1);
+        jsonHeaders = new RecordHeaders();
+        jsonPayload = jsonSerializer.serialize(TOPIC, jsonHeaders, user);
+        binaryPayload = binarySerializer.serialize(TOPIC, user);
+
+        int headerBytes = 0;
+        for (Header header : jsonHeaders) {
+            headerBytes += header.key().length() + header.value().length;
+        }
+        System.out.printf("%nbytes/message: json=%d (+%d in type headers), binary=%d%n",
+                jsonPayload.length, headerBytes, binaryPayload.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jsonSerializer.close();
+        jsonDeserializer.close();
+        binaryDeserializer.close();
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize() {
+        return jsonSerializer.serialize(TOPIC, new RecordHeaders(), user);
+    }
+
+    @Benchmark
+    public UserDto jsonDeserialize() {
+        return jsonDeserializer.deserialize(TOPIC, jsonHeaders, jsonPayload);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize() {
+        return binarySerializer.serialize(TOPIC, user);
+    }
+
+    @Benchmark
+    public UserDto binaryDeserialize() {
+        return binaryDeserializer.deserialize(TOPIC, binaryPayload);
+    }
+}
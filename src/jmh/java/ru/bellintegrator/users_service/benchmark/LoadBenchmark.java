@@ -0,0 +1,110 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+//Нагрузочный прогон против запущенного сервиса: сравнение платформенного режима и профиля virtual.
+//Не JMH-бенчмарк, а программа в профиле jmh, чтобы mvn test её не собирал. Запуск:
+//  mvn -Pjmh test-compile dependency:build-classpath -Dmdep.outputFile=target/jmh.classpath
+//  java -cp target/test-classes:$(cat target/jmh.classpath) ru.bellintegrator.users_service.benchmark.LoadBenchmark \
+//       http://localhost:8080 <concurrency> <seconds> <label>
+//Каждый клиент в цикле запрашивает GET /users/{id} и GET /users?page=..., печатаются rps и p50/p99/p99.9.
+public class LoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        String label = args.length > 3 ? args[3] : "run";
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        List<String> ids = sampleIds(client, baseUrl);
+        if (ids.isEmpty()) throw new IllegalStateException("No users to request, import some via POST /users/bulk");
+
+        //прогрев JIT и кэшей, результаты не учитываются
+        run(client, baseUrl, ids, concurrency, Math.max(5, seconds / 5));
+        Result result = run(client, baseUrl, ids, concurrency, seconds);
+
+        System.out.printf("%s: concurrency=%d requests=%d errors=%d throughput=%.0f req/s p50=%.2fms p99=%.2fms p99.9=%.2fms%n",
+                label, concurrency, result.latencies.length, result.errors, result.latencies.length / (double) seconds,
+                percentile(result.latencies, 0.50), percentile(result.latencies, 0.99), percentile(result.latencies, 0.999));
+    }
+
+    private static Result run(HttpClient client, String baseUrl, List<String> ids, int concurrency, int seconds) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Future<Result>> workers = new ArrayList<>(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> worker(client, baseUrl, ids, deadline)));
+            }
+        }
+        long[] latencies = new long[0];
+        long errors = 0;
+        for (Future<Result> worker : workers) {
+            Result result = worker.get();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + result.latencies.length);
+            System.arraycopy(result.latencies, 0, latencies, offset, result.latencies.length);
+            errors += result.errors;
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors);
+    }
+
+    private static Result worker(HttpClient client, String baseUrl, List<String> ids, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[1024];
+        int count = 0;
+        long errors = 0;
+        while (System.nanoTime() < deadline) {
+            String path = random.nextInt(4) == 0
+                    ? "/users?page=" + random.nextInt(10) + "&size=20"
+                    : "/users/" + ids.get(random.nextInt(ids.size()));
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(10)).build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() != 200) errors++;
+            } catch (Exception e) {
+                errors++;
+                continue;
+            }
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return new Result(Arrays.copyOf(latencies, count), errors);
+    }
+
+    private static List<String> sampleIds(HttpClient client, String baseUrl) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/users?size=1000")).build();
+        JsonNode page = new ObjectMapper().readTree(client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        List<String> ids = new ArrayList<>();
+        page.path("content").forEach(user -> ids.add(user.path("id").asText()));
+        return ids;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return Double.NaN;
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1_000_000.0;
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+}
@@ -0,0 +1,120 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.bellintegrator.users_service.cache.HotKeyTracker;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.controller.UserController;
+import ru.bellintegrator.users_service.logging.LogSamplingFilter;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.service.UserService;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+//Пропускная способность GET /users/{id} через MockMvc и настоящий UserController (сервис отвечает сразу) при:
+//  off     - логи выключены;
+//  sync    - FileAppender в потоке запроса, как прежний ConsoleAppender: общая блокировка и запись на каждую строку;
+//  async   - тот же файл через AsyncAppender (очередь 8192, neverBlock), как в logback-spring.xml;
+//  sampled - async плюс LogSamplingFilter с правилом контроллера из logback-spring.xml (1%, не больше 100 в секунду).
+//Вывод идёт в target/logging-benchmark.log:
+//  mvn -Pjmh test-compile exec:exec -Djmh.args="LoggingBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LoggingBenchmark {
+
+    @Param({"off", "sync", "async", "sampled"})
+    public String logging;
+
+    private MockMvc mockMvc;
+    private UUID id;
+
+    @Setup
+    public void setUp() {
+        id = UUID.randomUUID();
+        UserDto user = new UserDto(id, "Ivan", "Petrov", 30);
+        UserService userService = new UserService(null, null, null, null, null, null, null) {
+            @Override
+            public UserDto getUserById(UUID requested) {
+                return user;
+            }
+        };
+        configureLogging();
+        mockMvc = MockMvcBuilders.standaloneSetup(new UserController(userService, null,
+                new HotKeyTracker(null, new UserCacheProperties(), "none"))).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+    }
+
+    @Benchmark
+    public int getById() throws Exception {
+        return mockMvc.perform(get("/users/{id}", id)).andReturn().getResponse().getStatus();
+    }
+
+    private void configureLogging() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        if ("off".equals(logging)) {
+            root.setLevel(Level.OFF);
+            return;
+        }
+        root.setLevel(Level.INFO);
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p [%15.15t] %-40.40logger{39} : %m %kvp%n");
+        encoder.start();
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(context);
+        file.setFile("target/logging-benchmark.log");
+        file.setAppend(false);
+        file.setEncoder(encoder);
+        file.start();
+
+        Appender<ILoggingEvent> appender = file;
+        if (!"sync".equals(logging)) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(file);
+            async.start();
+            appender = async;
+        }
+        root.addAppender(appender);
+
+        if ("sampled".equals(logging)) {
+            LogSamplingFilter.Rule rule = new LogSamplingFilter.Rule();
+            rule.setLogger("ru.bellintegrator.users_service.controller");
+            rule.setSampleRate(0.01);
+            rule.setPermitsPerSecond(100);
+            LogSamplingFilter filter = new LogSamplingFilter();
+            filter.setContext(context);
+            filter.addRule(rule);
+            filter.start();
+            context.addTurboFilter(filter);
+        }
+    }
+}
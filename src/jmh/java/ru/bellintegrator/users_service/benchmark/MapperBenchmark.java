@@ -0,0 +1,38 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.mapper.UserMapper;
+import ru.bellintegrator.users_service.mapper.UserMapperImpl;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    private final UserMapper userMapper = new UserMapperImpl();
+    private UserEntity entity;
+    private UserDto dto;
+
+    @Setup
+    public void setUp() {
+        entity = BenchmarkData.entity(1);
+        dto = BenchmarkData.user(1);
+    }
+
+    @Benchmark
+    public UserDto toDomainUser() {
+        return userMapper.toDomainUser(entity);
+    }
+
+    @Benchmark
+    public UserEntity toUserEntity() {
+        return userMapper.toUserEntity(dto);
+    }
+}
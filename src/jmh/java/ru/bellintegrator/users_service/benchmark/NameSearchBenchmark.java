@@ -0,0 +1,97 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.bellintegrator.users_service.model.NameMatch;
+
+import java.sql.*;
+import java.util.concurrent.TimeUnit;
+
+//Поиск по фамилии на Postgres при 1M/10M строк: без индексов (seq scan) и с индексами из V3__name_search_indexes.
+//Запрос повторяет getAll: страница из 20 строк + count(*) по тому же условию, что строит UserSpecification.
+//Данные создаются в отдельной таблице users_search_bench и переиспользуются между запусками:
+//  mvn -Pjmh test-compile exec:exec -Djmh.args="NameSearchBenchmark -jvmArgs -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/users"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameSearchBenchmark {
+
+    private static final String TABLE = "users_search_bench";
+
+    @Param({"1000000", "10000000"})
+    public int rows;
+
+    @Param({"CONTAINS", "PREFIX"})
+    public NameMatch match;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Connection connection;
+    private PreparedStatement pageQuery;
+    private PreparedStatement countQuery;
+    private String pattern;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/users"),
+                System.getProperty("benchmark.jdbc.user", "postgres"),
+                System.getProperty("benchmark.jdbc.password", "root"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE
+                    + " (id UUID PRIMARY KEY, firstname VARCHAR(255), lastname VARCHAR(255), age INTEGER NOT NULL)");
+            if (count(statement) != rows) {
+                statement.execute("TRUNCATE " + TABLE);
+                //около 100 однофамильцев на каждую фамилию из 6 основ и номера
+                statement.execute("INSERT INTO " + TABLE + " SELECT gen_random_uuid(),"
+                        + " (ARRAY['Ivan','Petr','Anna','Maria','Sergey','Olga','Dmitry','Elena'])[1 + i % 8] || i,"
+                        + " (ARRAY['Ivanov','Petrov','Sidorova','Smirnov','Kuznetsova','Popov'])[1 + i % 6] || (i % (" + rows + " / 100)),"
+                        + " 18 + i % 60 FROM generate_series(1, " + rows + ") AS s(i)");
+            }
+            if (indexed) {
+                statement.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_lastname_trgm_idx ON " + TABLE
+                        + " USING gin (lower(lastname) gin_trgm_ops)");
+                statement.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_lastname_prefix_idx ON " + TABLE
+                        + " (lower(lastname) text_pattern_ops)");
+            } else {
+                statement.execute("DROP INDEX IF EXISTS " + TABLE + "_lastname_trgm_idx");
+                statement.execute("DROP INDEX IF EXISTS " + TABLE + "_lastname_prefix_idx");
+            }
+            statement.execute("ANALYZE " + TABLE);
+        }
+        String condition = " WHERE lower(lastname) LIKE ? ESCAPE '\\'";
+        pageQuery = connection.prepareStatement("SELECT id, firstname, lastname, age FROM " + TABLE + condition + " LIMIT 20");
+        countQuery = connection.prepareStatement("SELECT count(*) FROM " + TABLE + condition);
+        pattern = match == NameMatch.PREFIX ? "smirnov123%" : "%mirnov123%";
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public long getAllPage() throws SQLException {
+        pageQuery.setString(1, pattern);
+        long found = 0;
+        try (ResultSet resultSet = pageQuery.executeQuery()) {
+            while (resultSet.next()) found++;
+        }
+        countQuery.setString(1, pattern);
+        try (ResultSet resultSet = countQuery.executeQuery()) {
+            resultSet.next();
+            return found + resultSet.getLong(1);
+        }
+    }
+
+    private long count(Statement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM " + TABLE)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import ru.bellintegrator.users_service.config.UserKafkaProperties.ProducerPreset;
+import ru.bellintegrator.users_service.kafka.UserEventSerializer;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+//Пропускная способность продюсера user-events с каждым пресетом linger/batch/compression на встроенном брокере.
+//Операция - одна запись: пачка из USERS * EVENTS_PER_USER отправок до подтверждения всех
+//  mvn -Pjmh test-compile exec:exec -Djmh.args="ProducerThroughputBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProducerThroughputBenchmark {
+
+    private static final int USERS = 1_000;
+    private static final int EVENTS_PER_USER = 20;
+
+    @Param({"LATENCY", "BALANCED", "THROUGHPUT"})
+    public ProducerPreset preset;
+
+    private EmbeddedKafkaKraftBroker broker;
+    private DefaultKafkaProducerFactory<String, UserDto> producerFactory;
+    private KafkaTemplate<String, UserDto> kafkaTemplate;
+    private final List<UserEvent> events = new ArrayList<>(USERS * EVENTS_PER_USER);
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = new EmbeddedKafkaKraftBroker(1, 6, UserEvents.TOPIC);
+        broker.afterPropertiesSet();
+        Map<String, Object> configs = new HashMap<>(preset.settings());
+        configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        configs.put(ProducerConfig.ACKS_CONFIG, "all");
+        configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        producerFactory = new DefaultKafkaProducerFactory<>(configs, new StringSerializer(), new UserEventSerializer());
+        kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        for (int event = 0; event < EVENTS_PER_USER; event++) {
+            for (int i = 0; i < USERS; i++) {
+                UserDto user = BenchmarkData.user(i);
+                events.add(new UserEvent(UserEventType.UPDATE, new UserDto(user.getId(), "Name" + event, null, event), (long) event));
+            }
+        }
+        //метаданные топика и соединения
+        kafkaTemplate.send(UserEvents.toRecord(events.get(0))).get(30, TimeUnit.SECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        producerFactory.destroy();
+        broker.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(USERS * EVENTS_PER_USER)
+    public int sendAll() throws Exception {
+        List<CompletableFuture<SendResult<String, UserDto>>> sends = new ArrayList<>(events.size());
+        for (UserEvent event : events) {
+            sends.add(kafkaTemplate.send(UserEvents.toRecord(event)));
+        }
+        kafkaTemplate.flush();
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        return sends.size();
+    }
+}
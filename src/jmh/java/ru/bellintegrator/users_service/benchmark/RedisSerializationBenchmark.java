@@ -0,0 +1,67 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.web.config.SpringDataJacksonConfiguration;
+import ru.bellintegrator.users_service.cache.UserPageCodec;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.concurrent.TimeUnit;
+
+//Сериализация значений кэшей: user - JSON из RedisConfig, страницы users - JSON (как до бинарного кодека) и UserPageCodec
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisSerializationBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private final Jackson2JsonRedisSerializer<UserDto> userSerializer = new Jackson2JsonRedisSerializer<>(UserDto.class);
+    private Jackson2JsonRedisSerializer<Object> pageJsonSerializer;
+    private UserDto user;
+    private byte[] userJson;
+    private Page<UserDto> page;
+    private byte[] pageBinary;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new SpringDataJacksonConfiguration.PageModule(null));
+        pageJsonSerializer = new Jackson2JsonRedisSerializer<>(objectMapper, Object.class);
+        user = BenchmarkData.user(1);
+        userJson = userSerializer.serialize(user);
+        page = BenchmarkData.page(pageSize);
+        pageBinary = UserPageCodec.encode(page);
+    }
+
+    @Benchmark
+    public byte[] userToJson() {
+        return userSerializer.serialize(user);
+    }
+
+    @Benchmark
+    public UserDto userFromJson() {
+        return userSerializer.deserialize(userJson);
+    }
+
+    @Benchmark
+    public byte[] pageToJson() {
+        return pageJsonSerializer.serialize(page);
+    }
+
+    @Benchmark
+    public byte[] pageToBinary() {
+        return UserPageCodec.encode(page);
+    }
+
+    @Benchmark
+    public Page<UserDto> pageFromBinary() {
+        return UserPageCodec.decode(pageBinary, PageRequest.of(0, pageSize));
+    }
+}
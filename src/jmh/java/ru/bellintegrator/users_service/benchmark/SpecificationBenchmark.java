@@ -0,0 +1,70 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.model.UserCursor;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.concurrent.TimeUnit;
+
+import static ru.bellintegrator.users_service.repository.UserSpecification.*;
+
+//Построение criteria-запроса из UserFilter и keyset-курсора поверх Hibernate (H2 в памяти, к БД не обращается)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpecificationBenchmark {
+
+    private SessionFactory sessionFactory;
+    private EntityManager entityManager;
+    private UserFilter filter;
+    private UserCursor cursor;
+
+    @Setup
+    public void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(UserEntity.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:benchmark")
+                .setProperty("hibernate.hbm2ddl.auto", "none")
+                .buildSessionFactory();
+        entityManager = sessionFactory.createEntityManager();
+        filter = new UserFilter("iva", "pet", 20, 40);
+        cursor = UserCursor.after(Sort.Order.asc("lastname"), BenchmarkData.user(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManager.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public CriteriaQuery<UserEntity> filterSpecification() {
+        return build(byFilter(filter));
+    }
+
+    @Benchmark
+    public CriteriaQuery<UserEntity> filterWithKeyset() {
+        return build(byFilter(filter).and(keysetAfter(cursor)));
+    }
+
+    private CriteriaQuery<UserEntity> build(Specification<UserEntity> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<UserEntity> query = cb.createQuery(UserEntity.class);
+        Root<UserEntity> root = query.from(UserEntity.class);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        return predicate != null ? query.where(predicate) : query;
+    }
+}
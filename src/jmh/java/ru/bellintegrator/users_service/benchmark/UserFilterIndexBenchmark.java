@@ -0,0 +1,66 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import ru.bellintegrator.users_service.cache.UserFilterIndex;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.model.NameMatch;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Страница getAll из индекса в памяти: подстрока и префикс фамилии (около 100 совпадений), диапазон возраста, без фильтра
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class UserFilterIndexBenchmark {
+
+    private static final TopicPartition PARTITION = new TopicPartition("USER_CREATE", 0);
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"contains", "prefix", "age", "all"})
+    public String query;
+
+    private UserFilterIndex index;
+    private UserFilter filter;
+    private final Pageable pageable = PageRequest.of(0, 20);
+
+    @Setup
+    public void setUp() {
+        UserCacheProperties properties = new UserCacheProperties();
+        properties.getIndex().setWatermarkTtl(Duration.ofDays(1));
+        index = new UserFilterIndex(properties);
+        int surnames = rows / 100;
+        index.load(IntStream.range(0, rows).mapToObj(i -> {
+            UserDto user = BenchmarkData.user(i);
+            user.setLastname(user.getLastname() + (i % surnames));
+            return new UserEvent(UserEventType.CREATE, user, null);
+        }).iterator(), Map.of(PARTITION, 0L));
+        index.confirmWatermark(Map.of(PARTITION, 0L));
+        filter = switch (query) {
+            case "contains" -> new UserFilter(null, "mirnov123", null, null);
+            case "prefix" -> new UserFilter(null, "smirnov123", null, null, NameMatch.PREFIX);
+            case "age" -> new UserFilter(null, null, 30, 35);
+            default -> new UserFilter();
+        };
+    }
+
+    @Benchmark
+    public Page<UserDto> find() {
+        return index.find(filter, pageable).orElseThrow();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.bellintegrator.users_service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.bellintegrator.users_service.entity.TimeOrderedUserIdGenerator;
+import ru.bellintegrator.users_service.entity.UserIdGenerator;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.repository.UserCopyRepository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Вставка в users, где уже лежат rows строк, при случайных (v4) и упорядоченных по времени (v7) id.
+//Таблица заполняется одним COPY с id того же вида (время заливки печатается), затем измеряется вставка
+//пачек по 10 000 строк через UserCopyRepository.insertAll. В конце печатаются размер первичного ключа и WAL на строку.
+//Нужна отдельная база, таблица users в ней пересоздаётся:
+//  mvn -Pjmh test-compile exec:exec -Djmh.args="UserIdInsertBenchmark -jvmArgs -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/users_bench"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class UserIdInsertBenchmark {
+
+    private static final int BATCH = 10_000;
+
+    @Param({"10000000"})
+    public int rows;
+
+    @Param({"random", "time-ordered"})
+    public String generator;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transaction;
+    private UserCopyRepository userCopyRepository;
+    private UserIdGenerator ids;
+    private String walStart;
+    private long inserted;
+
+    @Setup
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/users_bench"),
+                System.getProperty("benchmark.jdbc.user", "postgres"),
+                System.getProperty("benchmark.jdbc.password", "root"), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS users");
+        jdbcTemplate.execute("CREATE TABLE users (id UUID PRIMARY KEY, firstname VARCHAR(255),"
+                + " lastname VARCHAR(255), age INTEGER NOT NULL, version BIGINT NOT NULL DEFAULT 0)");
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        userCopyRepository = new UserCopyRepository(jdbcTemplate, 1);
+        ids = "random".equals(generator) ? UUID::randomUUID : new TimeOrderedUserIdGenerator();
+
+        long started = System.currentTimeMillis();
+        transaction.executeWithoutResult(status -> userCopyRepository.replaceAll(new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public UserEvent next() {
+                return event(next++);
+            }
+        }));
+        jdbcTemplate.execute("VACUUM ANALYZE users");
+        jdbcTemplate.execute("CHECKPOINT");
+        System.out.printf("%nLoaded %d %s ids in %d ms, primary key %s%n", rows, generator,
+                System.currentTimeMillis() - started, primaryKeySize());
+        walStart = jdbcTemplate.queryForObject("SELECT pg_current_wal_lsn()::text", String.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Long wal = jdbcTemplate.queryForObject("SELECT pg_wal_lsn_diff(pg_current_wal_lsn(), ?::pg_lsn)::bigint",
+                Long.class, walStart);
+        System.out.printf("%n%s: inserted %d rows, %d WAL bytes per row, primary key %s%n",
+                generator, inserted, inserted > 0 ? Objects.requireNonNull(wal) / inserted : 0, primaryKeySize());
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int insertBatch() {
+        List<UserEvent> events = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) events.add(event(i));
+        int count = Objects.requireNonNull(transaction.execute(status -> userCopyRepository.insertAll(events))).size();
+        inserted += count;
+        return count;
+    }
+
+    private UserEvent event(int i) {
+        return new UserEvent(UserEventType.CREATE, new UserDto(ids.next(), "Ivan" + i, "Petrov" + i % 1000, 18 + i % 60), null);
+    }
+
+    private String primaryKeySize() {
+        return jdbcTemplate.queryForObject("SELECT pg_size_pretty(pg_relation_size('users_pkey'))", String.class);
+    }
+}
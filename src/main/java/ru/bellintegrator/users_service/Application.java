@@ -2,10 +2,14 @@ package ru.bellintegrator.users_service;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableCaching
+@EnableScheduling
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class Application {
     static void main(String[] args) {
         SpringApplication.run(Application.class, args);
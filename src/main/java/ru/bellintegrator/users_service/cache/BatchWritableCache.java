@@ -0,0 +1,12 @@
+package ru.bellintegrator.users_service.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+//Кэш, в который прогрев загружает пачку ключей одним запросом в БД и пишет её одним обращением
+public interface BatchWritableCache {
+
+    //Загруженные значения не кладутся, если кэш инвалидировали во время загрузки; возвращает число записанных
+    <K> int loadAll(Collection<K> keys, Function<Collection<K>, Map<K, ?>> loader);
+}
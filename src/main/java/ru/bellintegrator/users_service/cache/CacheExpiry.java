@@ -0,0 +1,42 @@
+package ru.bellintegrator.users_service.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+//Срок свежести записей кэша: TTL со случайным разбросом и вероятностное раннее обновление (XFetch).
+//Запись обновляется заранее, если now - loadMillis * beta * ln(rand) >= freshUntil: дорогие в загрузке
+//и часто читаемые ключи обновляются до истечения, редкие просто истекают
+public class CacheExpiry {
+
+    private final long ttlMillis;
+    private final double jitter;
+    private final double beta;
+    private final DoubleSupplier random;
+
+    public CacheExpiry(Duration ttl, double jitter, double beta) {
+        this(ttl, jitter, beta, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    CacheExpiry(Duration ttl, double jitter, double beta, DoubleSupplier random) {
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("TTL jitter must be in [0, 1): " + jitter);
+        }
+        this.ttlMillis = ttl.toMillis();
+        this.jitter = jitter;
+        this.beta = beta;
+        this.random = random;
+    }
+
+    //Разброс только сокращает TTL: запись не живёт дольше настроенного срока
+    public long freshUntil(long now) {
+        return now + ttlMillis - (long) (ttlMillis * jitter * random.getAsDouble());
+    }
+
+    public boolean refreshEarly(long now, long freshUntil, long loadMillis) {
+        if (beta <= 0 || loadMillis <= 0 || now >= freshUntil) {
+            return false;
+        }
+        return now - loadMillis * beta * Math.log(1 - random.getAsDouble()) >= freshUntil;
+    }
+}
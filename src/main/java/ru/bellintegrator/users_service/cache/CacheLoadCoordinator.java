@@ -0,0 +1,190 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+//Загрузки по промаху кэшей user/users. В инстансе на ключ идёт одна загрузка, остальные запросы ждут её результат.
+//С арендой (users.cache.loading.lease-enabled) ключ загружает один инстанс: остальные опрашивают кэш до lease-wait
+//и только потом загружают сами, поэтому падение держателя аренды задерживает запрос, но не ломает его.
+//Фоновые обновления (refresh) идут в ограниченном пуле и молча отбрасываются, если очередь полна
+@Slf4j
+@Component
+public class CacheLoadCoordinator implements DisposableBean {
+
+    static final String LEASE_PREFIX = "users:lease:";
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final UserCacheProperties.Loading properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> queuedRefreshes = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor refreshExecutor;
+
+    public CacheLoadCoordinator(StringRedisTemplate redisTemplate, UserCacheProperties cacheProperties,
+                                MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = cacheProperties.getLoading();
+        this.meterRegistry = meterRegistry;
+        this.refreshExecutor = new ThreadPoolExecutor(properties.getRefreshThreads(), properties.getRefreshThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getRefreshQueueSize()),
+                Thread.ofPlatform().name("cache-refresh-", 0).daemon().factory());
+    }
+
+    //Значение для ключа при промахе: своя загрузка, результат уже идущей загрузки или значение,
+    //которое положил в кэш держатель аренды (recheck)
+    @SuppressWarnings("unchecked")
+    public <T> T load(String cache, String key, Callable<T> loader, Supplier<T> recheck) throws Exception {
+        String flightKey = cache + ":" + key;
+        while (true) {
+            CompletableFuture<Object> flight = new CompletableFuture<>();
+            CompletableFuture<Object> running = inFlight.putIfAbsent(flightKey, flight);
+            if (running == null) {
+                try {
+                    T value = leased(cache, key, loader, recheck);
+                    flight.complete(value);
+                    return value;
+                } catch (Throwable e) {
+                    flight.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(flightKey, flight);
+                }
+            }
+            //пустой результат - фоновое обновление уступило аренду другому инстансу, грузим сами
+            Object value = await(running);
+            if (value != null) {
+                count(cache, "coalesced");
+                return (T) value;
+            }
+        }
+    }
+
+    //Обновление в фоне; пропускается, если ключ уже загружается или обновляется здесь либо на другом инстансе
+    public void refresh(String cache, String key, String reason, Callable<?> loader) {
+        String flightKey = cache + ":" + key;
+        if (inFlight.containsKey(flightKey) || !queuedRefreshes.add(flightKey)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                queuedRefreshes.remove(flightKey);
+                runRefresh(cache, key, flightKey, loader);
+            });
+            meterRegistry.counter("users.cache.refreshes", "cache", cache, "reason", reason).increment();
+        } catch (RejectedExecutionException e) {
+            //очередь полна: запись обновит следующее чтение или загрузка после истечения
+            queuedRefreshes.remove(flightKey);
+            meterRegistry.counter("users.cache.refreshes", "cache", cache, "reason", "rejected").increment();
+        }
+    }
+
+    private void runRefresh(String cache, String key, String flightKey, Callable<?> loader) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(flightKey, flight) != null) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        try {
+            if (!tryLease(cache, key, token)) {
+                flight.complete(null);
+                return;
+            }
+            try {
+                flight.complete(loader.call());
+            } finally {
+                release(cache, key, token);
+            }
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            log.warn("Background refresh of {}::{} failed: {}", cache, key, e.toString());
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    private <T> T leased(String cache, String key, Callable<T> loader, Supplier<T> recheck) throws Exception {
+        String token = UUID.randomUUID().toString();
+        if (tryLease(cache, key, token)) {
+            count(cache, "loaded");
+            try {
+                return loader.call();
+            } finally {
+                release(cache, key, token);
+            }
+        }
+        long deadline = System.nanoTime() + properties.getLeaseWait().toNanos();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(properties.getLeasePollInterval());
+            T value = recheck.get();
+            if (value != null) {
+                count(cache, "lease-waited");
+                return value;
+            }
+        }
+        count(cache, "lease-expired");
+        return loader.call();
+    }
+
+    //Без аренды или при недоступном Redis загрузка идёт как без координации между инстансами
+    private boolean tryLease(String cache, String key, String token) {
+        if (!properties.isLeaseEnabled()) {
+            return true;
+        }
+        try {
+            return !Boolean.FALSE.equals(redisTemplate.opsForValue()
+                    .setIfAbsent(LEASE_PREFIX + cache + ":" + key, token, properties.getLeaseTtl()));
+        } catch (Exception e) {
+            log.warn("Cache lease unavailable, loading {}::{} without it: {}", cache, key, e.getMessage());
+            return true;
+        }
+    }
+
+    //Удаляется только своя аренда: чужую, взятую после истечения нашей, не трогаем
+    private void release(String cache, String key, String token) {
+        if (!properties.isLeaseEnabled()) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(LEASE_PREFIX + cache + ":" + key), token);
+        } catch (Exception e) {
+            log.warn("Failed to release cache lease {}::{}: {}", cache, key, e.getMessage());
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> running) throws Exception {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            if (e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    private void count(String cache, String outcome) {
+        meterRegistry.counter("users.cache.loads", "cache", cache, "outcome", outcome).increment();
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,10 @@
+package ru.bellintegrator.users_service.cache;
+
+//Запись RefreshingCache в Redis: значение, момент, до которого оно считается свежим, и время его загрузки
+//для раннего обновления (0 - неизвестно). Redis хранит запись дольше - на время stale-while-revalidate
+public record CachedValue<T>(T value, long freshUntil, long loadMillis) {
+
+    boolean isStale(long now) {
+        return now >= freshUntil;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.bellintegrator.users_service.cache;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//Count-Min sketch с top-K: оценка частоты ключа сверху (ошибка не больше e/width от всех обращений
+//с вероятностью 1 - e^-depth) и capacity самых частых ключей. Память не зависит от числа разных ключей.
+//decay делит счётчики пополам, чтобы горячими оставались недавние ключи
+final class FrequencySketch<K> {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+    private final int capacity;
+    private final Map<K, Integer> top = new ConcurrentHashMap<>();
+    //частота, с которой новый ключ вытесняет самый редкий из top; 0 - пока top не заполнен
+    private volatile int admission;
+
+    FrequencySketch(int capacity, int depth) {
+        this.capacity = capacity;
+        this.depth = depth;
+        //по 8 счётчиков в строке на отслеживаемый ключ
+        int width = Integer.highestOneBit(Math.max(64, capacity * 8 - 1)) << 1;
+        this.mask = width - 1;
+        this.counters = new AtomicIntegerArray(width * depth);
+    }
+
+    int record(K key) {
+        int hash = spread(key.hashCode());
+        int step = spread(hash) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + ((hash + row * step) & mask);
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        if (top.replace(key, estimate) == null && estimate > admission) {
+            admit(key, estimate);
+        }
+        return estimate;
+    }
+
+    //Ключи по убыванию оценки частоты
+    List<K> top() {
+        return top.entrySet().stream()
+                .sorted(Map.Entry.<K, Integer>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    //Оценки частот в top - для публикации горячего набора
+    Map<K, Integer> topFrequencies() {
+        return Map.copyOf(top);
+    }
+
+    void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.updateAndGet(i, count -> count >>> 1);
+        }
+        top.replaceAll((key, count) -> count >>> 1);
+        admission >>>= 1;
+    }
+
+    private synchronized void admit(K key, int estimate) {
+        top.put(key, estimate);
+        if (top.size() <= capacity) {
+            return;
+        }
+        Map.Entry<K, Integer> rarest = top.entrySet().stream().min(Comparator.comparingInt(Map.Entry::getValue)).orElseThrow();
+        top.remove(rarest.getKey());
+        admission = top.values().stream().mapToInt(Integer::intValue).min().orElse(0);
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        hash *= 0xac4c1b51;
+        return hash ^ (hash >>> 15);
+    }
+}
@@ -0,0 +1,116 @@
+package ru.bellintegrator.users_service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+//Самые частые запросы getUserById и страниц getAll на этом инстансе - набор для прогрева (UserCacheWarmer).
+//Частоты считает FrequencySketch в памяти. Горячий набор периодически публикуется в Redis
+//(users:hot:user, users:hot:pages - ZSET с оценкой частоты), откуда его берёт инстанс после рестарта
+@Slf4j
+@Component
+public class HotKeyTracker {
+
+    static final String HOT_USERS_KEY = "users:hot:user";
+    static final String HOT_PAGES_KEY = "users:hot:pages";
+
+    private final StringRedisTemplate redisTemplate;
+    private final UserCacheProperties.Warmup properties;
+    private final boolean enabled;
+    private final FrequencySketch<UUID> users;
+    private final FrequencySketch<HotPage> pages;
+
+    public HotKeyTracker(StringRedisTemplate redisTemplate, UserCacheProperties cacheProperties,
+                         @Value("${spring.cache.type:none}") String cacheType) {
+        this.redisTemplate = redisTemplate;
+        this.properties = cacheProperties.getWarmup();
+        this.enabled = properties.isEnabled() && "redis".equalsIgnoreCase(cacheType);
+        this.users = new FrequencySketch<>(properties.getUsers(), properties.getSketchDepth());
+        this.pages = new FrequencySketch<>(properties.getPages(), properties.getSketchDepth());
+    }
+
+    public void recordUser(UUID id) {
+        if (enabled) users.record(id);
+    }
+
+    //Без постраничности (unpaged) страница в прогрев не попадает: её размер не ограничен
+    public void recordPage(UserFilter filter, Pageable pageable) {
+        if (enabled && pageable.isPaged()) pages.record(new HotPage(filter, pageable));
+    }
+
+    //Свой горячий набор, дополненный опубликованным в Redis (после рестарта свой пуст)
+    public List<UUID> hotUsers() {
+        return hot(users, HOT_USERS_KEY, properties.getUsers(), UUID::fromString);
+    }
+
+    public List<HotPage> hotPages() {
+        return hot(pages, HOT_PAGES_KEY, properties.getPages(), HotPage::decode);
+    }
+
+    @Scheduled(initialDelayString = "${users.cache.warmup.decay-interval:PT10M}",
+            fixedDelayString = "${users.cache.warmup.decay-interval:PT10M}")
+    public void decay() {
+        if (!enabled) return;
+        users.decay();
+        pages.decay();
+    }
+
+    //Оценки частот разных инстансов перезаписывают друг друга: важен состав набора, а не точный счёт
+    @Scheduled(initialDelayString = "${users.cache.warmup.publish-interval:PT1M}",
+            fixedDelayString = "${users.cache.warmup.publish-interval:PT1M}")
+    public void publish() {
+        if (!enabled) return;
+        try {
+            publish(HOT_USERS_KEY, users.topFrequencies(), UUID::toString, properties.getUsers());
+            publish(HOT_PAGES_KEY, pages.topFrequencies(), HotPage::encode, properties.getPages());
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish hot cache keys: {}", e.getMessage());
+        }
+    }
+
+    private <K> void publish(String key, Map<K, Integer> frequencies, Function<K, String> encoder, int limit) {
+        if (frequencies.isEmpty()) return;
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            frequencies.forEach((hotKey, frequency) -> connection.zSetCommands()
+                    .zAdd(rawKey, frequency, encoder.apply(hotKey).getBytes(StandardCharsets.UTF_8)));
+            //в наборе остаются limit самых частых
+            connection.zSetCommands().zRemRange(rawKey, 0, -limit - 1L);
+            connection.keyCommands().pExpire(rawKey, properties.getHotSetTtl().toMillis());
+            return null;
+        });
+    }
+
+    private <K> List<K> hot(FrequencySketch<K> sketch, String key, int limit, Function<String, K> decoder) {
+        Set<K> hot = new LinkedHashSet<>(sketch.top());
+        if (hot.size() < limit) {
+            try {
+                Set<String> published = redisTemplate.opsForZSet().reverseRange(key, 0, limit - 1L);
+                if (published != null) {
+                    for (String value : published) {
+                        if (hot.size() >= limit) break;
+                        try {
+                            hot.add(decoder.apply(value));
+                        } catch (RuntimeException e) {
+                            log.debug("Dropping malformed hot key {}: {}", value, e.getMessage());
+                            redisTemplate.opsForZSet().remove(key, value);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to read published hot cache keys: {}", e.getMessage());
+            }
+        }
+        return List.copyOf(hot);
+    }
+}
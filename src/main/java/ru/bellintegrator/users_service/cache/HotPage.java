@@ -0,0 +1,39 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+//Запрос страницы getAll из горячего набора: нормализованный фильтр и страница.
+//Формат в Redis: cacheKey фильтра \u001e page:size:property,DIRECTION;...
+public record HotPage(UserFilter filter, Pageable pageable) {
+
+    private static final String SEPARATOR = "\u001e";
+
+    public HotPage {
+        filter = filter.normalized();
+    }
+
+    public String encode() {
+        String sort = pageable.getSort().stream()
+                .map(order -> order.getProperty() + "," + order.getDirection())
+                .collect(Collectors.joining(";"));
+        return filter.cacheKey() + SEPARATOR + pageable.getPageNumber() + ":" + pageable.getPageSize() + ":" + sort;
+    }
+
+    public static HotPage decode(String value) {
+        String[] parts = value.split(SEPARATOR, 2);
+        String[] page = parts[1].split(":", 3);
+        Sort sort = Sort.by(Arrays.stream(page[2].split(";"))
+                .filter(order -> !order.isEmpty())
+                .map(order -> order.split(",", 2))
+                .map(order -> new Sort.Order(Sort.Direction.valueOf(order[1]), order[0]))
+                .toList());
+        return new HotPage(UserFilter.fromCacheKey(parts[0]),
+                PageRequest.of(Integer.parseInt(page[0]), Integer.parseInt(page[1]), sort));
+    }
+}
@@ -0,0 +1,229 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+//Кэш Redis со значениями в CachedValue, для @Cacheable(sync = true).
+//Промах загружается через CacheLoadCoordinator - одна загрузка на ключ. Запись старше ttl ещё отдаётся
+//(Redis хранит её ttl + stale-while-revalidate), а свежее значение загружается в фоне. Срок свежести
+//и раннее обновление горячих ключей до истечения задаёт CacheExpiry.
+//Загрузка, во время которой инвалидировали её ключ или весь кэш, результат не кладёт: он мог быть прочитан
+//до изменения. Ключи учитываются по полосам хэша - память не растёт, а совпадение полос лишь пропускает запись.
+//Инвалидации с других инстансов приходят через invalidated, иначе их загрузки вернули бы удалённое значение.
+//С meterRegistry публикует cache.gets/puts/evictions, как TwoLevelCache; без него метрики считает обёртка
+public class RefreshingCache implements Cache, BatchWritableCache {
+
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    private final Cache delegate;
+    private final CacheExpiry expiry;
+    private final CacheLoadCoordinator coordinator;
+    private final RedisConnectionFactory connectionFactory;
+    private final LongSupplier clock;
+    private final AtomicLong clears = new AtomicLong();
+    private final AtomicLongArray keyInvalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter puts;
+    private final Counter evictions;
+
+    public RefreshingCache(Cache delegate, CacheExpiry expiry, CacheLoadCoordinator coordinator,
+                           RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        this(delegate, expiry, coordinator, connectionFactory, meterRegistry, System::currentTimeMillis);
+    }
+
+    RefreshingCache(Cache delegate, CacheExpiry expiry, CacheLoadCoordinator coordinator,
+                    RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.delegate = delegate;
+        this.expiry = expiry;
+        this.coordinator = coordinator;
+        this.connectionFactory = connectionFactory;
+        this.clock = clock;
+        String name = delegate.getName();
+        this.hits = meterRegistry != null
+                ? Counter.builder("cache.gets").tag("cache", name).tag("result", "hit").register(meterRegistry) : null;
+        this.misses = meterRegistry != null
+                ? Counter.builder("cache.gets").tag("cache", name).tag("result", "miss").register(meterRegistry) : null;
+        this.puts = meterRegistry != null ? Counter.builder("cache.puts").tag("cache", name).register(meterRegistry) : null;
+        this.evictions = meterRegistry != null
+                ? Counter.builder("cache.evictions").tag("cache", name).register(meterRegistry) : null;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CachedValue<?> entry = entry(key);
+        increment(entry != null ? hits : misses, 1);
+        return entry != null ? new SimpleValueWrapper(entry.value()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CachedValue<T> entry = (CachedValue<T>) entry(key);
+        increment(entry != null ? hits : misses, 1);
+        if (entry != null) {
+            long now = clock.getAsLong();
+            if (entry.isStale(now)) {
+                coordinator.refresh(getName(), String.valueOf(key), "stale", () -> load(key, valueLoader));
+            } else if (expiry.refreshEarly(now, entry.freshUntil(), entry.loadMillis())) {
+                coordinator.refresh(getName(), String.valueOf(key), "early", () -> load(key, valueLoader));
+            }
+            return entry.value();
+        }
+        try {
+            return coordinator.load(getName(), String.valueOf(key), () -> load(key, valueLoader), () -> {
+                CachedValue<T> loaded = (CachedValue<T>) entry(key);
+                return loaded != null ? loaded.value() : null;
+            });
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value != null) {
+            delegate.put(key, wrap(value, 0));
+            increment(puts, 1);
+        }
+    }
+
+    @Override
+    public <K> int loadAll(Collection<K> keys, Function<Collection<K>, Map<K, ?>> loader) {
+        Map<K, Long> generations = new HashMap<>();
+        for (K key : keys) generations.put(key, generation(key));
+        long started = clock.getAsLong();
+        Map<K, ?> values = loader.apply(keys);
+        if (values.isEmpty()) {
+            return 0;
+        }
+        //время загрузки пачки на ключ - грубая оценка для раннего обновления
+        long loadMillis = (clock.getAsLong() - started) / values.size();
+        Map<K, CachedValue<Object>> entries = new LinkedHashMap<>();
+        values.forEach((key, value) -> {
+            Long before = generations.get(key);
+            if (value != null && before != null && before == generation(key)) entries.put(key, wrap(value, loadMillis));
+        });
+        if (delegate instanceof RedisCache redisCache && connectionFactory != null) {
+            pipelinedPut(redisCache, entries);
+        } else {
+            entries.forEach(delegate::put);
+        }
+        increment(puts, entries.size());
+        return entries.size();
+    }
+
+    @Override
+    public void evict(Object key) {
+        invalidated(key);
+        delegate.evict(key);
+        increment(evictions, 1);
+    }
+
+    @Override
+    public void clear() {
+        invalidated(null);
+        delegate.clear();
+        increment(evictions, 1);
+    }
+
+    //Отмечает инвалидацию ключа (null - всего кэша) для идущих загрузок, не трогая Redis.
+    //Вызывается и при сообщении об инвалидации от другого инстанса
+    void invalidated(Object key) {
+        if (key == null) {
+            clears.incrementAndGet();
+        } else {
+            keyInvalidations.incrementAndGet(stripe(key));
+        }
+    }
+
+    private <T> T load(Object key, Callable<T> valueLoader) throws Exception {
+        long generationBefore = generation(key);
+        long started = clock.getAsLong();
+        T value = valueLoader.call();
+        if (value != null && generation(key) == generationBefore) {
+            delegate.put(key, wrap(value, clock.getAsLong() - started));
+            increment(puts, 1);
+        }
+        return value;
+    }
+
+    //Оба счётчика только растут, поэтому сумма меняется при любой инвалидации ключа или всего кэша
+    private long generation(Object key) {
+        return clears.get() + keyInvalidations.get(stripe(key));
+    }
+
+    //По строковому виду ключа: так же ключи приходят в сообщениях об инвалидации (TwoLevelCache.localKey)
+    private static int stripe(Object key) {
+        return Math.floorMod(String.valueOf(key).hashCode(), INVALIDATION_STRIPES);
+    }
+
+    private static void increment(Counter counter, int amount) {
+        if (counter != null) counter.increment(amount);
+    }
+
+    //Ключи, значения и TTL - по конфигурации самого RedisCache, как при RedisCache.put, но одним конвейером
+    private void pipelinedPut(RedisCache cache, Map<?, CachedValue<Object>> entries) {
+        RedisCacheConfiguration config = cache.getCacheConfiguration();
+        String prefix = config.getKeyPrefixFor(cache.getName());
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.openPipeline();
+            entries.forEach((key, value) -> connection.stringCommands().set(
+                    ByteUtils.getBytes(config.getKeySerializationPair().write(prefix + key)),
+                    ByteUtils.getBytes(config.getValueSerializationPair().write(value)),
+                    Expiration.from(config.getTtlFunction().getTimeToLive(key, value)),
+                    RedisStringCommands.SetOption.upsert()));
+            connection.closePipeline();
+        }
+    }
+
+    private CachedValue<Object> wrap(Object value, long loadMillis) {
+        long now = clock.getAsLong();
+        return new CachedValue<>(value, expiry.freshUntil(now), loadMillis);
+    }
+
+    private CachedValue<?> entry(Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        return wrapper != null ? (CachedValue<?>) wrapper.get() : null;
+    }
+}
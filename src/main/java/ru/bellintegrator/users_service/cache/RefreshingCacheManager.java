@@ -0,0 +1,49 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Оборачивает кэши Redis с заданным сроком свежести в RefreshingCache; остальные кэши отдаются как есть.
+//meterRegistry - null, если кэши оборачивает TwoLevelCache со своими метриками
+public class RefreshingCacheManager implements CacheManager {
+
+    private final CacheManager remote;
+    private final Map<String, CacheExpiry> expiries;
+    private final CacheLoadCoordinator coordinator;
+    private final RedisConnectionFactory connectionFactory;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public RefreshingCacheManager(CacheManager remote, Map<String, CacheExpiry> expiries, CacheLoadCoordinator coordinator,
+                                  RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.expiries = expiries;
+        this.coordinator = coordinator;
+        this.connectionFactory = connectionFactory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    private Cache createCache(String name) {
+        Cache remoteCache = remote.getCache(name);
+        CacheExpiry expiry = expiries.get(name);
+        return remoteCache != null && expiry != null
+                ? new RefreshingCache(remoteCache, expiry, coordinator, connectionFactory, meterRegistry) : remoteCache;
+    }
+}
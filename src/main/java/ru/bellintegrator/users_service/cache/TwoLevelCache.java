@@ -0,0 +1,194 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+//Кэш из двух уровней: L1 в памяти процесса (Caffeine), L2 в Redis.
+//Удаление записи рассылается остальным инстансам, чтобы они сбросили свой L1.
+public class TwoLevelCache implements Cache, BatchWritableCache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Cache remote;
+    //ключ удалённой записи или null при полной очистке
+    private final Consumer<String> invalidationPublisher;
+
+    private final Counter l1Hits;
+    private final Counter l1Misses;
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter puts;
+    private final Counter evictions;
+
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<String, Object> local, Cache remote,
+                         Consumer<String> invalidationPublisher, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.invalidationPublisher = invalidationPublisher;
+        this.l1Hits = counter(meterRegistry, "l1", "hit");
+        this.l1Misses = counter(meterRegistry, "l1", "miss");
+        this.l2Hits = counter(meterRegistry, "l2", "hit");
+        this.l2Misses = counter(meterRegistry, "l2", "miss");
+        //общие для обоих уровней счётчики с именами стандартных метрик кэшей Spring Boot
+        this.hits = Counter.builder("cache.gets").tag("cache", name).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", name).tag("result", "miss").register(meterRegistry);
+        this.puts = Counter.builder("cache.puts").tag("cache", name).register(meterRegistry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", name).register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        Object value = local.getIfPresent(localKey);
+        if (value != null) {
+            l1Hits.increment();
+            hits.increment();
+            return new SimpleValueWrapper(value);
+        }
+        l1Misses.increment();
+
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper == null) {
+            l2Misses.increment();
+            misses.increment();
+            return null;
+        }
+        l2Hits.increment();
+        hits.increment();
+        if (wrapper.get() != null) {
+            local.put(localKey, wrapper.get());
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        Object cached = local.getIfPresent(localKey);
+        if (cached != null) {
+            l1Hits.increment();
+            hits.increment();
+            return (T) cached;
+        }
+        l1Misses.increment();
+
+        //загрузку, её объединение и отдачу устаревшего значения решает L2 (RefreshingCache)
+        AtomicBoolean loaded = new AtomicBoolean();
+        T value = remote.get(key, () -> {
+            loaded.set(true);
+            return valueLoader.call();
+        });
+        (loaded.get() ? l2Misses : l2Hits).increment();
+        (loaded.get() ? misses : hits).increment();
+        if (loaded.get()) {
+            puts.increment();
+        }
+        if (value != null) {
+            local.put(localKey, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        puts.increment();
+        if (value != null) {
+            local.put(localKey(key), value);
+        }
+    }
+
+    //Прогрев пишет только в L2: L1 инстансов заполнится при чтении
+    @Override
+    public <K> int loadAll(Collection<K> keys, Function<Collection<K>, Map<K, ?>> loader) {
+        int written;
+        if (remote instanceof BatchWritableCache batchCache) {
+            written = batchCache.loadAll(keys, loader);
+        } else {
+            written = 0;
+            for (Map.Entry<K, ?> entry : loader.apply(keys).entrySet()) {
+                if (entry.getValue() != null) {
+                    remote.put(entry.getKey(), entry.getValue());
+                    written++;
+                }
+            }
+        }
+        puts.increment(written);
+        return written;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        evictions.increment();
+        local.invalidate(localKey(key));
+        invalidationPublisher.accept(localKey(key));
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        evictions.increment();
+        local.invalidateAll();
+        invalidationPublisher.accept(null);
+    }
+
+    //Вызывается при получении сообщения об инвалидации от другого инстанса.
+    //Загрузки L2 этого инстанса, начатые до изменения, не должны записать прочитанное ими значение
+    void invalidateLocal(String localKey) {
+        if (remote instanceof RefreshingCache refreshingCache) {
+            refreshingCache.invalidated(localKey);
+        }
+        if (localKey == null) {
+            local.invalidateAll();
+        } else {
+            local.invalidate(localKey);
+        }
+    }
+
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("cache.tier.gets")
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
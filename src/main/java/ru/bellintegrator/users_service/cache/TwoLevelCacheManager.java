@@ -0,0 +1,83 @@
+package ru.bellintegrator.users_service.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Оборачивает кэши Redis в TwoLevelCache и синхронизирует L1 между инстансами через Redis pub/sub.
+//Формат сообщения: instanceId \t cacheName [\t key]; без ключа - очистка всего кэша.
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+
+    private static final String SEPARATOR = "\t";
+
+    private final CacheManager remote;
+    private final StringRedisTemplate redisTemplate;
+    private final UserCacheProperties.Near properties;
+    private final MeterRegistry meterRegistry;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager remote, StringRedisTemplate redisTemplate,
+                                UserCacheProperties.Near properties, MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+        if (parts.length < 2 || instanceId.equals(parts[0])) {
+            return;
+        }
+        if (caches.get(parts[1]) instanceof TwoLevelCache cache) {
+            cache.invalidateLocal(parts.length == 3 ? parts[2] : null);
+        }
+    }
+
+    private Cache createCache(String name) {
+        Cache remoteCache = remote.getCache(name);
+        if (remoteCache == null || !properties.getCaches().contains(name)) {
+            return remoteCache;
+        }
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+        return new TwoLevelCache(name, local, remoteCache, key -> publish(name, key), meterRegistry);
+    }
+
+    private void publish(String cacheName, String key) {
+        String message = instanceId + SEPARATOR + cacheName + (key != null ? SEPARATOR + key : "");
+        try {
+            redisTemplate.convertAndSend(properties.getChannel(), message);
+        } catch (Exception e) {
+            //L1 остальных инстансов догонит состояние по TTL
+            log.warn("Failed to publish invalidation for cache {}: {}", cacheName, e.getMessage());
+        }
+    }
+}
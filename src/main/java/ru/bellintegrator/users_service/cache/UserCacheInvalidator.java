@@ -0,0 +1,121 @@
+package ru.bellintegrator.users_service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Точечная инвалидация кэшей после применения изменений из Kafka:
+//запись user::<id> удаляется, а страницы users переводятся на новое поколение
+//только для фильтров, в выборку которых пользователь попадал до или после изменения.
+//Вызывается после коммита: повтор пачки уже ничего не изменит в БД и не вернёт изменения, поэтому сбой Redis
+//здесь не пробрасывается, а запоминается как долг полной инвалидации, которая повторяется до успеха.
+@Slf4j
+@Component
+public class UserCacheInvalidator {
+
+    private final CacheManager cacheManager;
+    private final UserPageCache userPageCache;
+    private final UserCacheWarmer userCacheWarmer;
+    private final AtomicBoolean fullInvalidationPending = new AtomicBoolean();
+
+    public UserCacheInvalidator(CacheManager cacheManager, UserPageCache userPageCache, UserCacheWarmer userCacheWarmer) {
+        this.cacheManager = cacheManager;
+        this.userPageCache = userPageCache;
+        this.userCacheWarmer = userCacheWarmer;
+    }
+
+    public void invalidate(List<UserChange> changes) {
+        if (changes.isEmpty()) return;
+        if (fullInvalidationPending.get()) {
+            //полная инвалидация покрывает и эти изменения
+            retryFullInvalidation();
+            if (!fullInvalidationPending.get()) return;
+        }
+        try {
+            invalidateChanges(changes);
+        } catch (RuntimeException e) {
+            log.warn("Cache invalidation of {} changes failed, scheduling full invalidation: {}", changes.size(), e.getMessage());
+            fullInvalidationPending.set(true);
+        }
+    }
+
+    private void invalidateChanges(List<UserChange> changes) {
+        Cache userCache = cacheManager.getCache("user");
+        if (userCache != null) {
+            changes.stream()
+                    .filter(change -> !change.isCreate())
+                    .forEach(change -> userCache.evict(change.id()));
+        }
+
+        List<String> affectedFilters = new ArrayList<>();
+        List<String> malformedFilters = new ArrayList<>();
+        for (String filterKey : userPageCache.trackedFilters()) {
+            UserFilter filter;
+            try {
+                filter = UserFilter.fromCacheKey(filterKey);
+            } catch (IllegalArgumentException e) {
+                malformedFilters.add(filterKey);
+                continue;
+            }
+            if (changes.stream().anyMatch(change -> affects(filter, change))) {
+                affectedFilters.add(filterKey);
+            }
+        }
+        //испорченный ключ не разобрать: его страницы сбрасываются, а сам он больше не отслеживается
+        if (!malformedFilters.isEmpty()) {
+            log.warn("Dropping {} malformed cached filter keys", malformedFilters.size());
+            affectedFilters.addAll(malformedFilters);
+        }
+        userPageCache.invalidate(affectedFilters);
+        userPageCache.untrack(malformedFilters);
+    }
+
+    public void invalidate(UserChange change) {
+        invalidate(List.of(change));
+    }
+
+    //После замены всей таблицы (восстановление из снимка) точечно сбросить нечего;
+    //чтобы запросы не ушли в БД разом, горячие ключи сразу прогреваются заново
+    public void invalidateAll() {
+        clearAll();
+        userCacheWarmer.warmAsync("invalidation");
+    }
+
+    @Scheduled(fixedDelayString = "${users.cache.invalidation-retry-interval:PT5S}")
+    public void retryFullInvalidation() {
+        if (!fullInvalidationPending.get()) return;
+        //флаг снимается до попытки: сбой параллельной инвалидации во время неё снова его поднимет
+        fullInvalidationPending.set(false);
+        try {
+            clearAll();
+            log.info("Pending full cache invalidation completed");
+        } catch (RuntimeException e) {
+            fullInvalidationPending.set(true);
+            log.warn("Full cache invalidation failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private void clearAll() {
+        Cache userCache = cacheManager.getCache("user");
+        if (userCache != null) {
+            userCache.clear();
+        }
+        userPageCache.invalidateAll();
+    }
+
+    private static boolean affects(UserFilter filter, UserChange change) {
+        if (change.before() == null && change.after() == null) {
+            //состояние пользователя неизвестно - страница могла его содержать
+            return true;
+        }
+        return (change.before() != null && filter.matches(change.before()))
+                || (change.after() != null && filter.matches(change.after()));
+    }
+}
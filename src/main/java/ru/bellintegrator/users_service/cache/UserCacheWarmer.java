@@ -0,0 +1,118 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.repository.UserRepository;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static ru.bellintegrator.users_service.repository.UserSpecification.byFilter;
+
+//Прогрев user/users горячим набором HotKeyTracker после старта и после полной инвалидации (восстановление из снимка).
+//Пользователи грузятся пачками по batch-size одним IN-запросом и пишутся в Redis конвейером, страницы - через
+//UserPageCache.warm. Одновременно идёт не больше concurrency загрузок из БД; прогрев, начатый во время
+//идущего, пропускается. Уже закэшированные страницы не перегружаются, пользователи - перезаписываются
+@Slf4j
+@Component
+public class UserCacheWarmer implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private final CacheManager cacheManager;
+    private final UserPageCache userPageCache;
+    private final HotKeyTracker hotKeyTracker;
+    private final UserRepository userRepository;
+    private final UserCacheProperties.Warmup properties;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final ExecutorService loaders;
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("cache-warmup").daemon().factory());
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public UserCacheWarmer(CacheManager cacheManager, UserPageCache userPageCache, HotKeyTracker hotKeyTracker,
+                           UserRepository userRepository, UserCacheProperties cacheProperties,
+                           @Value("${spring.cache.type:none}") String cacheType, MeterRegistry meterRegistry) {
+        this.cacheManager = cacheManager;
+        this.userPageCache = userPageCache;
+        this.hotKeyTracker = hotKeyTracker;
+        this.userRepository = userRepository;
+        this.properties = cacheProperties.getWarmup();
+        this.meterRegistry = meterRegistry;
+        this.enabled = properties.isEnabled() && "redis".equalsIgnoreCase(cacheType);
+        this.loaders = Executors.newFixedThreadPool(properties.getConcurrency(),
+                Thread.ofPlatform().name("cache-warmup-load-", 0).daemon().factory());
+    }
+
+    //Горячий набор после рестарта - опубликованный другими инстансами или прошлым запуском
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        warmAsync("startup");
+    }
+
+    public void warmAsync(String reason) {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            runner.execute(() -> {
+                try {
+                    warm(reason);
+                } catch (RuntimeException e) {
+                    log.warn("Cache warm-up ({}) failed: {}", reason, e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+        }
+    }
+
+    void warm(String reason) {
+        long started = System.currentTimeMillis();
+        int users = warmUsers(hotKeyTracker.hotUsers());
+        int pages = userPageCache.warm(hotKeyTracker.hotPages(),
+                hotPage -> userRepository.findDtoPage(byFilter(hotPage.filter()), hotPage.pageable()), loaders);
+        meterRegistry.counter("users.cache.warmed", "cache", "user", "reason", reason).increment(users);
+        meterRegistry.counter("users.cache.warmed", "cache", "users", "reason", reason).increment(pages);
+        log.atInfo().addKeyValue("reason", reason).addKeyValue("users", users).addKeyValue("pages", pages)
+                .addKeyValue("durationMs", System.currentTimeMillis() - started).log("Caches warmed");
+    }
+
+    private int warmUsers(List<UUID> ids) {
+        Cache cache = cacheManager.getCache("user");
+        if (ids.isEmpty() || !(cache instanceof BatchWritableCache batchCache)) {
+            return 0;
+        }
+        Function<Collection<UUID>, Map<UUID, ?>> loader = batch -> userRepository.findDtoByIdIn(batch).stream()
+                .collect(Collectors.toMap(UserDto::getId, Function.identity()));
+        List<CompletableFuture<Integer>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += properties.getBatchSize()) {
+            List<UUID> batch = ids.subList(from, Math.min(ids.size(), from + properties.getBatchSize()));
+            batches.add(CompletableFuture.supplyAsync(() -> batchCache.loadAll(batch, loader), loaders)
+                    .exceptionally(e -> {
+                        log.warn("Failed to warm {} users: {}", batch.size(), e.getMessage());
+                        return 0;
+                    }));
+        }
+        return batches.stream().mapToInt(CompletableFuture::join).sum();
+    }
+
+    @Override
+    public void destroy() {
+        runner.shutdownNow();
+        loaders.shutdownNow();
+    }
+}
@@ -0,0 +1,21 @@
+package ru.bellintegrator.users_service.cache;
+
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.UUID;
+
+//Применённое изменение пользователя: состояние до и после (null, если неизвестно или отсутствует)
+public record UserChange(UUID id, UserDto before, UserDto after) {
+
+    public static UserChange created(UserDto after) {
+        return new UserChange(after.getId(), null, after);
+    }
+
+    public static UserChange deleted(UUID id, UserDto before) {
+        return new UserChange(id, before, null);
+    }
+
+    public boolean isCreate() {
+        return before == null && after != null;
+    }
+}
@@ -0,0 +1,197 @@
+package ru.bellintegrator.users_service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.repository.UserRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+//Bloom-фильтр известных id пользователей в битовой строке Redis (users:bloom), общий для всех инстансов.
+//Отвечает "точно нет" или "возможно есть"; если фильтр не построен или Redis недоступен - ответа нет,
+//и вызывающий проверяет БД. Новые id добавляются после вставки в EventListener, удалённые не убираются,
+//поэтому фильтр периодически пересобирается из БД в users:bloom:next и атомарно подменяется через RENAME.
+@Slf4j
+@Component
+public class UserExistenceFilter {
+
+    static final String FILTER_KEY = "users:bloom";
+    static final String NEXT_FILTER_KEY = "users:bloom:next";
+    static final String BUILT_AT_KEY = "users:bloom:built-at";
+    static final String LOCK_KEY = "users:bloom:lock";
+
+    private static final int REBUILD_CHUNK = 1000;
+    private static final Duration LOCK_TTL = Duration.ofMinutes(30);
+
+    //KEYS: фильтр; ARGV: номера битов. -1 - фильтра нет, 0 - точно нет, 1 - возможно есть
+    private static final RedisScript<Long> CONTAINS_SCRIPT = RedisScript.of("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end
+            for i = 1, #ARGV do
+                if redis.call('GETBIT', KEYS[1], ARGV[i]) == 0 then return 0 end
+            end
+            return 1
+            """, Long.class);
+
+    //KEYS: фильтр, пересобираемый фильтр; ARGV: номера битов.
+    //Пишет только в существующие ключи, чтобы не создать частичный фильтр, который выглядит построенным.
+    private static final RedisScript<Long> ADD_SCRIPT = RedisScript.of("""
+            local live = redis.call('EXISTS', KEYS[1]) == 1
+            local rebuilding = redis.call('EXISTS', KEYS[2]) == 1
+            for i = 1, #ARGV do
+                if live then redis.call('SETBIT', KEYS[1], ARGV[i], 1) end
+                if rebuilding then redis.call('SETBIT', KEYS[2], ARGV[i], 1) end
+            end
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final UserCacheProperties.Existence properties;
+    private final boolean enabled;
+    private final long bits;
+    private final int hashes;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public UserExistenceFilter(StringRedisTemplate redisTemplate, UserRepository userRepository,
+                               PlatformTransactionManager transactionManager, UserCacheProperties cacheProperties,
+                               @Value("${spring.cache.type:none}") String cacheType) {
+        this.redisTemplate = redisTemplate;
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.properties = cacheProperties.getExistence();
+        this.enabled = properties.isEnabled() && "redis".equalsIgnoreCase(cacheType);
+
+        long n = Math.max(1, properties.getExpectedInsertions());
+        double p = properties.getFalsePositiveProbability();
+        //m = -n ln p / (ln 2)^2, k = m/n ln 2; SETBIT адресует не больше 2^32 бит
+        this.bits = Math.min(1L << 32, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+    }
+
+    public Optional<Boolean> mightContain(UUID id) {
+        if (!enabled) return Optional.empty();
+        try {
+            Long result = redisTemplate.execute(CONTAINS_SCRIPT, List.of(FILTER_KEY), (Object[]) offsets(id));
+            return result == null || result < 0 ? Optional.empty() : Optional.of(result == 1);
+        } catch (RuntimeException e) {
+            log.warn("Existence filter lookup failed, falling back to the database", e);
+            return Optional.empty();
+        }
+    }
+
+    public void addAll(Collection<UUID> ids) {
+        if (!enabled || ids.isEmpty()) return;
+        List<String> offsets = new ArrayList<>(ids.size() * hashes);
+        ids.forEach(id -> Collections.addAll(offsets, offsets(id)));
+        try {
+            redisTemplate.execute(ADD_SCRIPT, List.of(FILTER_KEY, NEXT_FILTER_KEY), offsets.toArray());
+        } catch (RuntimeException e) {
+            //пропущенный id дал бы ложный 404: фильтр сбрасывается до пересборки, проверки идут в БД
+            log.warn("Failed to add {} ids to the existence filter, dropping it until rebuild", ids.size(), e);
+            drop();
+        }
+    }
+
+    //Без фильтра проверки идут в БД, а rebuildIfStale собирает его заново
+    public void drop() {
+        if (!enabled) return;
+        try {
+            redisTemplate.delete(List.of(FILTER_KEY, BUILT_AT_KEY));
+        } catch (RuntimeException e) {
+            log.error("Failed to drop the existence filter", e);
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${users.cache.existence.check-interval:PT1M}")
+    public void rebuildIfStale() {
+        if (!enabled) return;
+        try {
+            String builtAt = redisTemplate.opsForValue().get(BUILT_AT_KEY);
+            boolean stale = builtAt == null || !Boolean.TRUE.equals(redisTemplate.hasKey(FILTER_KEY))
+                    || Instant.ofEpochMilli(Long.parseLong(builtAt)).plus(properties.getRebuildInterval()).isBefore(Instant.now());
+            if (stale) rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Existence filter rebuild failed", e);
+        }
+    }
+
+    //Пересборка под блокировкой: сначала создаётся users:bloom:next, затем читаются id из БД.
+    //Вставки, закоммиченные до начала чтения, попадут в выборку, а более поздние ADD_SCRIPT допишет в next.
+    void rebuild() {
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, instanceId, LOCK_TTL))) return;
+        try {
+            long started = System.currentTimeMillis();
+            redisTemplate.delete(NEXT_FILTER_KEY);
+            redisTemplate.opsForValue().setBit(NEXT_FILTER_KEY, bits - 1, false);
+            long count = Objects.requireNonNull(readOnlyTransaction.execute(status -> {
+                long added = 0;
+                List<UUID> chunk = new ArrayList<>(REBUILD_CHUNK);
+                try (Stream<UUID> ids = userRepository.streamAllIds()) {
+                    for (UUID id : (Iterable<UUID>) ids::iterator) {
+                        chunk.add(id);
+                        if (chunk.size() == REBUILD_CHUNK) {
+                            added += setBits(chunk);
+                        }
+                    }
+                }
+                return added + setBits(chunk);
+            }));
+            redisTemplate.rename(NEXT_FILTER_KEY, FILTER_KEY);
+            redisTemplate.opsForValue().set(BUILT_AT_KEY, String.valueOf(System.currentTimeMillis()));
+            log.info("Existence filter rebuilt with {} ids ({} bits, {} hashes) in {} ms",
+                    count, bits, hashes, System.currentTimeMillis() - started);
+        } finally {
+            if (instanceId.equals(redisTemplate.opsForValue().get(LOCK_KEY))) {
+                redisTemplate.delete(LOCK_KEY);
+            }
+        }
+    }
+
+    private int setBits(List<UUID> chunk) {
+        if (chunk.isEmpty()) return 0;
+        byte[] key = NEXT_FILTER_KEY.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (UUID id : chunk) {
+                for (String offset : offsets(id)) {
+                    connection.stringCommands().setBit(key, Long.parseLong(offset), true);
+                }
+            }
+            return null;
+        });
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+    }
+
+    //Двойное хеширование (h1 + i*h2) mod m по перемешанным половинам UUID: у UUIDv7 старшие биты - время
+    String[] offsets(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ mix(id.getLeastSignificantBits()));
+        long h2 = mix(id.getLeastSignificantBits() ^ 0x9E3779B97F4A7C15L) | 1;
+        String[] offsets = new String[hashes];
+        for (int i = 0; i < hashes; i++) {
+            offsets[i] = Long.toString(Math.floorMod(h1 + i * h2, bits));
+        }
+        return offsets;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
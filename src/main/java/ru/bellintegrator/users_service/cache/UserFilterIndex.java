@@ -0,0 +1,347 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.apache.kafka.common.TopicPartition;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.model.NameMatch;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Индекс фильтров getAll в памяти инстанса. Пользователи хранятся в параллельных массивах по порядковому номеру,
+//множества номеров - сжатые битовые карты: корзины возраста 0..255 и списки триграмм lower(имени).
+//Наполняется UserIndexListener из топиков USER_* и отвечает только пока подтверждён водяной знак:
+//применено всё, что закоммичено группой users-service, то есть уже есть в БД. Иначе вызывающий идёт в БД.
+//Событие, которое БД применила не так, как индекс (ушло в DLT, legacy CREATE без id), водяной знак не ловит:
+//после markDiverged индекс не отвечает, пока не загружен снимок, в который это событие уже вошло.
+@Component
+public class UserFilterIndex {
+
+    static final int AGE_BUCKETS = 256;
+    //колонки firstname/lastname - VARCHAR(255): более длинные события БД отклоняет
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int GRAM = 3;
+    //маркер начала строки: триграммы с ним отвечают за поиск по префиксу
+    private static final char START = '\u0002';
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private UUID[] ids = new UUID[0];
+    private String[] firstnames = new String[0];
+    private String[] lastnames = new String[0];
+    private int[] ages = new int[0];
+    private long[] versions = new long[0];
+    private int size;
+    private final RoaringBitmap live = new RoaringBitmap();
+    private final RoaringBitmap free = new RoaringBitmap();
+    private final RoaringBitmap[] byAge = new RoaringBitmap[AGE_BUCKETS];
+    //возраст вне корзин, такие номера проверяются поштучно
+    private final RoaringBitmap otherAges = new RoaringBitmap();
+    private final Map<String, RoaringBitmap> firstnameGrams = new HashMap<>();
+    private final Map<String, RoaringBitmap> lastnameGrams = new HashMap<>();
+
+    //следующее смещение для чтения по каждой партиции
+    private final Map<TopicPartition, Long> positions = new ConcurrentHashMap<>();
+    private final Duration watermarkTtl;
+    private volatile long consistentUntil = System.nanoTime();
+    private volatile boolean consistent;
+    //смещения событий, на которых индекс разошёлся с БД, - наибольшее по партиции
+    private final Map<TopicPartition, Long> divergedAt = new ConcurrentHashMap<>();
+    //смещения, с которых продолжилось чтение после последнего снимка: события до них снимок уже учёл
+    private volatile Map<TopicPartition, Long> snapshotPositions = Map.of();
+
+    public UserFilterIndex(UserCacheProperties cacheProperties) {
+        this.watermarkTtl = cacheProperties.getIndex().getWatermarkTtl();
+        for (int age = 0; age < AGE_BUCKETS; age++) byAge[age] = new RoaringBitmap();
+    }
+
+    //Страница getAll или пусто, если индекс не согласован с БД или запрос ему не подходит (сортировка, без страниц)
+    public Optional<Page<UserDto>> find(UserFilter f, Pageable pageable) {
+        if (!isConsistent() || pageable.isUnpaged() || pageable.getSort().isSorted()) return Optional.empty();
+        UserFilter n = f.normalized();
+        lock.readLock().lock();
+        try {
+            RoaringBitmap candidates = candidates(n);
+            boolean ageBounded = n.getMinAge() != null || n.getMaxAge() != null;
+            boolean verify = n.getFirstname() != null || n.getLastname() != null || (ageBounded && !otherAges.isEmpty());
+            long offset = pageable.getOffset();
+            List<UserDto> content = new ArrayList<>(pageable.getPageSize());
+            if (!verify) {
+                //кандидаты и есть ответ: итог - мощность, страница - с позиции offset
+                long total = candidates.getLongCardinality();
+                if (offset < total) {
+                    PeekableIntIterator it = candidates.getIntIterator();
+                    it.advanceIfNeeded(candidates.select((int) offset));
+                    while (it.hasNext() && content.size() < pageable.getPageSize()) content.add(user(it.next()));
+                }
+                return Optional.of(new PageImpl<>(content, pageable, total));
+            }
+            long total = 0;
+            PeekableIntIterator it = candidates.getIntIterator();
+            while (it.hasNext()) {
+                int ordinal = it.next();
+                if (!matches(n, ordinal)) continue;
+                if (total >= offset && content.size() < pageable.getPageSize()) content.add(user(ordinal));
+                total++;
+            }
+            return Optional.of(new PageImpl<>(content, pageable, total));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isConsistent() {
+        return consistent && divergedAt.isEmpty() && consistentUntil - System.nanoTime() > 0;
+    }
+
+    public void markDiverged(TopicPartition partition, long offset) {
+        if (snapshotPositions.getOrDefault(partition, 0L) > offset) return;
+        divergedAt.merge(partition, offset, Math::max);
+    }
+
+    //Есть расхождение, которое исправит новый снимок: группа users-service уже прошла его событие
+    public boolean isReloadNeeded(Map<TopicPartition, Long> committed) {
+        return divergedAt.entrySet().stream()
+                .anyMatch(entry -> committed.getOrDefault(entry.getKey(), 0L) > entry.getValue());
+    }
+
+    //Полная загрузка снимка из БД (строки как события CREATE с users.version);
+    //positions - смещения, с которых продолжается чтение топиков
+    public void load(Iterator<UserEvent> users, Map<TopicPartition, Long> positions) {
+        lock.writeLock().lock();
+        try {
+            consistent = false;
+            //снимок исправляет только события, которые группа users-service уже закоммитила; более поздние
+            //индекс применит повторно, и их отметки остаются до следующего снимка
+            divergedAt.entrySet().removeIf(entry -> positions.getOrDefault(entry.getKey(), 0L) > entry.getValue());
+            ordinals.clear();
+            ids = new UUID[0];
+            firstnames = new String[0];
+            lastnames = new String[0];
+            ages = new int[0];
+            versions = new long[0];
+            size = 0;
+            live.clear();
+            free.clear();
+            otherAges.clear();
+            for (RoaringBitmap bucket : byAge) bucket.clear();
+            firstnameGrams.clear();
+            lastnameGrams.clear();
+            users.forEachRemaining(this::insert);
+            //после массовой загрузки контейнеры битовых карт пересжимаются в run-кодирование, где это выгодно
+            live.runOptimize();
+            for (RoaringBitmap bucket : byAge) bucket.runOptimize();
+            firstnameGrams.values().forEach(RoaringBitmap::runOptimize);
+            lastnameGrams.values().forEach(RoaringBitmap::runOptimize);
+            this.positions.clear();
+            this.positions.putAll(positions);
+            snapshotPositions = Map.copyOf(positions);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Повторяет UserBatchRepository: create не перезаписывает существующий id, update не меняет null-поля,
+    //update и delete с версией не новее сохранённой пропускаются
+    public void apply(UserEvent event) {
+        UserDto user = event.user();
+        if (user == null || user.getId() == null || tooLong(user)) return;
+        lock.writeLock().lock();
+        try {
+            if (event.type() == UserEventType.CREATE) {
+                insert(event);
+                return;
+            }
+            Integer ordinal = ordinals.get(user.getId());
+            if (ordinal == null || (event.version() != null && event.version() <= versions[ordinal])) return;
+            if (event.type() == UserEventType.DELETE) {
+                remove(ordinal);
+                return;
+            }
+            unindex(ordinal);
+            if (user.getFirstname() != null) firstnames[ordinal] = user.getFirstname();
+            if (user.getLastname() != null) lastnames[ordinal] = user.getLastname();
+            if (user.getAge() != null) ages[ordinal] = user.getAge();
+            if (event.version() != null) versions[ordinal] = event.version();
+            index(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void advance(TopicPartition partition, long nextOffset) {
+        positions.merge(partition, nextOffset, Math::max);
+    }
+
+    public Optional<Long> position(TopicPartition partition) {
+        return Optional.ofNullable(positions.get(partition));
+    }
+
+    //Водяной знак: committed - закоммиченные смещения группы, пишущей в БД. Возвращает суммарное отставание
+    public long confirmWatermark(Map<TopicPartition, Long> committed) {
+        long lag = 0;
+        for (Map.Entry<TopicPartition, Long> entry : committed.entrySet()) {
+            lag += Math.max(0, entry.getValue() - positions.getOrDefault(entry.getKey(), 0L));
+        }
+        consistentUntil = System.nanoTime() + watermarkTtl.toNanos();
+        consistent = lag == 0;
+        return lag;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap candidates(UserFilter n) {
+        RoaringBitmap result = ages(n.getMinAge(), n.getMaxAge());
+        for (RoaringBitmap names : Arrays.asList(
+                grams(firstnameGrams, n.getFirstname(), n.nameMatch()),
+                grams(lastnameGrams, n.getLastname(), n.nameMatch()))) {
+            if (names != null) result.and(names);
+        }
+        return result;
+    }
+
+    private RoaringBitmap ages(Integer min, Integer max) {
+        if (min == null && max == null) return live.clone();
+        int from = min == null ? 0 : Math.max(min, 0);
+        int to = max == null ? AGE_BUCKETS - 1 : Math.min(max, AGE_BUCKETS - 1);
+        List<RoaringBitmap> buckets = new ArrayList<>(Math.max(0, to - from + 2));
+        buckets.add(otherAges);
+        if (from <= to) buckets.addAll(Arrays.asList(byAge).subList(from, to + 1));
+        return FastAggregation.or(buckets.iterator());
+    }
+
+    //Пересечение списков триграмм значения - надмножество совпадений, точная проверка в matches.
+    //Для значений короче триграммы ограничения нет
+    private static RoaringBitmap grams(Map<String, RoaringBitmap> index, String value, NameMatch match) {
+        if (value == null) return null;
+        String text = match.forValue(value) == NameMatch.PREFIX ? START + value : value;
+        if (text.length() < GRAM) return null;
+        List<RoaringBitmap> postings = new ArrayList<>();
+        for (String gram : grams(text)) {
+            RoaringBitmap posting = index.get(gram);
+            if (posting == null) return new RoaringBitmap();
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+        RoaringBitmap result = postings.getFirst().clone();
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) result.and(postings.get(i));
+        return result;
+    }
+
+    private static Set<String> grams(String text) {
+        if (text.length() < GRAM) return Set.of(text);
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) grams.add(text.substring(i, i + GRAM));
+        return grams;
+    }
+
+    //Те же условия, что UserFilter.matches, без сборки UserDto
+    private boolean matches(UserFilter n, int ordinal) {
+        return nameMatches(n.getFirstname(), firstnames[ordinal], n.nameMatch())
+                && nameMatches(n.getLastname(), lastnames[ordinal], n.nameMatch())
+                && (n.getMinAge() == null || ages[ordinal] >= n.getMinAge())
+                && (n.getMaxAge() == null || ages[ordinal] <= n.getMaxAge());
+    }
+
+    private static boolean nameMatches(String value, String name, NameMatch match) {
+        if (value == null) return true;
+        if (name == null) return false;
+        return match.forValue(value) == NameMatch.PREFIX ? name.toLowerCase().startsWith(value) : name.toLowerCase().contains(value);
+    }
+
+    private void insert(UserEvent event) {
+        UserDto user = event.user();
+        if (ordinals.containsKey(user.getId())) return;
+        int ordinal;
+        if (free.isEmpty()) {
+            ordinal = size++;
+            if (ordinal == ids.length) grow();
+        } else {
+            ordinal = free.first();
+            free.remove(ordinal);
+        }
+        ordinals.put(user.getId(), ordinal);
+        ids[ordinal] = user.getId();
+        firstnames[ordinal] = user.getFirstname();
+        lastnames[ordinal] = user.getLastname();
+        //age в БД NOT NULL, insertAll пишет 0 вместо null
+        ages[ordinal] = user.getAge() != null ? user.getAge() : 0;
+        versions[ordinal] = event.version() != null ? event.version() : 0;
+        index(ordinal);
+    }
+
+    private void remove(int ordinal) {
+        ordinals.remove(ids[ordinal]);
+        unindex(ordinal);
+        ids[ordinal] = null;
+        firstnames[ordinal] = null;
+        lastnames[ordinal] = null;
+        free.add(ordinal);
+    }
+
+    private void grow() {
+        int capacity = Math.max(1024, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        firstnames = Arrays.copyOf(firstnames, capacity);
+        lastnames = Arrays.copyOf(lastnames, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+    }
+
+    private void index(int ordinal) {
+        live.add(ordinal);
+        ageBucket(ages[ordinal]).add(ordinal);
+        nameGrams(firstnames[ordinal]).forEach(gram -> firstnameGrams.computeIfAbsent(gram, g -> new RoaringBitmap()).add(ordinal));
+        nameGrams(lastnames[ordinal]).forEach(gram -> lastnameGrams.computeIfAbsent(gram, g -> new RoaringBitmap()).add(ordinal));
+    }
+
+    private void unindex(int ordinal) {
+        live.remove(ordinal);
+        ageBucket(ages[ordinal]).remove(ordinal);
+        nameGrams(firstnames[ordinal]).forEach(gram -> removePosting(firstnameGrams, gram, ordinal));
+        nameGrams(lastnames[ordinal]).forEach(gram -> removePosting(lastnameGrams, gram, ordinal));
+    }
+
+    private RoaringBitmap ageBucket(int age) {
+        return age >= 0 && age < AGE_BUCKETS ? byAge[age] : otherAges;
+    }
+
+    private static Set<String> nameGrams(String name) {
+        return name == null ? Set.of() : grams(START + name.toLowerCase());
+    }
+
+    private static void removePosting(Map<String, RoaringBitmap> index, String gram, int ordinal) {
+        RoaringBitmap posting = index.get(gram);
+        if (posting == null) return;
+        posting.remove(ordinal);
+        if (posting.isEmpty()) index.remove(gram);
+    }
+
+    private UserDto user(int ordinal) {
+        return new UserDto(ids[ordinal], firstnames[ordinal], lastnames[ordinal], ages[ordinal]);
+    }
+
+    private static boolean tooLong(UserDto user) {
+        return (user.getFirstname() != null && user.getFirstname().length() > MAX_NAME_LENGTH)
+                || (user.getLastname() != null && user.getLastname().length() > MAX_NAME_LENGTH);
+    }
+}
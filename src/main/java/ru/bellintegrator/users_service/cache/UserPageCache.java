@@ -0,0 +1,365 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+//Кэш результатов getAll: ключ = нормализованный фильтр + page + size + sort, значение в UserPageCodec.
+//У каждого фильтра есть поколение users:gen:<filter>; запись не удаляет страницы, а переводит фильтр
+//на новое поколение из глобальной последовательности users:gen:seq, поэтому старые страницы становятся
+//недостижимы и истекают по TTL. Поколения не повторяются, даже если ключ поколения истёк.
+//Поверх поколений фильтров есть общая эпоха users:gen:epoch: её смена (invalidateAll) делает недостижимыми
+//страницы всех фильтров одной командой, без чтения users:filters.
+//users:filters ограничен max-tracked-filters: вытесняемые из него давние фильтры переводятся на новое поколение.
+//Страница старше TTL ещё отдаётся, пока CacheLoadCoordinator обновляет её в фоне; после смены поколения - нет.
+//TTL страницы сокращается на случайную долю до ttl-jitter, часто читаемые страницы обновляются до истечения (CacheExpiry).
+@Slf4j
+@Component
+public class UserPageCache {
+
+    static final String FILTERS_KEY = "users:filters";
+    static final String GENERATION_SEQUENCE_KEY = "users:gen:seq";
+    static final String EPOCH_KEY = "users:gen:epoch";
+    static final String GENERATION_KEY_PREFIX = "users:gen:";
+    static final String PAGE_KEY_PREFIX = "users:page:";
+    static final byte ENVELOPE = 3;
+    static final byte ENVELOPE_WITHOUT_LOAD_TIME = 2;
+
+    private static final String CACHE_NAME = "users";
+    private static final int ENVELOPE_HEADER = 1 + Long.BYTES + Integer.BYTES;
+
+    //KEYS: ключ поколения, последовательность, эпоха; ARGV: ttl ms, префикс и суффикс ключа страницы.
+    //Возвращает {эпоха.поколение, страница или nil} за один round trip.
+    private static final byte[] READ_SCRIPT = """
+            local gen = redis.call('GET', KEYS[1])
+            if not gen then
+                gen = tostring(redis.call('INCR', KEYS[2]))
+                redis.call('SET', KEYS[1], gen, 'PX', ARGV[1])
+            else
+                redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            end
+            local version = (redis.call('GET', KEYS[3]) or '0') .. '.' .. gen
+            return {version, redis.call('GET', ARGV[2] .. version .. ARGV[3])}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    //KEYS: users:filters, последовательность; ARGV: время регистрации, предел, ttl ms, префикс ключа поколения, фильтры.
+    //Сверх предела вытесняются давно зарегистрированные фильтры, их страницы уходят в новое поколение
+    private static final byte[] REGISTER_SCRIPT = """
+            for i = 5, #ARGV do
+                redis.call('ZADD', KEYS[1], ARGV[1], ARGV[i])
+            end
+            local overflow = redis.call('ZCARD', KEYS[1]) - tonumber(ARGV[2])
+            if overflow > 0 then
+                for _, filter in ipairs(redis.call('ZRANGE', KEYS[1], 0, overflow - 1)) do
+                    redis.call('SET', ARGV[4] .. filter, redis.call('INCR', KEYS[2]), 'PX', ARGV[3])
+                end
+                redis.call('ZREMRANGEBYRANK', KEYS[1], 0, overflow - 1)
+            end
+            return math.max(overflow, 0)
+            """.getBytes(StandardCharsets.UTF_8);
+
+    //KEYS: последовательность, ключи поколений фильтров; ARGV: ttl ms
+    private static final RedisScript<Long> BUMP_SCRIPT = RedisScript.of("""
+            for i = 2, #KEYS do
+                redis.call('SET', KEYS[i], redis.call('INCR', KEYS[1]), 'PX', ARGV[1])
+            end
+            return #KEYS - 1
+            """, Long.class);
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final UserCacheProperties.Pages properties;
+    private final Duration staleWhileRevalidate;
+    private final CacheExpiry expiry;
+    private final CacheLoadCoordinator coordinator;
+    private final boolean enabled;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter puts;
+    private final Counter evictions;
+
+    public UserPageCache(RedisConnectionFactory redisConnectionFactory, UserCacheProperties cacheProperties,
+                         @Value("${spring.cache.type:none}") String cacheType, CacheLoadCoordinator coordinator,
+                         MeterRegistry meterRegistry) {
+        this.redisTemplate = new RedisTemplate<>();
+        this.redisTemplate.setConnectionFactory(redisConnectionFactory);
+        this.redisTemplate.setKeySerializer(RedisSerializer.string());
+        this.redisTemplate.setValueSerializer(RedisSerializer.byteArray());
+        this.redisTemplate.afterPropertiesSet();
+        this.properties = cacheProperties.getPages();
+        this.staleWhileRevalidate = cacheProperties.getLoading().getStaleWhileRevalidate();
+        this.expiry = new CacheExpiry(properties.getTtl(), properties.getTtlJitter(),
+                cacheProperties.getLoading().getEarlyRefreshBeta());
+        this.coordinator = coordinator;
+        this.enabled = "redis".equalsIgnoreCase(cacheType);
+        //метрики под именем кэша users, как у кэша user; вытеснение - смена поколения одного фильтра
+        this.hits = Counter.builder("cache.gets").tag("cache", "users").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", "users").tag("result", "miss").register(meterRegistry);
+        this.puts = Counter.builder("cache.puts").tag("cache", "users").register(meterRegistry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", "users").register(meterRegistry);
+    }
+
+    public Page<UserDto> get(UserFilter filter, Pageable pageable, Supplier<Page<UserDto>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        String filterKey = filter.normalized().cacheKey();
+        String suffix = suffix(filterKey, pageable);
+        String pageKey;
+        try {
+            List<Object> result = redisTemplate.execute((RedisCallback<List<Object>>) connection ->
+                    connection.scriptingCommands().eval(READ_SCRIPT, ReturnType.MULTI, 3,
+                            bytes(GENERATION_KEY_PREFIX + filterKey), bytes(GENERATION_SEQUENCE_KEY), bytes(EPOCH_KEY),
+                            bytes(String.valueOf(storedTtl().toMillis())), bytes(PAGE_KEY_PREFIX), bytes(suffix)));
+            pageKey = PAGE_KEY_PREFIX + new String((byte[]) result.get(0), StandardCharsets.UTF_8) + suffix;
+            if (result.size() > 1 && result.get(1) instanceof byte[] cached) {
+                hits.increment();
+                long now = System.currentTimeMillis();
+                long freshUntil = freshUntil(cached);
+                if (now >= freshUntil) {
+                    coordinator.refresh(CACHE_NAME, pageKey, "stale", () -> loadAndStore(filterKey, pageKey, loader));
+                } else if (expiry.refreshEarly(now, freshUntil, loadMillis(cached))) {
+                    coordinator.refresh(CACHE_NAME, pageKey, "early", () -> loadAndStore(filterKey, pageKey, loader));
+                }
+                return UserPageCodec.decode(page(cached), pageable);
+            }
+            misses.increment();
+        } catch (Exception e) {
+            log.warn("Page cache read failed, loading from database: {}", e.getMessage());
+            return loader.get();
+        }
+
+        //одна загрузка страницы на инстанс (и на кластер при включённой аренде), остальные ждут её результат
+        try {
+            return coordinator.load(CACHE_NAME, pageKey, () -> loadAndStore(filterKey, pageKey, loader), () -> {
+                byte[] cached = redisTemplate.opsForValue().get(pageKey);
+                return cached != null ? UserPageCodec.decode(page(cached), pageable) : null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Failed to load user page " + pageKey, e);
+        }
+    }
+
+    //Фильтр регистрируется до загрузки, а поколение прочитано ещё раньше: если запись успеет сменить поколение,
+    //страница уйдёт в старое и не будет прочитана. Регистрация обновляется и при фоновом обновлении,
+    //чтобы фильтр оставался в users:filters, пока живут его страницы
+    private Page<UserDto> loadAndStore(String filterKey, String pageKey, Supplier<Page<UserDto>> loader) {
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection ->
+                    register(connection, System.currentTimeMillis(), List.of(filterKey)));
+        } catch (Exception e) {
+            log.warn("Failed to register cached filter: {}", e.getMessage());
+            return loader.get();
+        }
+        long started = System.currentTimeMillis();
+        Page<UserDto> page = loader.get();
+        long loaded = System.currentTimeMillis();
+        long freshUntil = expiry.freshUntil(loaded);
+        try {
+            redisTemplate.opsForValue().set(pageKey,
+                    envelope(UserPageCodec.encode(page), freshUntil, (int) (loaded - started)),
+                    Duration.ofMillis(freshUntil - loaded).plus(staleWhileRevalidate));
+            puts.increment();
+        } catch (Exception e) {
+            log.warn("Page cache write failed: {}", e.getMessage());
+        }
+        return page;
+    }
+
+    //Прогрев страниц: поколения читаются и фильтры регистрируются одним конвейером до загрузки, недостающие страницы
+    //загружаются в executor (его размер ограничивает нагрузку на БД) и пишутся вторым конвейером.
+    //Страница, поколение которой сменилось за время прогрева, уходит в старое поколение и не читается
+    @SuppressWarnings("unchecked")
+    public int warm(List<HotPage> hotPages, Function<HotPage, Page<UserDto>> loader, Executor executor) {
+        if (!enabled || hotPages.isEmpty()) {
+            return 0;
+        }
+        long registeredAt = System.currentTimeMillis();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (HotPage hotPage : hotPages) {
+                String filterKey = hotPage.filter().cacheKey();
+                connection.scriptingCommands().eval(READ_SCRIPT, ReturnType.MULTI, 3,
+                        bytes(GENERATION_KEY_PREFIX + filterKey), bytes(GENERATION_SEQUENCE_KEY), bytes(EPOCH_KEY),
+                        bytes(String.valueOf(storedTtl().toMillis())), bytes(PAGE_KEY_PREFIX),
+                        bytes(suffix(filterKey, hotPage.pageable())));
+            }
+            register(connection, registeredAt, hotPages.stream().map(hotPage -> hotPage.filter().cacheKey()).distinct().toList());
+            return null;
+        });
+
+        List<CompletableFuture<Map.Entry<String, byte[]>>> loads = new ArrayList<>();
+        for (int i = 0; i < hotPages.size(); i++) {
+            List<Object> result = (List<Object>) results.get(i);
+            if (result.size() > 1 && result.get(1) instanceof byte[]) {
+                continue;
+            }
+            HotPage hotPage = hotPages.get(i);
+            String pageKey = PAGE_KEY_PREFIX + new String((byte[]) result.get(0), StandardCharsets.UTF_8)
+                    + suffix(hotPage.filter().cacheKey(), hotPage.pageable());
+            loads.add(CompletableFuture.supplyAsync(() -> {
+                long started = System.currentTimeMillis();
+                Page<UserDto> page = loader.apply(hotPage);
+                long loaded = System.currentTimeMillis();
+                return Map.entry(pageKey, envelope(UserPageCodec.encode(page), expiry.freshUntil(loaded), (int) (loaded - started)));
+            }, executor).exceptionally(e -> {
+                log.warn("Failed to warm page {}: {}", pageKey, e.getMessage());
+                return null;
+            }));
+        }
+        List<Map.Entry<String, byte[]>> pages = loads.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+        if (pages.isEmpty()) {
+            return 0;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, byte[]> page : pages) {
+                long freshUntil = freshUntil(page.getValue());
+                connection.stringCommands().set(bytes(page.getKey()), page.getValue(),
+                        Expiration.milliseconds(Math.max(freshUntil - now, 1) + staleWhileRevalidate.toMillis()),
+                        RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+        puts.increment(pages.size());
+        return pages.size();
+    }
+
+    //Нормализованные ключи фильтров, страницы которых могут быть в кэше
+    public Set<String> trackedFilters() {
+        if (!enabled) {
+            return Set.of();
+        }
+        long expiredBefore = System.currentTimeMillis() - storedTtl().toMillis();
+        redisTemplate.opsForZSet().removeRangeByScore(FILTERS_KEY, 0, expiredBefore);
+        Set<byte[]> filters = redisTemplate.opsForZSet().range(FILTERS_KEY, 0, -1);
+        if (filters == null) {
+            return Set.of();
+        }
+        return filters.stream()
+                .map(bytes -> new String(bytes, StandardCharsets.UTF_8))
+                .collect(Collectors.toSet());
+    }
+
+    //Смена эпохи: недостижимы страницы всех фильтров, в том числе не попавших в users:filters
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        redisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands()
+                .set(bytes(EPOCH_KEY), bytes(String.valueOf(connection.stringCommands().incr(bytes(GENERATION_SEQUENCE_KEY))))));
+        evictions.increment();
+    }
+
+    public void untrack(Collection<String> filterKeys) {
+        if (!enabled || filterKeys.isEmpty()) {
+            return;
+        }
+        redisTemplate.opsForZSet().remove(FILTERS_KEY, filterKeys.stream().map(UserPageCache::bytes).toArray());
+    }
+
+    public void invalidate(Collection<String> filterKeys) {
+        if (!enabled || filterKeys.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(filterKeys.size() + 1);
+        keys.add(GENERATION_SEQUENCE_KEY);
+        filterKeys.forEach(filterKey -> keys.add(GENERATION_KEY_PREFIX + filterKey));
+        redisTemplate.execute(BUMP_SCRIPT, keys, bytes(String.valueOf(storedTtl().toMillis())));
+        evictions.increment(filterKeys.size());
+    }
+
+    private Object register(RedisConnection connection, long registeredAt, List<String> filterKeys) {
+        byte[][] keysAndArgs = new byte[6 + filterKeys.size()][];
+        keysAndArgs[0] = bytes(FILTERS_KEY);
+        keysAndArgs[1] = bytes(GENERATION_SEQUENCE_KEY);
+        keysAndArgs[2] = bytes(String.valueOf(registeredAt));
+        keysAndArgs[3] = bytes(String.valueOf(properties.getMaxTrackedFilters()));
+        keysAndArgs[4] = bytes(String.valueOf(storedTtl().toMillis()));
+        keysAndArgs[5] = bytes(GENERATION_KEY_PREFIX);
+        for (int i = 0; i < filterKeys.size(); i++) {
+            keysAndArgs[6 + i] = bytes(filterKeys.get(i));
+        }
+        return connection.scriptingCommands().eval(REGISTER_SCRIPT, ReturnType.INTEGER, 2, keysAndArgs);
+    }
+
+    private static String suffix(String filterKey, Pageable pageable) {
+        return ":" + filterKey + ":" + pageKey(pageable);
+    }
+
+    static String pageKey(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return "unpaged:" + pageable.getSort();
+        }
+        return pageable.getPageNumber() + ":" + pageable.getPageSize() + ":" + pageable.getSort();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //Запись: [ENVELOPE][8 байт freshUntil][4 байта время загрузки ms][страница в UserPageCodec].
+    //Записи без времени загрузки ([2][freshUntil]) рано не обновляются, записи без заголовка
+    //начинаются с версии кодека и считаются свежими до истечения
+    static byte[] envelope(byte[] page, long freshUntil, int loadMillis) {
+        return ByteBuffer.allocate(ENVELOPE_HEADER + page.length)
+                .put(ENVELOPE).putLong(freshUntil).putInt(loadMillis).put(page).array();
+    }
+
+    static long freshUntil(byte[] stored) {
+        return stored[0] == ENVELOPE || stored[0] == ENVELOPE_WITHOUT_LOAD_TIME
+                ? ByteBuffer.wrap(stored, 1, Long.BYTES).getLong() : Long.MAX_VALUE;
+    }
+
+    static long loadMillis(byte[] stored) {
+        return stored[0] == ENVELOPE ? ByteBuffer.wrap(stored, 1 + Long.BYTES, Integer.BYTES).getInt() : 0;
+    }
+
+    static byte[] page(byte[] stored) {
+        return switch (stored[0]) {
+            case ENVELOPE -> Arrays.copyOfRange(stored, ENVELOPE_HEADER, stored.length);
+            case ENVELOPE_WITHOUT_LOAD_TIME -> Arrays.copyOfRange(stored, 1 + Long.BYTES, stored.length);
+            default -> stored;
+        };
+    }
+
+    //Страницы, поколения и регистрация фильтров живут не дольше stale-while-revalidate после полного TTL
+    private Duration storedTtl() {
+        return properties.getTtl().plus(staleWhileRevalidate);
+    }
+}
@@ -0,0 +1,139 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+//Компактный бинарный формат страницы пользователей для Redis.
+//[version][varlong total][varint count] + на пользователя: [flags][16 байт id][varint len+utf8]x2[zigzag varint age].
+//Pageable не сериализуется - он входит в ключ и известен при чтении.
+public final class UserPageCodec {
+
+    static final byte VERSION = 1;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_FIRSTNAME = 1 << 1;
+    private static final int HAS_LASTNAME = 1 << 2;
+    private static final int HAS_AGE = 1 << 3;
+
+    private UserPageCodec() {
+    }
+
+    public static byte[] encode(Page<UserDto> page) {
+        List<UserDto> content = page.getContent();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + content.size() * 48);
+        out.write(VERSION);
+        writeVarLong(out, page.getTotalElements());
+        writeVarLong(out, content.size());
+        for (UserDto user : content) {
+            int flags = (user.getId() != null ? HAS_ID : 0)
+                    | (user.getFirstname() != null ? HAS_FIRSTNAME : 0)
+                    | (user.getLastname() != null ? HAS_LASTNAME : 0)
+                    | (user.getAge() != null ? HAS_AGE : 0);
+            out.write(flags);
+            if (user.getId() != null) {
+                writeLong(out, user.getId().getMostSignificantBits());
+                writeLong(out, user.getId().getLeastSignificantBits());
+            }
+            if (user.getFirstname() != null) writeString(out, user.getFirstname());
+            if (user.getLastname() != null) writeString(out, user.getLastname());
+            if (user.getAge() != null) writeVarLong(out, zigZag(user.getAge()));
+        }
+        return out.toByteArray();
+    }
+
+    public static Page<UserDto> decode(byte[] bytes, Pageable pageable) {
+        Reader in = new Reader(bytes);
+        if (in.readByte() != VERSION) {
+            throw new IllegalArgumentException("Unsupported page encoding version: " + bytes[0]);
+        }
+        long total = in.readVarLong();
+        int count = (int) in.readVarLong();
+        List<UserDto> content = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int flags = in.readByte();
+            UserDto user = new UserDto();
+            if ((flags & HAS_ID) != 0) user.setId(new UUID(in.readLong(), in.readLong()));
+            if ((flags & HAS_FIRSTNAME) != 0) user.setFirstname(in.readString());
+            if ((flags & HAS_LASTNAME) != 0) user.setLastname(in.readString());
+            if ((flags & HAS_AGE) != 0) user.setAge(unZigZag(in.readVarLong()));
+            content.add(user);
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigZag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unZigZag(long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
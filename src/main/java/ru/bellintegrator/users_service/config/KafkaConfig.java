@@ -0,0 +1,79 @@
+package ru.bellintegrator.users_service.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ProducerListener;
+import org.springframework.util.backoff.ExponentialBackOff;
+import ru.bellintegrator.users_service.kafka.MeteredProducerListener;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+public class KafkaConfig {
+
+    //Ошибочные записи уходят в <topic>.DLT, партицию выбирает продюсер.
+    //Нечитаемые записи публикуются исходными байтами из заголовка ErrorHandlingDeserializer - для них отдельный
+    //шаблон с ByteArraySerializer на той же фабрике, остальные пишет основной шаблон
+    @Bean
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, UserDto> kafkaTemplate,
+                                                                       ProducerFactory<Object, Object> producerFactory,
+                                                                       ProducerListener<Object, Object> kafkaProducerListener) {
+        KafkaTemplate<Object, Object> rawTemplate = new KafkaTemplate<>(producerFactory,
+                Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class));
+        rawTemplate.setProducerListener(kafkaProducerListener);
+        Map<Class<?>, KafkaOperations<?, ?>> templates = new LinkedHashMap<>();
+        templates.put(byte[].class, rawTemplate);
+        templates.put(Object.class, kafkaTemplate);
+        return new DeadLetterPublishingRecoverer(templates,
+                (record, e) -> new TopicPartition(record.topic() + ".DLT", -1));
+    }
+
+    //Пачку, которую listener не смог применить из-за недоступности БД, контейнер повторяет целиком, пока БД не
+    //вернётся, с паузой от 1 до 30 с. На время повторов консьюмер приостановлен и продолжает poll, из группы не выпадает.
+    //По умолчанию Spring Kafka после 10 мгновенных попыток пропустил бы пачку вместе с её смещениями
+    @Bean
+    public DefaultErrorHandler kafkaErrorHandler() {
+        ExponentialBackOff backOff = new ExponentialBackOff(1_000, 2);
+        backOff.setMaxInterval(30_000);
+        return new DefaultErrorHandler(backOff);
+    }
+
+    //Пресет users.kafka.producer-preset дополняет настройки продюсера, не перекрывая заданные явно
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer producerPresetCustomizer(UserKafkaProperties kafkaProperties) {
+        return producerFactory -> {
+            Map<String, Object> preset = new HashMap<>(kafkaProperties.getProducerPreset().settings());
+            preset.keySet().removeAll(producerFactory.getConfigurationProperties().keySet());
+            producerFactory.updateConfigs(preset);
+        };
+    }
+
+    //KafkaAdmin создаёт топик или добавляет партиции до users.kafka.partitions, чтобы было что делить
+    //между users.kafka.consumer.concurrency потребителями. Уменьшить число партиций Kafka не позволяет
+    @Bean
+    public NewTopic userEventsTopic(UserKafkaProperties kafkaProperties) {
+        return TopicBuilder.name(UserEvents.TOPIC).partitions(kafkaProperties.getPartitions()).build();
+    }
+
+    //Заменяет LoggingProducerListener по умолчанию в автоконфигурируемом KafkaTemplate
+    @Bean
+    public ProducerListener<Object, Object> kafkaProducerListener(MeterRegistry meterRegistry) {
+        return new MeteredProducerListener(meterRegistry);
+    }
+}
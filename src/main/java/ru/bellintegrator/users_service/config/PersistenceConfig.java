@@ -0,0 +1,33 @@
+package ru.bellintegrator.users_service.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+@Configuration
+public class PersistenceConfig {
+
+    //Пул Hikari оборачивается логом медленных запросов, если задан users.sql-log.slow-threshold (включён в prod).
+    //Метрики и health пула продолжают работать: DelegatingDataSource разворачивается до HikariDataSource
+    @Bean
+    public static BeanPostProcessor slowQueryLogPostProcessor(
+            @Value("${users.sql-log.slow-threshold:0}") Duration threshold,
+            @Value("${users.sql-log.sample-rate:1.0}") double sampleRate,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof SlowQueryDataSource) && !threshold.isZero()) {
+                    return new SlowQueryDataSource(dataSource, threshold, sampleRate, meterRegistry::getIfAvailable);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -1,18 +1,27 @@
 package ru.bellintegrator.users_service.config;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.domain.Page;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
-import org.springframework.data.web.config.SpringDataJacksonConfiguration;
+import ru.bellintegrator.users_service.cache.CacheExpiry;
+import ru.bellintegrator.users_service.cache.CacheLoadCoordinator;
+import ru.bellintegrator.users_service.cache.CachedValue;
+import ru.bellintegrator.users_service.cache.RefreshingCacheManager;
+import ru.bellintegrator.users_service.cache.TwoLevelCacheManager;
 import ru.bellintegrator.users_service.model.UserDto;
 
 import java.time.Duration;
@@ -20,37 +29,63 @@ import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@ConditionalOnProperty(name = "spring.cache.type", havingValue = "redis")
 public class RedisConfig {
 
-    private final ObjectMapper objectMapper;
-
-    public RedisConfig(ObjectMapper objectMapper) {
-        objectMapper.registerModule(new SpringDataJacksonConfiguration.PageModule(null));
-        this.objectMapper = objectMapper;
-    }
-
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, StringRedisTemplate redisTemplate,
+                                     UserCacheProperties cacheProperties, CacheLoadCoordinator coordinator,
+                                     MeterRegistry meterRegistry) {
 
-        Jackson2JsonRedisSerializer<UserDto> userDtoSerializer = new Jackson2JsonRedisSerializer<>(UserDto.class);
+        JavaType cachedUserType = TypeFactory.defaultInstance().constructParametricType(CachedValue.class, UserDto.class);
+        Jackson2JsonRedisSerializer<CachedValue<UserDto>> userDtoSerializer =
+                new Jackson2JsonRedisSerializer<>(new ObjectMapper(), cachedUserType);
 
-        RedisCacheConfiguration userCacheConfig = RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(10)).disableCachingNullValues()
+        //запись живёт в Redis на stale-while-revalidate дольше своего срока свежести (с разбросом),
+        //свежесть проверяет RefreshingCache.
+        //Префикс user:entry:: отделяет записи в CachedValue от прежних записей user:: без срока свежести
+        UserCacheProperties.User user = cacheProperties.getUser();
+        Duration staleWhileRevalidate = cacheProperties.getLoading().getStaleWhileRevalidate();
+        RedisCacheConfiguration userCacheConfig = RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl((key, value) -> value instanceof CachedValue<?> cached
+                        ? Duration.ofMillis(Math.max(cached.freshUntil() - System.currentTimeMillis(), 1)).plus(staleWhileRevalidate)
+                        : user.getTtl().plus(staleWhileRevalidate))
+                .disableCachingNullValues()
+                .computePrefixWith(name -> name + ":entry::")
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(userDtoSerializer));
 
-        JavaType pageUserDtoType = objectMapper.getTypeFactory().constructParametricType(Page.class, UserDto.class);
-        Jackson2JsonRedisSerializer<Page<UserDto>> pageSerializer = new Jackson2JsonRedisSerializer<>(objectMapper ,pageUserDtoType);
-
-        RedisCacheConfiguration usersPageCacheConfig = RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(10)).disableCachingNullValues()
-                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(pageSerializer));
-
         Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
         cacheConfigurations.put("user", userCacheConfig);
-        cacheConfigurations.put("users", usersPageCacheConfig);
 
-        return RedisCacheManager.builder(redisConnectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
                 .withInitialCacheConfigurations(cacheConfigurations)
                 .build();
+        redisCacheManager.initializeCaches();
+        CacheExpiry userExpiry = new CacheExpiry(user.getTtl(), user.getTtlJitter(),
+                cacheProperties.getLoading().getEarlyRefreshBeta());
+        //Spring Boot привязывает метрики только к RedisCache, а наружу отдаются обёртки: cache.gets/puts/evictions
+        //считает RefreshingCache, а с near-кэшем - TwoLevelCache (иначе одни и те же счётчики росли бы дважды)
+        boolean nearEnabled = cacheProperties.getNear().isEnabled();
+        CacheManager refreshingCacheManager = new RefreshingCacheManager(redisCacheManager, Map.of("user", userExpiry), coordinator,
+                redisConnectionFactory, nearEnabled ? null : meterRegistry);
+
+        if (!nearEnabled) {
+            return refreshingCacheManager;
+        }
+        return new TwoLevelCacheManager(refreshingCacheManager, redisTemplate, cacheProperties.getNear(), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "users.cache.near.enabled", havingValue = "true", matchIfMissing = true)
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                            CacheManager cacheManager,
+                                                                            UserCacheProperties cacheProperties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        if (cacheManager instanceof TwoLevelCacheManager twoLevelCacheManager) {
+            container.addMessageListener(twoLevelCacheManager, new ChannelTopic(cacheProperties.getNear().getChannel()));
+        }
+        return container;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package ru.bellintegrator.users_service.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+//Лог медленных запросов вместо show-sql: замеряется каждый execute* через JDBC (JPA и JdbcTemplate).
+//COPY в UserCopyRepository идёт через PGConnection.getCopyAPI() мимо Statement и сюда не попадает.
+//Всё медленнее порога считается в users.sql.slow, а в лог попадает только доля sample-rate из них -
+//общая деградация БД не превращается в поток одинаковых строк
+@Slf4j
+public class SlowQueryDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    static final String SLOW_COUNTER = "users.sql.slow";
+    private static final int MAX_SQL_LENGTH = 500;
+
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final Supplier<MeterRegistry> meterRegistry;
+
+    public SlowQueryDataSource(DataSource target, Duration threshold, double sampleRate, Supplier<MeterRegistry> meterRegistry) {
+        super(target);
+        this.thresholdNanos = threshold.toNanos();
+        this.sampleRate = sampleRate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    //пул закрывается вместе с контекстом, как и без обёртки
+    @Override
+    public void close() throws Exception {
+        if (obtainTargetDataSource() instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    //текст prepareStatement/prepareCall запоминается, у Statement он приходит в execute*
+                    if (result instanceof Statement statement && method.getReturnType().isInterface()) {
+                        String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                        return wrap(statement, method.getReturnType(), sql);
+                    }
+                    return result;
+                });
+    }
+
+    private Object wrap(Statement statement, Class<?> type, String preparedSql) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+            long started = System.nanoTime();
+            try {
+                return invoke(statement, method, args);
+            } finally {
+                long elapsed = System.nanoTime() - started;
+                if (elapsed >= thresholdNanos) {
+                    slow(elapsed, args != null && args.length > 0 && args[0] instanceof String s ? s : preparedSql);
+                }
+            }
+        };
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private void slow(long elapsedNanos, String sql) {
+        MeterRegistry registry = meterRegistry.get();
+        if (registry != null) {
+            registry.counter(SLOW_COUNTER).increment();
+        }
+        if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            log.warn("Slow SQL ({} ms): {}", elapsedNanos / 1_000_000, abbreviate(sql));
+        }
+    }
+
+    private static String abbreviate(String sql) {
+        if (sql == null) return "<batch>";
+        //многострочные INSERT из UserBatchRepository - десятки килобайт одинаковых "(?, ?, ...)"
+        return sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + "... (" + sql.length() + " chars)" : sql;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
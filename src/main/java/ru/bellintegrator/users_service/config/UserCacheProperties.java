@@ -0,0 +1,104 @@
+package ru.bellintegrator.users_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Set;
+
+@Data
+@ConfigurationProperties(prefix = "users.cache")
+//Настройки кэшей user/users
+public class UserCacheProperties {
+
+    private Near near = new Near();
+    private User user = new User();
+    private Pages pages = new Pages();
+    private Existence existence = new Existence();
+    private Index index = new Index();
+    private Loading loading = new Loading();
+    private Warmup warmup = new Warmup();
+
+    @Data
+    //Локальный (in-heap) уровень перед Redis
+    public static class Near {
+        private boolean enabled = true;
+        private Set<String> caches = Set.of("user");
+        private long maximumSize = 10_000;
+        private Duration ttl = Duration.ofSeconds(30);
+        private String channel = "users-service:cache-invalidation";
+    }
+
+    @Data
+    //Кэш getUserById в Redis
+    public static class User {
+        private Duration ttl = Duration.ofMinutes(10);
+        //срок каждой записи сокращается на случайную долю TTL до этой, чтобы загруженные вместе записи истекали вразнобой
+        private double ttlJitter = 0.1;
+    }
+
+    @Data
+    //Версионированный кэш страниц getAll
+    public static class Pages {
+        private Duration ttl = Duration.ofMinutes(10);
+        private double ttlJitter = 0.1;
+        //предел users:filters: каждая пачка событий проверяет все отслеживаемые фильтры
+        private int maxTrackedFilters = 10_000;
+    }
+
+    @Data
+    //Bloom-фильтр известных id для проверок существования без запроса в БД
+    public static class Existence {
+        private boolean enabled = true;
+        private long expectedInsertions = 10_000_000;
+        private double falsePositiveProbability = 0.01;
+        //полная пересборка из БД: удалённые id из Bloom-фильтра не убрать
+        private Duration rebuildInterval = Duration.ofHours(6);
+    }
+
+    @Data
+    //Индекс фильтров getAll в памяти инстанса, наполняемый из топиков USER_*
+    public static class Index {
+        private boolean enabled = false;
+        private int snapshotFetchSize = 10_000;
+        private Duration watermarkCheckInterval = Duration.ofSeconds(1);
+        //без подтверждения водяного знака дольше этого срока запросы уходят в БД
+        private Duration watermarkTtl = Duration.ofSeconds(5);
+    }
+
+    @Data
+    //Загрузка при промахе кэшей user/users: одна загрузка на ключ в инстансе (остальные ждут её результат),
+    //аренда в Redis на ключ между инстансами и отдача устаревшей записи, пока в фоне идёт обновление
+    public static class Loading {
+        private boolean leaseEnabled = false;
+        //аренда истекает сама, если загрузивший инстанс упал
+        private Duration leaseTtl = Duration.ofSeconds(5);
+        //сколько ждать результата чужой аренды, прежде чем загрузить самому
+        private Duration leaseWait = Duration.ofSeconds(1);
+        private Duration leasePollInterval = Duration.ofMillis(20);
+        //сколько после TTL запись ещё отдаётся, пока её обновляют; 0 - без отдачи устаревшего
+        private Duration staleWhileRevalidate = Duration.ofMinutes(1);
+        //beta раннего обновления XFetch: чем больше, тем раньше до истечения; 0 - только после истечения
+        private double earlyRefreshBeta = 1.0;
+        private int refreshThreads = 4;
+        private int refreshQueueSize = 1000;
+    }
+
+    @Data
+    //Прогрев user/users самыми частыми ключами при старте и после полной инвалидации
+    public static class Warmup {
+        private boolean enabled = true;
+        //сколько самых частых id и страниц getAll отслеживать и прогревать
+        private int users = 10_000;
+        private int pages = 500;
+        private int sketchDepth = 4;
+        //частоты делятся пополам: горячими остаются недавние ключи
+        private Duration decayInterval = Duration.ofMinutes(10);
+        //горячий набор инстанса публикуется в Redis, откуда его прогревают после рестарта
+        private Duration publishInterval = Duration.ofMinutes(1);
+        private Duration hotSetTtl = Duration.ofHours(1);
+        //одновременных загрузок из БД при прогреве
+        private int concurrency = 4;
+        private int batchSize = 500;
+    }
+}
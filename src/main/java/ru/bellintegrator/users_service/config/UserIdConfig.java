@@ -0,0 +1,24 @@
+package ru.bellintegrator.users_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.bellintegrator.users_service.entity.TimeOrderedUserIdGenerator;
+import ru.bellintegrator.users_service.entity.UserIdGenerator;
+
+import java.util.UUID;
+
+@Configuration
+public class UserIdConfig {
+
+    //time-ordered (UUIDv7) или random (v4). Оба - обычные uuid в той же колонке: переключение и смешанные
+    //версии инстансов при выкатке не требуют миграции, старые строки сохраняют свои v4
+    @Bean
+    public UserIdGenerator userIdGenerator(@Value("${users.id.generator:time-ordered}") String generator) {
+        return switch (generator) {
+            case "time-ordered" -> new TimeOrderedUserIdGenerator();
+            case "random" -> UUID::randomUUID;
+            default -> throw new IllegalArgumentException("Unknown users.id.generator: " + generator);
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package ru.bellintegrator.users_service.config;
+
+import lombok.Data;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "users.kafka")
+//Настройки продюсера и потребителей событий пользователей
+public class UserKafkaProperties {
+
+    private ProducerPreset producerPreset = ProducerPreset.BALANCED;
+    //число партиций топиков USER_*; при создании топиков и увеличении через KafkaAdmin
+    private int partitions = 6;
+    private Consumer consumer = new Consumer();
+
+    @Data
+    //Параллелизм EventListener
+    public static class Consumer {
+        //потоков-потребителей на топик; больше числа партиций смысла нет, лишние простаивают
+        private int concurrency = 1;
+        //дорожек внутри пачки: пользователи раскладываются по hash(id), дорожки пишут в БД параллельно
+        private int lanes = 1;
+    }
+
+    //Набор linger/batch/compression. Значения, явно заданные в spring.kafka.producer, важнее пресета
+    public enum ProducerPreset {
+        //каждая запись уходит сразу, без сжатия
+        LATENCY(Map.of(ProducerConfig.LINGER_MS_CONFIG, 0,
+                ProducerConfig.BATCH_SIZE_CONFIG, 16_384,
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, "none")),
+        BALANCED(Map.of(ProducerConfig.LINGER_MS_CONFIG, 5,
+                ProducerConfig.BATCH_SIZE_CONFIG, 131_072,
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4")),
+        //крупные сжатые пачки для импорта и разбора outbox
+        THROUGHPUT(Map.of(ProducerConfig.LINGER_MS_CONFIG, 50,
+                ProducerConfig.BATCH_SIZE_CONFIG, 524_288,
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd",
+                ProducerConfig.BUFFER_MEMORY_CONFIG, 134_217_728L));
+
+        private final Map<String, Object> settings;
+
+        ProducerPreset(Map<String, Object> settings) {
+            this.settings = settings;
+        }
+
+        public Map<String, Object> settings() {
+            return settings;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ru.bellintegrator.users_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "users.snapshot")
+//Снимки таблицы users и восстановление из снимка и событий Kafka после него
+public class UserSnapshotProperties {
+
+    //периодическая запись снимков; достаточно одного инстанса на каталог
+    private boolean enabled = false;
+    private Path directory = Path.of("snapshots");
+    private Duration interval = Duration.ofHours(1);
+    //сколько последних снимков хранить
+    private int retain = 2;
+    //строк в блоке: колонки блока пишутся подряд и сжимаются вместе
+    private int blockSize = 65_536;
+    private int fetchSize = 10_000;
+    private Rebuild rebuild = new Rebuild();
+
+    @Data
+    //Пересоздание users при старте инстанса, до запуска потребителей и веб-сервера
+    public static class Rebuild {
+        private boolean enabled = false;
+        private Duration pollTimeout = Duration.ofSeconds(1);
+    }
+}
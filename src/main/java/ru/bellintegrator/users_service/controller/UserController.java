@@ -4,55 +4,101 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.SortDefault;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.bellintegrator.users_service.cache.HotKeyTracker;
+import ru.bellintegrator.users_service.model.BulkImportResult;
+import ru.bellintegrator.users_service.model.CountMode;
 import ru.bellintegrator.users_service.model.UserDto;
 import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.model.UserScrollPage;
 import org.springframework.cloud.openfeign.SpringQueryMap;
+import ru.bellintegrator.users_service.service.UserBulkService;
 import ru.bellintegrator.users_service.service.UserService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
+//Строки о вызовах - поля key=value без тела запроса; долю и частоту задаёт LogSamplingFilter в logback-spring.xml
 @Slf4j
 @RequestMapping("/users")
 @RestController
 public class UserController {
 
     private final UserService userService;
+    private final UserBulkService userBulkService;
+    private final HotKeyTracker hotKeyTracker;
 
-    public UserController(UserService userService) {
+    //Запросы чтения считаются в HotKeyTracker здесь, а не в UserService: попадания в кэш user до сервиса не доходят
+    public UserController(UserService userService, UserBulkService userBulkService, HotKeyTracker hotKeyTracker) {
         this.userService = userService;
+        this.userBulkService = userBulkService;
+        this.hotKeyTracker = hotKeyTracker;
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<UserDto> getById(@PathVariable("id") UUID id) {
-        log.info("Called getById: id={}", id);
-        return ResponseEntity.ok().body(userService.getUserById(id));
+        log.atInfo().addKeyValue("id", id).log("Called getById");
+        UserDto user = userService.getUserById(id);
+        //только найденные: id несуществующих пользователей не должны вытеснять горячие ключи прогрева
+        hotKeyTracker.recordUser(id);
+        return ResponseEntity.ok().body(user);
     }
 
     @GetMapping
     public ResponseEntity<Page<UserDto>> getAll(@SpringQueryMap UserFilter filter, Pageable pageable) {
-        log.info("Called getAll with filter = {}", filter);
-        return ResponseEntity.ok().body(userService.getAll(filter, pageable));
+        log.atInfo().addKeyValue("filter", filter).log("Called getAll");
+        Page<UserDto> page = userService.getAll(filter, pageable);
+        hotKeyTracker.recordPage(filter, pageable);
+        return ResponseEntity.ok().body(page);
+    }
+
+    @GetMapping("/scroll")
+    public ResponseEntity<UserScrollPage> scroll(@SpringQueryMap UserFilter filter,
+                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                 @RequestParam(value = "size", defaultValue = "20") int size,
+                                                 @RequestParam(value = "count", defaultValue = "NONE") CountMode count,
+                                                 @SortDefault("id") Sort sort) {
+        log.atInfo().addKeyValue("filter", filter).addKeyValue("cursor", cursor).log("Called scroll");
+        return ResponseEntity.ok().body(userService.scroll(filter, cursor, sort, size, count));
     }
 
     @PostMapping
     public ResponseEntity<Void> create(@RequestBody UserDto userToCreate) {
-        log.info("Called create: userToCreate={}", userToCreate);
+        log.info("Called create");
         userService.createUser(userToCreate);
         return ResponseEntity.accepted().build();
     }
 
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<BulkImportResult> bulkCreate(InputStream body) throws IOException {
+        log.info("Called bulkCreate");
+        return ResponseEntity.accepted().body(userBulkService.importUsers(body));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@SpringQueryMap UserFilter filter) {
+        log.atInfo().addKeyValue("filter", filter).log("Called export");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> userBulkService.exportUsers(filter, out));
+    }
+
     @PutMapping
     public ResponseEntity<Void> update(@RequestBody UserDto userToUpdate) {
-        log.info("Called update: userToUpdate={}", userToUpdate);
+        log.atInfo().addKeyValue("id", userToUpdate.getId()).log("Called update");
         userService.updateUser(userToUpdate);
         return ResponseEntity.accepted().build();
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteById(@PathVariable("id") UUID id) {
-        log.info("Called deleteById: id={} ", id);
+        log.atInfo().addKeyValue("id", id).log("Called deleteById");
         userService.deleteUserById(id);
         return ResponseEntity.noContent().build();
     }
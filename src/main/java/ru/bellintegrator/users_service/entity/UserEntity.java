@@ -11,9 +11,9 @@ import java.util.UUID;
 @AllArgsConstructor
 @Table(name = "users")
 public class UserEntity {
+    //назначается до записи генератором UserIdGenerator: строки пишутся через JDBC и COPY, а не через JPA
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.AUTO)
     private UUID id;
 
     @Column(name = "firstname")
@@ -22,4 +22,11 @@ public class UserEntity {
     private String lastname;
     @Column(name = "age")
     private int age;
+    //версия последнего применённого события (см. UserEvent), не версия оптимистической блокировки
+    @Column(name = "version")
+    private long version;
+
+    public UserEntity(UUID id, String firstname, String lastname, int age) {
+        this(id, firstname, lastname, age, 0);
+    }
 }
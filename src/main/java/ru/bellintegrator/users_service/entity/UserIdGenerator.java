@@ -0,0 +1,11 @@
+package ru.bellintegrator.users_service.entity;
+
+import java.util.UUID;
+
+//Единственный источник id новых пользователей: id назначаются до записи в outbox и БД, у UserEntity генератора нет.
+//Реализацию выбирает users.id.generator (см. UserIdConfig)
+@FunctionalInterface
+public interface UserIdGenerator {
+
+    UUID next();
+}
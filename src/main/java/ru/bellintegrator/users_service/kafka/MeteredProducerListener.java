@@ -0,0 +1,28 @@
+package ru.bellintegrator.users_service.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.kafka.support.LoggingProducerListener;
+
+//Итог каждой отправки KafkaTemplate как метрика users.kafka.sent{topic, result}.
+//Вызывается из потока продюсера по подтверждению брокера, отправителя не блокирует; ошибки по-прежнему логируются
+public class MeteredProducerListener extends LoggingProducerListener<Object, Object> {
+
+    private final MeterRegistry meterRegistry;
+
+    public MeteredProducerListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onSuccess(ProducerRecord<Object, Object> record, RecordMetadata metadata) {
+        meterRegistry.counter("users.kafka.sent", "topic", record.topic(), "result", "success").increment();
+    }
+
+    @Override
+    public void onError(ProducerRecord<Object, Object> record, RecordMetadata metadata, Exception exception) {
+        meterRegistry.counter("users.kafka.sent", "topic", record.topic(), "result", "failure").increment();
+        super.onError(record, metadata, exception);
+    }
+}
@@ -0,0 +1,170 @@
+package ru.bellintegrator.users_service.kafka;
+
+import org.apache.kafka.common.errors.SerializationException;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+//Бинарный формат события пользователя в Kafka.
+//[version][flags][16 байт id][varint len+utf8 firstname][varint len+utf8 lastname][zigzag varint age],
+//отсутствующие (null) поля не пишутся, их наличие задают биты flags.
+//Версия никогда не равна '{', поэтому JSON-сообщения периода миграции отличаются по первому байту.
+//decode проверяет версию, флаги и все длины: повреждённая запись даёт SerializationException, а не сбой чтения массива
+public final class UserEventCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_FIRSTNAME = 1 << 1;
+    private static final int HAS_LASTNAME = 1 << 2;
+    private static final int HAS_AGE = 1 << 3;
+    private static final int KNOWN_FLAGS = HAS_ID | HAS_FIRSTNAME | HAS_LASTNAME | HAS_AGE;
+    private static final int MAX_VAR_INT_SIZE = 5;
+
+    private UserEventCodec() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data.length > 0 && data[0] == VERSION;
+    }
+
+    //Размер считается заранее: одна аллокация результата плюс байты строк
+    public static byte[] encode(UserDto user) {
+        byte[] firstname = user.getFirstname() != null ? user.getFirstname().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] lastname = user.getLastname() != null ? user.getLastname().getBytes(StandardCharsets.UTF_8) : null;
+        int age = user.getAge() != null ? zigZag(user.getAge()) : 0;
+        int size = 2 + (user.getId() != null ? 16 : 0)
+                + (firstname != null ? varIntSize(firstname.length) + firstname.length : 0)
+                + (lastname != null ? varIntSize(lastname.length) + lastname.length : 0)
+                + (user.getAge() != null ? varIntSize(age) : 0);
+
+        byte[] out = new byte[size];
+        out[0] = VERSION;
+        out[1] = (byte) ((user.getId() != null ? HAS_ID : 0)
+                | (firstname != null ? HAS_FIRSTNAME : 0)
+                | (lastname != null ? HAS_LASTNAME : 0)
+                | (user.getAge() != null ? HAS_AGE : 0));
+        int position = 2;
+        if (user.getId() != null) {
+            position = writeLong(out, position, user.getId().getMostSignificantBits());
+            position = writeLong(out, position, user.getId().getLeastSignificantBits());
+        }
+        if (firstname != null) position = writeBytes(out, position, firstname);
+        if (lastname != null) position = writeBytes(out, position, lastname);
+        if (user.getAge() != null) writeVarInt(out, position, age);
+        return out;
+    }
+
+    public static UserDto decode(byte[] data) {
+        if (!isBinary(data)) {
+            throw new SerializationException("Unsupported user event encoding version: " + (data.length > 0 ? data[0] : "empty"));
+        }
+        if (data.length < 2) {
+            throw new SerializationException("Truncated user event: no flags");
+        }
+        int flags = data[1];
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new SerializationException("Unknown user event flags: " + Integer.toBinaryString(flags & 0xFF));
+        }
+        int position = 2;
+        UserDto user = new UserDto();
+        if ((flags & HAS_ID) != 0) {
+            require(data, position, 16, "id");
+            user.setId(new UUID(readLong(data, position), readLong(data, position + 8)));
+            position += 16;
+        }
+        if ((flags & HAS_FIRSTNAME) != 0) {
+            int length = readVarInt(data, position);
+            position += varIntSize(length);
+            require(data, position, length, "firstname");
+            user.setFirstname(new String(data, position, length, StandardCharsets.UTF_8));
+            position += length;
+        }
+        if ((flags & HAS_LASTNAME) != 0) {
+            int length = readVarInt(data, position);
+            position += varIntSize(length);
+            require(data, position, length, "lastname");
+            user.setLastname(new String(data, position, length, StandardCharsets.UTF_8));
+            position += length;
+        }
+        if ((flags & HAS_AGE) != 0) {
+            int age = readVarInt(data, position);
+            user.setAge(unZigZag(age));
+            position += varIntSize(age);
+        }
+        if (position != data.length) {
+            throw new SerializationException("Unexpected " + (data.length - position) + " trailing bytes in user event");
+        }
+        return user;
+    }
+
+    //length < 0 - varint длины переполнил int
+    private static void require(byte[] data, int position, int length, String field) {
+        if (length < 0 || length > data.length - position) {
+            throw new SerializationException("Truncated user event: " + field + " needs " + length + " bytes, "
+                    + (data.length - position) + " left");
+        }
+    }
+
+    private static int writeBytes(byte[] out, int position, byte[] value) {
+        position = writeVarInt(out, position, value.length);
+        System.arraycopy(value, 0, out, position, value.length);
+        return position + value.length;
+    }
+
+    private static int writeLong(byte[] out, int position, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out[position++] = (byte) (value >>> shift);
+        }
+        return position;
+    }
+
+    private static int writeVarInt(byte[] out, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    private static long readLong(byte[] data, int position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[position + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int readVarInt(byte[] data, int position) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (position >= data.length || shift >= 7 * MAX_VAR_INT_SIZE) {
+                throw new SerializationException("Truncated or overlong varint in user event at " + position);
+            }
+            b = data[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        //лишний нулевой байт разошёлся бы с varIntSize, по которому decode сдвигает позицию
+        if (b == 0 && shift > 7) {
+            throw new SerializationException("Non-minimal varint in user event at " + (position - 1));
+        }
+        return value;
+    }
+
+    private static int varIntSize(int value) {
+        return (38 - Integer.numberOfLeadingZeros(value | 1)) / 7;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.bellintegrator.users_service.kafka;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import ru.bellintegrator.users_service.model.UserDto;
+
+//Читает бинарный формат и, на время миграции, прежний JSON от JsonSerializer.
+//Формат определяется по первому байту, заголовки типа JSON игнорируются - тип всегда UserDto.
+public class UserEventDeserializer implements Deserializer<UserDto> {
+
+    private final JsonDeserializer<UserDto> jsonDeserializer = new JsonDeserializer<>(UserDto.class, false);
+
+    @Override
+    public UserDto deserialize(String topic, byte[] data) {
+        if (data == null) return null;
+        return UserEventCodec.isBinary(data) ? UserEventCodec.decode(data) : jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public UserDto deserialize(String topic, Headers headers, byte[] data) {
+        return deserialize(topic, data);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+}
@@ -0,0 +1,60 @@
+package ru.bellintegrator.users_service.kafka;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+//Закоммиченные смещения группы EventListener по топикам событий пользователей:
+//всё, что лежит до них, уже применено к БД. Водяной знак для индекса и снимков users
+public final class UserEventOffsets implements AutoCloseable {
+
+    public static final String DATABASE_GROUP_ID = "users-service";
+    public static final Set<String> TOPICS = Set.of(UserEvents.TOPIC, "USER_CREATE", "USER_UPDATE", "USER_DELETE");
+
+    private final AdminClient adminClient;
+
+    public UserEventOffsets(KafkaAdmin kafkaAdmin) {
+        this.adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+    }
+
+    public Map<TopicPartition, Long> committed() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = await(adminClient.listConsumerGroupOffsets(DATABASE_GROUP_ID)
+                .partitionsToOffsetAndMetadata(), "read offsets of");
+        return offsets.entrySet().stream()
+                .filter(e -> e.getValue() != null && TOPICS.contains(e.getKey().topic()))
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().offset()));
+    }
+
+    //Сдвигает смещения группы только вперёд. Kafka отклонит запрос, если в группе есть активные потребители
+    public void advance(Map<TopicPartition, Long> offsets) {
+        Map<TopicPartition, Long> committed = committed();
+        Map<TopicPartition, OffsetAndMetadata> forward = offsets.entrySet().stream()
+                .filter(e -> e.getValue() > committed.getOrDefault(e.getKey(), -1L))
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> new OffsetAndMetadata(e.getValue())));
+        if (forward.isEmpty()) return;
+        await(adminClient.alterConsumerGroupOffsets(DATABASE_GROUP_ID, forward).all(), "advance offsets of");
+    }
+
+    @Override
+    public void close() {
+        adminClient.close();
+    }
+
+    private static <T> T await(KafkaFuture<T> future, String action) {
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while trying to " + action + " " + DATABASE_GROUP_ID, e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to " + action + " " + DATABASE_GROUP_ID, e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package ru.bellintegrator.users_service.kafka;
+
+import org.apache.kafka.common.serialization.Serializer;
+import ru.bellintegrator.users_service.model.UserDto;
+
+//Сериализатор событий пользователя в бинарный формат UserEventCodec
+public class UserEventSerializer implements Serializer<UserDto> {
+
+    @Override
+    public byte[] serialize(String topic, UserDto data) {
+        return data == null ? null : UserEventCodec.encode(data);
+    }
+}
@@ -0,0 +1,51 @@
+package ru.bellintegrator.users_service.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//Топик user-events: ключ - id пользователя, тип и версия - в заголовках, значение - UserDto.
+//Все события пользователя попадают в одну партицию и читаются в порядке записи
+public final class UserEvents {
+
+    public static final String TOPIC = "user-events";
+    public static final String TYPE_HEADER = "user-event-type";
+    public static final String VERSION_HEADER = "user-event-version";
+
+    private UserEvents() {
+    }
+
+    public static ProducerRecord<String, UserDto> toRecord(UserEvent event) {
+        ProducerRecord<String, UserDto> record = new ProducerRecord<>(TOPIC, event.user().getId().toString(), event.user());
+        record.headers().add(TYPE_HEADER, event.type().name().getBytes(StandardCharsets.UTF_8));
+        if (event.version() != null) {
+            record.headers().add(VERSION_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(event.version()).array());
+        }
+        return record;
+    }
+
+    //Запись старого топика USER_* получает тип по имени топика и не имеет версии; null - тип не определить
+    public static UserEvent fromRecord(ConsumerRecord<String, UserDto> record) {
+        UserEventType type = type(record);
+        if (type == null) return null;
+        Header version = record.headers().lastHeader(VERSION_HEADER);
+        return new UserEvent(type, record.value(),
+                version != null && version.value().length == Long.BYTES ? ByteBuffer.wrap(version.value()).getLong() : null);
+    }
+
+    private static UserEventType type(ConsumerRecord<String, UserDto> record) {
+        Header type = record.headers().lastHeader(TYPE_HEADER);
+        if (type != null) {
+            String name = new String(type.value(), StandardCharsets.UTF_8);
+            return Arrays.stream(UserEventType.values()).filter(t -> t.name().equals(name)).findFirst().orElse(null);
+        }
+        return Arrays.stream(UserEventType.values()).filter(t -> t.legacyTopic().equals(record.topic())).findFirst().orElse(null);
+    }
+}
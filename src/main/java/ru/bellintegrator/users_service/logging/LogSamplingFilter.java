@@ -0,0 +1,113 @@
+package ru.bellintegrator.users_service.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Выборка и ограничение частоты логов по префиксу имени логгера (logback-spring.xml).
+//Решение принимается до создания события: отброшенная строка не форматируется и не занимает очередь AsyncAppender.
+//Fluent API (log.atInfo()...) проверяется здесь один раз, на atInfo(). Уровни выше maxLevel (WARN, ERROR) проходят всегда
+public class LogSamplingFilter extends TurboFilter {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(LogSamplingFilter.class);
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final ConcurrentMap<String, Optional<Rule>> rulesByLogger = new ConcurrentHashMap<>();
+    private Level maxLevel = Level.INFO;
+
+    public void addRule(Rule rule) {
+        rules.add(rule);
+    }
+
+    public void setMaxLevel(String maxLevel) {
+        this.maxLevel = Level.toLevel(maxLevel, Level.INFO);
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        //выключенный уровень отбросит сам логгер; isEnabledFor здесь нельзя - он снова вызывает turbo-фильтры
+        if (!isStarted() || level.toInt() > maxLevel.toInt() || level.toInt() < logger.getEffectiveLevel().toInt()) {
+            return FilterReply.NEUTRAL;
+        }
+        Optional<Rule> rule = rulesByLogger.computeIfAbsent(logger.getName(), this::findRule);
+        return rule.isEmpty() || rule.get().tryAcquire() ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    //Правило с самым длинным префиксом: точное имя класса сильнее пакета
+    private Optional<Rule> findRule(String loggerName) {
+        Rule best = null;
+        for (Rule rule : rules) {
+            String prefix = rule.getLogger();
+            boolean matches = loggerName.equals(prefix) || loggerName.startsWith(prefix + ".");
+            if (matches && (best == null || prefix.length() > best.getLogger().length())) best = rule;
+        }
+        return Optional.ofNullable(best);
+    }
+
+    //sampleRate - доля пропускаемых строк, permitsPerSecond - потолок в секунду после выборки (0 - без потолка)
+    public static class Rule {
+        private String logger;
+        private double sampleRate = 1;
+        private int permitsPerSecond;
+
+        //секунда окна << 32 | строк в ней; одно CAS-обновление на строку
+        private final AtomicLong window = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        public String getLogger() {
+            return logger;
+        }
+
+        public void setLogger(String logger) {
+            this.logger = logger;
+        }
+
+        public void setSampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        public void setPermitsPerSecond(int permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+        }
+
+        boolean tryAcquire() {
+            if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                return false;
+            }
+            return permitsPerSecond <= 0 || tryAcquire(System.currentTimeMillis() / 1000);
+        }
+
+        boolean tryAcquire(long second) {
+            while (true) {
+                long current = window.get();
+                long used = (current >>> 32) == (second & 0xFFFFFFFFL) ? current & 0xFFFFFFFFL : 0;
+                if (used >= permitsPerSecond) {
+                    suppressed.incrementAndGet();
+                    return false;
+                }
+                if (window.compareAndSet(current, (second & 0xFFFFFFFFL) << 32 | (used + 1))) {
+                    if (used == 0) reportSuppressed();
+                    return true;
+                }
+            }
+        }
+
+        //Итог по отброшенным за прошлые окна - первой строкой нового окна, уровнем WARN в обход правила
+        private void reportSuppressed() {
+            long dropped = suppressed.getAndSet(0);
+            if (dropped > 0) {
+                log.warn("Rate limit suppressed {} log events from {}", dropped, logger);
+            }
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package ru.bellintegrator.users_service.mapper;
 
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import ru.bellintegrator.users_service.entity.UserEntity;
 import ru.bellintegrator.users_service.model.UserDto;
 
 @Mapper(componentModel = "spring")
 public interface UserMapper {
     UserDto toDomainUser(UserEntity entity);
+    @Mapping(target = "version", ignore = true)
     UserEntity toUserEntity(UserDto domain);
 }
\ No newline at end of file
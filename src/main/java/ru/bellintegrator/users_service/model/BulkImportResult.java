@@ -0,0 +1,12 @@
+package ru.bellintegrator.users_service.model;
+
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+//Итог пакетного импорта: сколько событий отправлено в Kafka и сколько строк отклонено
+public class BulkImportResult {
+    private long accepted;
+    private long rejected;
+}
@@ -0,0 +1,11 @@
+package ru.bellintegrator.users_service.model;
+
+//Как считать totalElements при прокрутке по курсору
+public enum CountMode {
+    //не считать
+    NONE,
+    //отдельный count(*) по фильтру
+    EXACT,
+    //оценка из статистики Postgres (pg_class.reltuples), только для запроса без фильтра
+    ESTIMATE
+}
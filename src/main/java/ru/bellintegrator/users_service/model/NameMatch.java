@@ -0,0 +1,19 @@
+package ru.bellintegrator.users_service.model;
+
+//Способ поиска по имени в UserFilter. Выбирает вызывающий параметром match в GET /users (по умолчанию CONTAINS),
+//по значению его уточняет forValue, чтобы запрос всегда шёл по индексу
+public enum NameMatch {
+    //lower(name) LIKE '%value%' - GIN-индекс pg_trgm, для значений от 3 символов
+    CONTAINS,
+    //lower(name) LIKE 'value%' - B-tree индекс с text_pattern_ops
+    PREFIX;
+
+    //Короче триграммы pg_trgm не ограничивает '%value%', и CONTAINS свёлся бы к полному просмотру таблицы
+    public static final int MIN_CONTAINS_LENGTH = 3;
+
+    //Фактический способ поиска по значению: CONTAINS с короткой подстрокой выполняется как PREFIX.
+    //Общий для запроса в БД, UserFilter.matches и UserFilterIndex, чтобы результаты совпадали
+    public NameMatch forValue(String value) {
+        return this == CONTAINS && value != null && value.length() < MIN_CONTAINS_LENGTH ? PREFIX : this;
+    }
+}
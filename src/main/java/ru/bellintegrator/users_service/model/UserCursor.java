@@ -0,0 +1,90 @@
+package ru.bellintegrator.users_service.model;
+
+import org.springframework.data.domain.Sort;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Set;
+import java.util.UUID;
+
+//Непрозрачный курсор keyset-пагинации: поле и направление сортировки, значение ключа и id последней записи.
+//Строковые ключи хранятся как coalesce(value, ''), так же как они сравниваются в UserSpecification.
+public record UserCursor(String property, Sort.Direction direction, Object value, UUID id) {
+
+    public static final Set<String> SORT_PROPERTIES = Set.of("id", "firstname", "lastname", "age");
+
+    private static final byte VERSION = 1;
+    private static final byte NO_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte INT_VALUE = 2;
+
+    public UserCursor {
+        if (!SORT_PROPERTIES.contains(property)) {
+            throw new IllegalArgumentException("Unsupported sort property for scrolling: " + property);
+        }
+        boolean valueMatches = switch (property) {
+            case "firstname", "lastname" -> value instanceof String;
+            case "age" -> value instanceof Integer;
+            default -> value == null;
+        };
+        if (!valueMatches || id == null) {
+            throw new IllegalArgumentException("Cursor value does not match sort property " + property);
+        }
+    }
+
+    public static UserCursor after(Sort.Order order, UserDto last) {
+        Object value = switch (order.getProperty()) {
+            case "firstname" -> last.getFirstname() != null ? last.getFirstname() : "";
+            case "lastname" -> last.getLastname() != null ? last.getLastname() : "";
+            case "age" -> last.getAge() != null ? last.getAge() : 0;
+            default -> null;
+        };
+        return new UserCursor(order.getProperty(), order.getDirection(), value, last.getId());
+    }
+
+    public Sort.Order order() {
+        return new Sort.Order(direction, property);
+    }
+
+    public String encode() {
+        byte[] name = property.getBytes(StandardCharsets.UTF_8);
+        byte[] text = value instanceof String s ? s.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        ByteBuffer buffer = ByteBuffer.allocate(3 + name.length + 1 + 4 + text.length + 16);
+        buffer.put(VERSION)
+                .put((byte) (direction.isAscending() ? 0 : 1))
+                .put((byte) name.length).put(name);
+        switch (value) {
+            case String ignored -> buffer.put(STRING_VALUE).putInt(text.length).put(text);
+            case Integer i -> buffer.put(INT_VALUE).putInt(i);
+            case null, default -> buffer.put(NO_VALUE);
+        }
+        buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    public static UserCursor decode(String token) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+            if (buffer.get() != VERSION) throw new IllegalArgumentException("Unsupported cursor version");
+            Sort.Direction direction = buffer.get() == 0 ? Sort.Direction.ASC : Sort.Direction.DESC;
+            byte[] name = new byte[buffer.get()];
+            buffer.get(name);
+            Object value = switch (buffer.get()) {
+                case STRING_VALUE -> {
+                    byte[] text = new byte[buffer.getInt()];
+                    buffer.get(text);
+                    yield new String(text, StandardCharsets.UTF_8);
+                }
+                case INT_VALUE -> buffer.getInt();
+                default -> null;
+            };
+            UUID id = new UUID(buffer.getLong(), buffer.getLong());
+            return new UserCursor(new String(name, StandardCharsets.UTF_8), direction, value, id);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed cursor", e);
+        }
+    }
+}
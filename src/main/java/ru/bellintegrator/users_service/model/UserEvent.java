@@ -0,0 +1,7 @@
+package ru.bellintegrator.users_service.model;
+
+//Событие пользователя: тип, данные и версия. Версия растёт для каждого пользователя (номер строки outbox),
+//поэтому устаревшие и повторные события определяются сравнением с users.version.
+//null - событие без версии (старые топики, массовый импорт), применяется без проверки
+public record UserEvent(UserEventType type, UserDto user, Long version) {
+}
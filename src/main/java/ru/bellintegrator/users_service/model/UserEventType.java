@@ -0,0 +1,13 @@
+package ru.bellintegrator.users_service.model;
+
+//Тип события пользователя в топике user-events
+public enum UserEventType {
+    CREATE,
+    UPDATE,
+    DELETE;
+
+    //Отдельный топик, куда события этого типа писались до перехода на user-events
+    public String legacyTopic() {
+        return "USER_" + name();
+    }
+}
@@ -3,11 +3,19 @@ package ru.bellintegrator.users_service.model;
 import lombok.*;
 import org.springframework.lang.Nullable;
 
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 //DTO используется для создания фильтра
 public class UserFilter {
+    private static final String KEY_SEPARATOR = "\u001f";
+    private static final String KEY_NULL = "\u0000";
+    private static final char KEY_ESCAPE = '\u001b';
+
     @Nullable
     private String firstname;
     @Nullable
@@ -16,8 +24,110 @@ public class UserFilter {
     private Integer minAge;
     @Nullable
     private Integer maxAge;
+    //способ сравнения имён: подстрока (триграммный индекс) или префикс (B-tree text_pattern_ops)
+    @Nullable
+    private NameMatch match = NameMatch.CONTAINS;
 //    @NonNull
 //    private Integer page = 0;
 //    @NonNull
 //    private Integer size = 5;
+
+    public UserFilter(String firstname, String lastname, Integer minAge, Integer maxAge) {
+        this(firstname, lastname, minAge, maxAge, NameMatch.CONTAINS);
+    }
+
+    //Повторяет условия UserSpecification: попал бы пользователь в выборку по этому фильтру
+    public boolean matches(UserDto user) {
+        return nameMatches(firstname, user.getFirstname(), nameMatch())
+                && nameMatches(lastname, user.getLastname(), nameMatch())
+                && ageMatches(user.getAge() != null ? user.getAge() : 0);
+    }
+
+    //Эквивалентный фильтр в каноническом виде: поиск по имени регистронезависим,
+    //при minAge > maxAge UserSpecification не ограничивает возраст, а без имён способ сравнения не важен
+    public UserFilter normalized() {
+        boolean ignoreAge = minAge != null && maxAge != null && minAge > maxAge;
+        boolean hasNames = firstname != null || lastname != null;
+        return new UserFilter(firstname == null ? null : firstname.toLowerCase(),
+                lastname == null ? null : lastname.toLowerCase(),
+                ignoreAge ? null : minAge,
+                ignoreAge ? null : maxAge,
+                hasNames ? nameMatch() : NameMatch.CONTAINS);
+    }
+
+    public NameMatch nameMatch() {
+        return match != null ? match : NameMatch.CONTAINS;
+    }
+
+    //Ключ кэша, из которого фильтр восстанавливается через fromCacheKey. Управляющие символы формата в значениях
+    //экранируются, в том числе разделитель HotPage \u001e: имя из запроса не может добавить частей в ключ
+    public String cacheKey() {
+        return Stream.of(firstname, lastname, minAge, maxAge, nameMatch())
+                .map(v -> v == null ? KEY_NULL : escape(v.toString()))
+                .collect(Collectors.joining(KEY_SEPARATOR));
+    }
+
+    //Ключи из 4 частей записаны до появления match и означают поиск подстроки.
+    //Испорченный ключ - IllegalArgumentException; вызывающие пропускают такие ключи
+    public static UserFilter fromCacheKey(String key) {
+        String[] parts = Arrays.stream(key.split(KEY_SEPARATOR, -1))
+                .map(v -> KEY_NULL.equals(v) ? null : unescape(v))
+                .toArray(String[]::new);
+        if (parts.length != 4 && parts.length != 5) throw new IllegalArgumentException("Malformed filter key: " + key);
+        return new UserFilter(parts[0], parts[1],
+                parts[2] == null ? null : Integer.valueOf(parts[2]),
+                parts[3] == null ? null : Integer.valueOf(parts[3]),
+                parts.length == 5 && parts[4] != null ? NameMatch.valueOf(parts[4]) : NameMatch.CONTAINS);
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case KEY_ESCAPE -> escaped.append(KEY_ESCAPE).append('e');
+                case '\u001f' -> escaped.append(KEY_ESCAPE).append('s');
+                case '\u001e' -> escaped.append(KEY_ESCAPE).append('r');
+                case '\u0000' -> escaped.append(KEY_ESCAPE).append('0');
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf(KEY_ESCAPE) < 0) return value;
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != KEY_ESCAPE) {
+                unescaped.append(c);
+                continue;
+            }
+            if (++i == value.length()) throw new IllegalArgumentException("Malformed filter key part: " + value);
+            unescaped.append(switch (value.charAt(i)) {
+                case 'e' -> KEY_ESCAPE;
+                case 's' -> '\u001f';
+                case 'r' -> '\u001e';
+                case '0' -> '\u0000';
+                default -> throw new IllegalArgumentException("Malformed filter key part: " + value);
+            });
+        }
+        return unescaped.toString();
+    }
+
+    private static boolean nameMatches(String value, String name, NameMatch match) {
+        if (value == null) return true;
+        if (name == null) return false;
+        return match.forValue(value) == NameMatch.PREFIX
+                ? name.toLowerCase().startsWith(value.toLowerCase())
+                : name.toLowerCase().contains(value.toLowerCase());
+    }
+
+    private boolean ageMatches(int age) {
+        if (minAge != null && maxAge != null) {
+            return minAge > maxAge || (age >= minAge && age <= maxAge);
+        }
+        return (minAge == null || age >= minAge) && (maxAge == null || age <= maxAge);
+    }
 }
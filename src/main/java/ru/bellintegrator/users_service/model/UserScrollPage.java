@@ -0,0 +1,16 @@
+package ru.bellintegrator.users_service.model;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+//DTO страницы при прокрутке по курсору (keyset pagination)
+public class UserScrollPage {
+    private List<UserDto> content;
+    private String nextCursor;
+    private boolean hasNext;
+    private Long totalElements;
+}
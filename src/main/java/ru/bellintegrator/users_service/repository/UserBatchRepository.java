@@ -0,0 +1,132 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.bellintegrator.users_service.cache.UserChange;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+//Пакетная запись пользователей многострочными SQL-запросами Postgres.
+//Каждый метод выполняется в одной транзакции и возвращает фактически изменённые строки.
+@Repository
+public class UserBatchRepository {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private static final String COLUMNS = "id, firstname, lastname, age";
+    //события без версии (старые топики, импорт) применяются безусловно
+    private static final String NEWER = " AND (v.version IS NULL OR u.version < v.version)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //Повторная доставка create не создаёт дубликатов: конфликтующие id пропускаются
+    @Transactional
+    public List<UserDto> insertAll(List<UserEvent> creates) {
+        List<UserDto> inserted = new ArrayList<>(creates.size());
+        for (List<UserEvent> chunk : chunks(creates)) {
+            String sql = "INSERT INTO users (" + COLUMNS + ", version) VALUES "
+                    + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?)"))
+                    + " ON CONFLICT (id) DO NOTHING RETURNING " + COLUMNS;
+            inserted.addAll(jdbcTemplate.query(sql, ps -> {
+                int i = 1;
+                for (UserEvent create : chunk) {
+                    UserDto user = create.user();
+                    ps.setObject(i++, user.getId());
+                    ps.setString(i++, user.getFirstname());
+                    ps.setString(i++, user.getLastname());
+                    ps.setInt(i++, user.getAge() != null ? user.getAge() : 0);
+                    ps.setLong(i++, create.version() != null ? create.version() : 0);
+                }
+            }, USER_ROW_MAPPER));
+        }
+        return inserted;
+    }
+
+    //Частичное обновление: null-поля не меняются. Самосоединение "users o" отдаёт состояние до обновления.
+    //Событие с версией не новее users.version (повтор или опоздавшее) строку не трогает: условный UPDATE вместо чтения
+    @Transactional
+    public List<UserChange> updateAll(List<UserEvent> updates) {
+        List<UserChange> changes = new ArrayList<>(updates.size());
+        for (List<UserEvent> chunk : chunks(updates)) {
+            String sql = "UPDATE users u SET firstname = COALESCE(v.firstname, u.firstname),"
+                    + " lastname = COALESCE(v.lastname, u.lastname), age = COALESCE(v.age, u.age),"
+                    + " version = COALESCE(v.version, u.version)"
+                    + " FROM (VALUES "
+                    + String.join(", ", Collections.nCopies(chunk.size(),
+                    "(CAST(? AS uuid), CAST(? AS varchar), CAST(? AS varchar), CAST(? AS integer), CAST(? AS bigint))"))
+                    + ") AS v(id, firstname, lastname, age, version), users o"
+                    + " WHERE u.id = v.id AND o.id = u.id" + NEWER
+                    + " RETURNING o.firstname AS old_firstname, o.lastname AS old_lastname, o.age AS old_age,"
+                    + " u.id, u.firstname, u.lastname, u.age";
+            changes.addAll(jdbcTemplate.query(sql, ps -> {
+                int i = 1;
+                for (UserEvent update : chunk) {
+                    UserDto user = update.user();
+                    ps.setObject(i++, user.getId());
+                    ps.setString(i++, user.getFirstname());
+                    ps.setString(i++, user.getLastname());
+                    if (user.getAge() != null) ps.setInt(i++, user.getAge());
+                    else ps.setNull(i++, Types.INTEGER);
+                    setVersion(ps, i++, update);
+                }
+            }, (rs, rowNum) -> {
+                UserDto after = USER_ROW_MAPPER.mapRow(rs, rowNum);
+                UserDto before = new UserDto(after.getId(), rs.getString("old_firstname"),
+                        rs.getString("old_lastname"), rs.getInt("old_age"));
+                return new UserChange(after.getId(), before, after);
+            }));
+        }
+        return changes;
+    }
+
+    @Transactional
+    public List<UserDto> deleteAll(List<UserEvent> deletes) {
+        List<UserDto> deleted = new ArrayList<>(deletes.size());
+        for (List<UserEvent> chunk : chunks(deletes)) {
+            String sql = "DELETE FROM users u USING (VALUES "
+                    + String.join(", ", Collections.nCopies(chunk.size(), "(CAST(? AS uuid), CAST(? AS bigint))"))
+                    + ") AS v(id, version) WHERE u.id = v.id" + NEWER
+                    + " RETURNING u.id, u.firstname, u.lastname, u.age";
+            deleted.addAll(jdbcTemplate.query(sql, ps -> {
+                int i = 1;
+                for (UserEvent delete : chunk) {
+                    ps.setObject(i++, delete.user().getId());
+                    setVersion(ps, i++, delete);
+                }
+            }, USER_ROW_MAPPER));
+        }
+        return deleted;
+    }
+
+    private static void setVersion(PreparedStatement ps, int index, UserEvent event) throws SQLException {
+        if (event.version() != null) ps.setLong(index, event.version());
+        else ps.setNull(index, Types.BIGINT);
+    }
+
+    static final RowMapper<UserDto> USER_ROW_MAPPER = (ResultSet rs, int rowNum) -> mapUser(rs);
+
+    private static UserDto mapUser(ResultSet rs) throws SQLException {
+        return new UserDto(rs.getObject("id", UUID.class), rs.getString("firstname"),
+                rs.getString("lastname"), rs.getInt("age"));
+    }
+
+    private static <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>((items.size() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        for (int from = 0; from < items.size(); from += CHUNK_SIZE) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+}
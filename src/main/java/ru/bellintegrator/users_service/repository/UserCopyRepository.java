@@ -0,0 +1,118 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+//Загрузка строк users через COPY ... FROM STDIN в бинарном формате Postgres:
+//без разбора SQL и текстового представления значений на каждую строку
+@Repository
+public class UserCopyRepository {
+
+    private static final String COPY_COLUMNS = "(id, firstname, lastname, age, version) FROM STDIN (FORMAT BINARY)";
+    private static final byte[] SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int copyThreshold;
+
+    public UserCopyRepository(JdbcTemplate jdbcTemplate, @Value("${users.bulk.copy-threshold:256}") int copyThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.copyThreshold = copyThreshold;
+    }
+
+    //Меньшие пачки быстрее одним многострочным INSERT (UserBatchRepository): COPY и слияние - лишние запросы
+    public boolean isWorthCopying(int rows) {
+        return copyThreshold > 0 && rows >= copyThreshold;
+    }
+
+    //Пачка create: COPY во временную users_staging (своя у каждого соединения, очищается при коммите),
+    //затем один INSERT ... SELECT с ON CONFLICT DO NOTHING - повторная доставка тех же id ничего не вставляет.
+    //Возвращает только реально вставленные строки, как UserBatchRepository.insertAll
+    @Transactional
+    public List<UserDto> insertAll(List<UserEvent> creates) {
+        jdbcTemplate.execute("CREATE TEMP TABLE IF NOT EXISTS users_staging (LIKE users INCLUDING DEFAULTS) ON COMMIT DELETE ROWS");
+        copy("COPY users_staging " + COPY_COLUMNS, creates.iterator());
+        return jdbcTemplate.query("INSERT INTO users (id, firstname, lastname, age, version)"
+                + " SELECT id, firstname, lastname, age, version FROM users_staging"
+                + " ON CONFLICT (id) DO NOTHING RETURNING id, firstname, lastname, age", UserBatchRepository.USER_ROW_MAPPER);
+    }
+
+    //Содержимое users заменяется в одной транзакции: при ошибке остаётся прежняя таблица.
+    //COPY в таблицу, очищенную TRUNCATE в той же транзакции, при wal_level=minimal не пишет WAL
+    @Transactional
+    public long replaceAll(Iterator<UserEvent> users) {
+        jdbcTemplate.execute("TRUNCATE users");
+        return copy("COPY users " + COPY_COLUMNS, users);
+    }
+
+    private long copy(String sql, Iterator<UserEvent> users) {
+        return Objects.requireNonNull(jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            PGCopyOutputStream out = new PGCopyOutputStream(copyIn, BUFFER_SIZE);
+            try {
+                long rows = writeBinary(users, out);
+                //close завершает COPY; при ошибке до него COPY отменяется, а не фиксируется наполовину
+                out.close();
+                return rows;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to " + sql, e);
+            } finally {
+                if (copyIn.isActive()) copyIn.cancelCopy();
+            }
+        }));
+    }
+
+    //Заголовок, по кортежу на пользователя (uuid, varchar, varchar, int4, int8) и завершающий -1
+    static long writeBinary(Iterator<UserEvent> users, OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(target);
+        out.write(SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+        long rows = 0;
+        while (users.hasNext()) {
+            UserEvent event = users.next();
+            UserDto user = event.user();
+            out.writeShort(5);
+            out.writeInt(16);
+            out.writeLong(user.getId().getMostSignificantBits());
+            out.writeLong(user.getId().getLeastSignificantBits());
+            writeText(out, user.getFirstname());
+            writeText(out, user.getLastname());
+            out.writeInt(4);
+            out.writeInt(user.getAge() != null ? user.getAge() : 0);
+            out.writeInt(8);
+            out.writeLong(event.version() != null ? event.version() : 0);
+            rows++;
+        }
+        out.writeShort(-1);
+        out.flush();
+        return rows;
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
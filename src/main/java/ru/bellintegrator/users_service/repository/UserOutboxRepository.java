@@ -0,0 +1,98 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+//Таблица user_outbox: команды пишутся в транзакции запроса и удаляются после подтверждения Kafka.
+//Методы не открывают транзакцию сами: append идёт в транзакции UserService, выборка и удаление - в транзакции реле
+@Repository
+public class UserOutboxRepository {
+
+    //ключ pg_try_advisory_xact_lock: в каждый момент outbox разбирает одно реле, порядок событий сохраняется
+    private static final long RELAY_LOCK_KEY = 0x75736572_6f757462L;
+    //пространство двухключевых pg_advisory_xact_lock(int, int) для блокировок пользователей
+    private static final int USER_LOCK_SPACE = 0x75736572;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserOutboxRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //Update/delete сначала берут блокировку пользователя до конца транзакции: конкурирующая команда того же
+    //пользователя получит id из последовательности только после коммита этой, поэтому версии (id) одного
+    //пользователя растут в порядке коммитов и более поздний коммит не будет отсечён как устаревший.
+    //Create блокировка не нужна: id пользователя новый
+    public void append(UserEventType type, UserDto user) {
+        if (type != UserEventType.CREATE) {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, ?)", rs -> {
+            }, USER_LOCK_SPACE, user.getId().hashCode());
+        }
+        jdbcTemplate.update("INSERT INTO user_outbox (event_type, user_id, firstname, lastname, age) VALUES (?, ?, ?, ?, ?)",
+                type.name(), user.getId(), user.getFirstname(), user.getLastname(), user.getAge());
+    }
+
+    //Версии строк users после восстановления из снимка могут обогнать последовательность (снимок с другой базы,
+    //пересозданная user_outbox): новые команды получили бы меньшие версии и были бы отсечены как устаревшие
+    public long advanceVersionsPastUsers() {
+        return jdbcTemplate.queryForObject("SELECT setval('user_outbox_id_seq', GREATEST("
+                + "(SELECT COALESCE(max(version), 0) FROM users), (SELECT last_value FROM user_outbox_id_seq)))", Long.class);
+    }
+
+    //Блокировка держится до конца текущей транзакции
+    public boolean tryLockRelay() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, RELAY_LOCK_KEY));
+    }
+
+    public List<Entry> findOldest(int limit) {
+        return jdbcTemplate.query("SELECT id, event_type, user_id, firstname, lastname, age FROM user_outbox ORDER BY id LIMIT ?",
+                ENTRY_ROW_MAPPER, limit);
+    }
+
+    public void deleteAll(Collection<Long> ids) {
+        jdbcTemplate.update("DELETE FROM user_outbox WHERE id = ANY(?)", ps -> {
+            Array array = ps.getConnection().createArrayOf("bigint", ids.toArray());
+            ps.setArray(1, array);
+        });
+    }
+
+    //Отставание реле: число неотправленных команд и возраст самой старой. Запрос идёт на каждом опросе реле,
+    //поэтому без count(*) и просмотра created_at: min/max(id) и самая старая строка - концы индекса первичного ключа.
+    //Число - разность id: сверху его завышают только номера откатившихся транзакций
+    public Lag lag() {
+        return jdbcTemplate.queryForObject("SELECT min(id), max(id), "
+                + "(SELECT created_at FROM user_outbox ORDER BY id LIMIT 1) FROM user_outbox", (rs, rowNum) -> {
+            Timestamp oldest = rs.getTimestamp(3);
+            if (oldest == null) return new Lag(0, Duration.ZERO);
+            return new Lag(rs.getLong(2) - rs.getLong(1) + 1, Duration.between(oldest.toInstant(), Instant.now()));
+        });
+    }
+
+    //Номер строки - версия события: BIGSERIAL растёт, а блокировка пользователя в append выдаёт номера
+    //командам одного пользователя в порядке коммитов
+    public record Entry(long id, UserEventType type, UserDto user) {
+
+        public UserEvent event() {
+            return new UserEvent(type, user, id);
+        }
+    }
+
+    public record Lag(long pending, Duration oldest) {
+    }
+
+    private static final RowMapper<Entry> ENTRY_ROW_MAPPER = (rs, rowNum) -> new Entry(rs.getLong("id"), UserEventType.valueOf(rs.getString("event_type")),
+            new UserDto(rs.getObject("user_id", UUID.class), rs.getString("firstname"), rs.getString("lastname"),
+                    rs.getObject("age", Integer.class)));
+}
@@ -1,12 +1,42 @@
 package ru.bellintegrator.users_service.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.model.UserDto;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
-public interface UserRepository extends JpaRepository<UserEntity, UUID>, JpaSpecificationExecutor<UserEntity> {
+public interface UserRepository extends JpaRepository<UserEntity, UUID>, JpaSpecificationExecutor<UserEntity>,
+        UserRepositoryCustom {
+
+    //Оценка числа строк по статистике Postgres; отрицательная, если таблица ещё не анализировалась
+    @Query(value = "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = 'users'::regclass", nativeQuery = true)
+    Long estimateCount();
+
+    //Проекция в DTO вместо findById: без управляемой сущности и dirty checking
+    @Transactional(readOnly = true)
+    @Query("SELECT new ru.bellintegrator.users_service.model.UserDto(u.id, u.firstname, u.lastname, u.age)"
+            + " FROM UserEntity u WHERE u.id = :id")
+    Optional<UserDto> findDtoById(UUID id);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT new ru.bellintegrator.users_service.model.UserDto(u.id, u.firstname, u.lastname, u.age)"
+            + " FROM UserEntity u WHERE u.id IN :ids")
+    List<UserDto> findDtoByIdIn(Collection<UUID> ids);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT u.id FROM UserEntity u")
+    Stream<UUID> streamAllIds();
 }
\ No newline at end of file
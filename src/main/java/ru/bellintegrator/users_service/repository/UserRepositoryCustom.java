@@ -0,0 +1,23 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface UserRepositoryCustom {
+
+    //Выборка в порядке (sortKey, id) без offset и без count(*)
+    List<UserEntity> findAllOrdered(Specification<UserEntity> spec, Sort.Order order, int limit);
+
+    //Потоковое чтение курсором с ограниченным fetch size; вызывать внутри транзакции и закрывать поток
+    Stream<UserEntity> streamAll(Specification<UserEntity> spec, int fetchSize);
+
+    //Страница сразу в виде DTO: сущности не попадают в persistence context и не проверяются на изменения
+    Page<UserDto> findDtoPage(Specification<UserEntity> spec, Pageable pageable);
+}
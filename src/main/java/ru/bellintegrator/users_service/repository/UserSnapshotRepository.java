@@ -0,0 +1,222 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Repository;
+import ru.bellintegrator.users_service.config.UserSnapshotProperties;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//Снимки users на диске. Файл - gzip: заголовок со смещениями группы users-service на момент снимка,
+//затем блоки по block-size строк. Внутри блока данные лежат по колонкам (id, версии, возраст, длины и байты имён):
+//однотипные значения рядом сжимаются заметно лучше построчной записи. Блок из 0 строк - конец файла.
+@Repository
+public class UserSnapshotRepository {
+
+    private static final int MAGIC = 0x55534e50;
+    private static final byte FORMAT = 1;
+    private static final String PREFIX = "users-";
+    private static final String SUFFIX = ".snapshot";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final UserSnapshotProperties properties;
+
+    public UserSnapshotRepository(UserSnapshotProperties properties) {
+        this.properties = properties;
+    }
+
+    //Пишется во временный файл и переименовывается: недописанный снимок никогда не окажется последним.
+    //Возвращает число строк; после записи остаются только retain последних снимков
+    public long write(Map<TopicPartition, Long> offsets, Iterator<UserEvent> users) {
+        Path directory = properties.getDirectory();
+        Path target = directory.resolve(PREFIX + System.currentTimeMillis() + SUFFIX);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        long rows = 0;
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeByte(FORMAT);
+                out.writeInt(offsets.size());
+                for (Map.Entry<TopicPartition, Long> offset : offsets.entrySet()) {
+                    out.writeUTF(offset.getKey().topic());
+                    out.writeInt(offset.getKey().partition());
+                    out.writeLong(offset.getValue());
+                }
+                List<UserEvent> block = new ArrayList<>(properties.getBlockSize());
+                while (users.hasNext()) {
+                    block.add(users.next());
+                    if (block.size() == properties.getBlockSize()) {
+                        rows += writeBlock(out, block);
+                    }
+                }
+                rows += writeBlock(out, block);
+                out.writeInt(0);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new UncheckedIOException("Failed to write user snapshot " + target, e);
+        }
+        snapshots().skip(Math.max(1, properties.getRetain())).forEach(UserSnapshotRepository::deleteQuietly);
+        return rows;
+    }
+
+    public Optional<Reader> openLatest() {
+        return snapshots().findFirst().map(Reader::new);
+    }
+
+    //От новых к старым; время снимка - в имени файла
+    private Stream<Path> snapshots() {
+        if (!Files.isDirectory(properties.getDirectory())) return Stream.empty();
+        try (Stream<Path> files = Files.list(properties.getDirectory())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX)
+                            && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(UserSnapshotRepository::createdAt).reversed())
+                    .toList()
+                    .stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list user snapshots in " + properties.getDirectory(), e);
+        }
+    }
+
+    private static long createdAt(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static int writeBlock(DataOutputStream out, List<UserEvent> block) throws IOException {
+        int rows = block.size();
+        if (rows == 0) return 0;
+        out.writeInt(rows);
+        for (UserEvent event : block) {
+            out.writeLong(event.user().getId().getMostSignificantBits());
+            out.writeLong(event.user().getId().getLeastSignificantBits());
+        }
+        for (UserEvent event : block) out.writeLong(event.version() != null ? event.version() : 0);
+        for (UserEvent event : block) out.writeInt(event.user().getAge() != null ? event.user().getAge() : 0);
+        writeStrings(out, block.stream().map(event -> event.user().getFirstname()).toList());
+        writeStrings(out, block.stream().map(event -> event.user().getLastname()).toList());
+        block.clear();
+        return rows;
+    }
+
+    //Сначала колонка длин (-1 - null), затем байты всех значений подряд
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        List<byte[]> bytes = values.stream().map(value -> value != null ? value.getBytes(StandardCharsets.UTF_8) : null).toList();
+        for (byte[] value : bytes) out.writeInt(value != null ? value.length : -1);
+        for (byte[] value : bytes) if (value != null) out.write(value);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            //останется до следующей записи
+        }
+    }
+
+    //Читает снимок блок за блоком, в памяти не больше одного блока
+    public static final class Reader implements Iterator<UserEvent>, Closeable {
+
+        private final Path path;
+        private final DataInputStream in;
+        private final Map<TopicPartition, Long> offsets = new HashMap<>();
+        private List<UserEvent> block = List.of();
+        private int next;
+        private boolean finished;
+
+        private Reader(Path path) {
+            this.path = path;
+            try {
+                this.in = new DataInputStream(new BufferedInputStream(
+                        new GZIPInputStream(Files.newInputStream(path), BUFFER_SIZE), BUFFER_SIZE));
+                if (in.readInt() != MAGIC || in.readByte() != FORMAT) {
+                    in.close();
+                    throw new IOException("Unsupported user snapshot format");
+                }
+                int partitions = in.readInt();
+                for (int i = 0; i < partitions; i++) {
+                    offsets.put(new TopicPartition(in.readUTF(), in.readInt()), in.readLong());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open user snapshot " + path, e);
+            }
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public Map<TopicPartition, Long> offsets() {
+            return offsets;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == block.size() && !finished) {
+                block = readBlock();
+                next = 0;
+                finished = block.isEmpty();
+            }
+            return next < block.size();
+        }
+
+        @Override
+        public UserEvent next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return block.get(next++);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private List<UserEvent> readBlock() {
+            try {
+                int rows = in.readInt();
+                UUID[] ids = new UUID[rows];
+                for (int i = 0; i < rows; i++) ids[i] = new UUID(in.readLong(), in.readLong());
+                long[] versions = new long[rows];
+                for (int i = 0; i < rows; i++) versions[i] = in.readLong();
+                int[] ages = new int[rows];
+                for (int i = 0; i < rows; i++) ages[i] = in.readInt();
+                String[] firstnames = readStrings(rows);
+                String[] lastnames = readStrings(rows);
+                List<UserEvent> users = new ArrayList<>(rows);
+                for (int i = 0; i < rows; i++) {
+                    users.add(new UserEvent(UserEventType.CREATE,
+                            new UserDto(ids[i], firstnames[i], lastnames[i], ages[i]), versions[i]));
+                }
+                return users;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read user snapshot " + path, e);
+            }
+        }
+
+        private String[] readStrings(int rows) throws IOException {
+            int[] lengths = new int[rows];
+            for (int i = 0; i < rows; i++) lengths[i] = in.readInt();
+            String[] values = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                if (lengths[i] < 0) continue;
+                byte[] value = new byte[lengths[i]];
+                in.readFully(value);
+                values[i] = new String(value, StandardCharsets.UTF_8);
+            }
+            return values;
+        }
+    }
+}
@@ -1,14 +1,31 @@
 package ru.bellintegrator.users_service.repository;
 
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import org.springframework.data.jpa.domain.Specification;
 import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.model.UserCursor;
+import ru.bellintegrator.users_service.model.NameMatch;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.UUID;
 
 public class UserSpecification {
 
-    public static Specification<UserEntity> nameContains(String field, String value) {
-        return (root, query, cb) ->
-            value == null ? null : cb.like(cb.lower(root.get(field)), "%" + value.toLowerCase() + "%");
+    private static final char LIKE_ESCAPE = '\\';
+
+    //Выражение совпадает с индексированным lower(name) из миграций, а % и _ в значении экранируются,
+    //поэтому PREFIX всегда остаётся префиксным шаблоном, пригодным для text_pattern_ops.
+    //Форму выбирает NameMatch.forValue: '%value%' только для подстрок, которые покрывает триграммный индекс
+    public static Specification<UserEntity> nameMatches(String field, String value, NameMatch match) {
+        return (root, query, cb) -> {
+            if (value == null) return null;
+            String escaped = escapeLike(value.toLowerCase());
+            String pattern = match.forValue(value) == NameMatch.PREFIX ? escaped + "%" : "%" + escaped + "%";
+            return cb.like(cb.lower(root.get(field)), pattern, LIKE_ESCAPE);
+        };
     }
 
     public static Specification<UserEntity> ageContains(Integer age1, Integer age2) {
@@ -24,4 +41,57 @@ public class UserSpecification {
             }
         };
     }
+
+    public static Specification<UserEntity> byFilter(UserFilter f) {
+        return Specification.allOf(nameMatches("firstname", f.getFirstname(), f.nameMatch()),
+                nameMatches("lastname", f.getLastname(), f.nameMatch()), ageContains(f.getMinAge(), f.getMaxAge())
+        );
+    }
+
+    //Записи строго после курсора в порядке (sortKey, id) с направлением курсора.
+    //Избыточное key >= value задаёт начало диапазона индекса (key, id) из V6, иначе OR проверялся бы фильтром
+    public static Specification<UserEntity> keysetAfter(UserCursor cursor) {
+        return (root, query, cb) -> {
+            if (cursor == null) {
+                return null;
+            }
+            boolean asc = cursor.direction().isAscending();
+            Expression<UUID> id = root.get("id");
+            Predicate idAfter = asc ? cb.greaterThan(id, cursor.id()) : cb.lessThan(id, cursor.id());
+            if ("id".equals(cursor.property())) {
+                return idAfter;
+            }
+            if (cursor.value() instanceof Integer age) {
+                Expression<Integer> key = root.get(cursor.property());
+                return cb.and(asc ? cb.greaterThanOrEqualTo(key, age) : cb.lessThanOrEqualTo(key, age),
+                        cb.or(asc ? cb.greaterThan(key, age) : cb.lessThan(key, age), cb.and(cb.equal(key, age), idAfter)));
+            }
+            Expression<String> key = nameKey(root, cb, cursor.property());
+            String value = (String) cursor.value();
+            return cb.and(asc ? cb.greaterThanOrEqualTo(key, value) : cb.lessThanOrEqualTo(key, value),
+                    cb.or(asc ? cb.greaterThan(key, value) : cb.lessThan(key, value), cb.and(cb.equal(key, value), idAfter)));
+        };
+    }
+
+    //Выражение ключа сортировки для keyset-пагинации: null в строковых полях сравнивается как ''.
+    //'' подставляется литералом, а не параметром, чтобы выражение совпадало с индексом из V6 и в generic-плане
+    public static Expression<?> sortKey(Root<UserEntity> root, CriteriaBuilder cb, String property) {
+        if ("firstname".equals(property) || "lastname".equals(property)) {
+            return nameKey(root, cb, property);
+        }
+        return root.get(property);
+    }
+
+    private static Expression<String> nameKey(Root<UserEntity> root, CriteriaBuilder cb, String property) {
+        return cb.coalesce(root.<String>get(property), cb.literal(""));
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) escaped.append(LIKE_ESCAPE);
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
 }
@@ -1,88 +1,244 @@
 package ru.bellintegrator.users_service.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 import org.springframework.stereotype.Service;
-import ru.bellintegrator.users_service.entity.UserEntity;
-import ru.bellintegrator.users_service.mapper.UserMapper;
+import org.springframework.transaction.CannotCreateTransactionException;
+import ru.bellintegrator.users_service.cache.UserCacheInvalidator;
+import ru.bellintegrator.users_service.cache.UserChange;
+import ru.bellintegrator.users_service.cache.UserExistenceFilter;
+import ru.bellintegrator.users_service.entity.UserIdGenerator;
+import ru.bellintegrator.users_service.kafka.UserEvents;
 import ru.bellintegrator.users_service.model.UserDto;
-import ru.bellintegrator.users_service.repository.UserRepository;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.repository.UserBatchRepository;
+import ru.bellintegrator.users_service.repository.UserCopyRepository;
 
-import java.util.NoSuchElementException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.*;
+import java.util.function.Function;
 
+//События читаются пачками из user-events: в пределах пачки события одного пользователя схлопываются,
+//а результат применяется по фазам create/update/delete - в каждой дорожке фаза это один многострочный запрос
+//в своей транзакции.
+//Если пачка целиком не применилась из-за данных, записи применяются по одной, а сбойные уходят в DLT.
+//Недоступность БД пробрасывается: пачку целиком повторяет контейнер с backoff (KafkaConfig).
+//Нечитаемые записи ErrorHandlingDeserializer отдаёт без значения, они сразу уходят в DLT с исходными байтами.
+//Партиции делятся между users.kafka.consumer.concurrency потоками; внутри пачки пользователи
+//могут применяться параллельно по дорожкам UserEventLanes.
 @Service
 public class EventListener {
     private static final Logger log = LoggerFactory.getLogger(EventListener.class);
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(EventListener.class);
 
-    private final UserRepository userRepository;
-    private final UserMapper userMapper;
+    //имя контейнера - тег name таймера spring.kafka.listener (время обработки пачки)
+    static final String LISTENER_ID = "users-database";
 
-    public EventListener(UserMapper userMapper, UserRepository userRepository) {
-        this.userRepository = userRepository;
-        this.userMapper = userMapper;
+    private final UserBatchRepository userBatchRepository;
+    private final UserCopyRepository userCopyRepository;
+    private final UserCacheInvalidator userCacheInvalidator;
+    private final DeadLetterPublishingRecoverer deadLetterRecoverer;
+    private final UserExistenceFilter userExistenceFilter;
+    private final UserEventLanes userEventLanes;
+    private final UserIdGenerator userIdGenerator;
+    private final MeterRegistry meterRegistry;
+    private final Map<UserEventType, Timer> applyTimers = new EnumMap<>(UserEventType.class);
+
+    public EventListener(UserBatchRepository userBatchRepository, UserCopyRepository userCopyRepository,
+                         UserCacheInvalidator userCacheInvalidator, DeadLetterPublishingRecoverer deadLetterRecoverer,
+                         UserExistenceFilter userExistenceFilter, UserEventLanes userEventLanes,
+                         UserIdGenerator userIdGenerator, MeterRegistry meterRegistry) {
+        this.userBatchRepository = userBatchRepository;
+        this.userCopyRepository = userCopyRepository;
+        this.userCacheInvalidator = userCacheInvalidator;
+        this.deadLetterRecoverer = deadLetterRecoverer;
+        this.userExistenceFilter = userExistenceFilter;
+        this.userEventLanes = userEventLanes;
+        this.userIdGenerator = userIdGenerator;
+        this.meterRegistry = meterRegistry;
+        for (UserEventType type : UserEventType.values()) {
+            applyTimers.put(type, Timer.builder("users.events.apply")
+                    .description("Time to apply one phase of a consumed batch")
+                    .tag("type", type.name())
+                    .register(meterRegistry));
+        }
     }
 
-    @KafkaListener(topics = "USER_CREATE", groupId = "users-service")
-    public void handleCreate(UserDto userToCreate) {
-        try {
-            if (userToCreate.getId() != null) {
-                log.warn("Received CREATE event with ID: {}. Skipping.", userToCreate.getId());
-                return;
+    //user-events - основной топик; USER_* дочитываются после перехода, их записи без версии
+    @KafkaListener(id = LISTENER_ID, topics = {UserEvents.TOPIC, "USER_CREATE", "USER_UPDATE", "USER_DELETE"}, groupId = "users-service",
+            batch = "true", concurrency = "${users.kafka.consumer.concurrency:1}")
+    public void handle(List<ConsumerRecord<String, UserDto>> records) {
+        Map<UUID, Pending> creates = new LinkedHashMap<>();
+        Map<UUID, Pending> updates = new LinkedHashMap<>();
+        Map<UUID, Pending> deletes = new LinkedHashMap<>();
+        Map<String, Integer> perTopic = new HashMap<>();
+        for (ConsumerRecord<String, UserDto> record : records) {
+            perTopic.merge(record.topic(), 1, Integer::sum);
+            DeserializationException malformed = SerializationUtils.getExceptionFromHeader(record,
+                    SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+            if (malformed != null) {
+                log.error("Failed to deserialize event at {}-{}@{}. Sending to DLT.", record.topic(), record.partition(),
+                        record.offset(), malformed);
+                deadLetterRecoverer.accept(record, malformed);
+                continue;
+            }
+            UserEvent event = UserEvents.fromRecord(record);
+            if (event == null) {
+                log.error("Received event of unknown type at {}-{}@{}. Skipping.", record.topic(), record.partition(), record.offset());
+                continue;
+            }
+            switch (event.type()) {
+                case CREATE -> collectCreate(event, record, creates);
+                case UPDATE -> collectUpdate(event, record, updates, deletes);
+                case DELETE -> collectDelete(event, record, deletes);
             }
-            UserEntity newEntity = userMapper.toUserEntity(userToCreate);
-            userRepository.save(newEntity);
-            log.info("User created successfully with ID: {}", newEntity.getId());
-        } catch (Exception e) {
-            log.error("Error processing CREATE event for user: {}", userToCreate, e);
-            throw e;
         }
+        perTopic.forEach((topic, count) -> meterRegistry.counter("users.events.received", "topic", topic).increment(count));
+        //Фазы create -> update -> delete. Update после delete того же пользователя (фильтр существования не забывает
+        //удалённые id, поэтому такой PUT принимается) отброшен при сборе, поэтому результат совпадает с применением
+        //по одному: по одному он тоже не нашёл бы строку. Устаревшие события отсекает версия в SQL
+        apply(UserEventType.CREATE, creates.values(), events -> {
+            //крупные пачки (импорт) идут через COPY, одиночные повторы после сбоя пачки - обычным INSERT
+            List<UserDto> inserted = userCopyRepository.isWorthCopying(events.size())
+                    ? userCopyRepository.insertAll(events) : userBatchRepository.insertAll(events);
+            userExistenceFilter.addAll(inserted.stream().map(UserDto::getId).toList());
+            return inserted.stream().map(UserChange::created).toList();
+        });
+        apply(UserEventType.UPDATE, updates.values(), events -> {
+            List<UserChange> changes = userBatchRepository.updateAll(events);
+            if (changes.size() < events.size()) {
+                log.debug("{} updates skipped: user not found or event is not newer than the stored version",
+                        events.size() - changes.size());
+            }
+            return changes;
+        });
+        apply(UserEventType.DELETE, deletes.values(), events -> userBatchRepository.deleteAll(events)
+                .stream()
+                .map(deleted -> UserChange.deleted(deleted.getId(), deleted))
+                .toList());
     }
 
-    @KafkaListener(topics = "USER_UPDATE", groupId = "users-service")
-    public void handleUpdate(UserDto userToUpdate) {
-        try {
-            if (userToUpdate.getId() == null) {
-                log.error("Received UPDATE event without ID. Skipping.");
-                return;
-            }
-            UserEntity existingEntity = userRepository.findById(userToUpdate.getId())
-                    .orElseThrow(() -> new NoSuchElementException("User not found for update via Kafka: " + userToUpdate.getId()));
-            updateEntity(userToUpdate, existingEntity);
-            userRepository.save(existingEntity);
-            log.info("User updated successfully with ID: {}", existingEntity.getId());
-        } catch (NoSuchElementException e) {
-            log.warn("User ID {} not found for update (Possible race condition/late event). Skipping.", userToUpdate.getId());
-        } catch (Exception e) {
-            log.error("Error processing UPDATE event for user ID: {}", userToUpdate.getId(), e);
-            throw e;
+    private void collectCreate(UserEvent event, ConsumerRecord<String, UserDto> record, Map<UUID, Pending> creates) {
+        UserDto userToCreate = event.user();
+        if (userToCreate == null) {
+            log.error("Received empty CREATE event at offset {}. Skipping.", record.offset());
+            return;
+        }
+        if (userToCreate.getId() == null) {
+            //события старых продюсеров приходят без ID
+            userToCreate = new UserDto(userIdGenerator.next(), userToCreate.getFirstname(),
+                    userToCreate.getLastname(), userToCreate.getAge());
+        }
+        //повторная доставка того же create ничего не меняет
+        creates.computeIfAbsent(userToCreate.getId(), id -> new Pending())
+                .add(userToCreate, event.version(), record, false);
+    }
+
+    private void collectUpdate(UserEvent event, ConsumerRecord<String, UserDto> record, Map<UUID, Pending> updates,
+                               Map<UUID, Pending> deletes) {
+        UserDto userToUpdate = event.user();
+        if (userToUpdate == null || userToUpdate.getId() == null) {
+            log.error("Received UPDATE event without ID at offset {}. Skipping.", record.offset());
+            return;
+        }
+        if (deletes.containsKey(userToUpdate.getId())) {
+            //иначе фаза update подняла бы версию строки выше версии delete, и удаление было бы отсечено
+            log.debug("UPDATE of user {} at offset {} follows its DELETE in the batch. Skipping.",
+                    userToUpdate.getId(), record.offset());
+            return;
         }
+        //частичные обновления накладываются в порядке поступления
+        updates.computeIfAbsent(userToUpdate.getId(), id -> new Pending())
+                .add(userToUpdate, event.version(), record, true);
     }
 
-    @KafkaListener(topics = "USER_DELETE", groupId = "users-service")
-    public void handleDelete(UserDto userToDelete) {
+    private void collectDelete(UserEvent event, ConsumerRecord<String, UserDto> record, Map<UUID, Pending> deletes) {
+        UserDto userToDelete = event.user();
+        if (userToDelete == null || userToDelete.getId() == null) {
+            log.error("Received DELETE event without ID at offset {}. Skipping.", record.offset());
+            return;
+        }
+        deletes.computeIfAbsent(userToDelete.getId(), id -> new Pending())
+                .add(userToDelete, event.version(), record, false);
+    }
+
+    private void apply(UserEventType type, Collection<Pending> pending, Function<List<UserEvent>, List<UserChange>> writer) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        applyTimers.get(type).record(() ->
+                userEventLanes.run(pending, single -> single.user.getId(), lane -> applyLane(type, lane, writer)));
+    }
+
+    private void applyLane(UserEventType type, List<Pending> pending, Function<List<UserEvent>, List<UserChange>> writer) {
+        List<UserChange> changes;
         try {
-            if (userToDelete.getId() == null) {
-                log.error("Received DELETE event without ID. Skipping.");
-                return;
+            changes = writer.apply(pending.stream().map(single -> single.event(type)).toList());
+        } catch (RuntimeException e) {
+            if (isTransient(e)) throw e;
+            log.warn("Batch {} of {} users failed, applying events one by one", type, pending.size(), e);
+            changes = new ArrayList<>();
+            for (Pending single : pending) {
+                try {
+                    changes.addAll(writer.apply(List.of(single.event(type))));
+                } catch (RuntimeException recordError) {
+                    //БД пропала посреди повтора по одной: запись не виновата, повторяется вся пачка
+                    if (isTransient(recordError)) throw recordError;
+                    log.error("Error processing {} event for user ID: {}", type, single.user.getId(), recordError);
+                    single.records.forEach(record -> deadLetterRecoverer.accept(record, recordError));
+                }
             }
-            userRepository.deleteById(userToDelete.getId());
-            log.info("User deleted successfully with ID: {}", userToDelete.getId());
-        } catch (Exception e) {
-            log.error("Error processing DELETE event for user ID: {}", userToDelete.getId(), e);
-            throw e;
         }
+        //кэши сбрасываются только после коммита и только по реально изменённым строкам
+        userCacheInvalidator.invalidate(changes);
+        log.atInfo().addKeyValue("type", type).addKeyValue("users", pending.size())
+                .addKeyValue("changed", changes.size()).log("Events applied");
     }
 
-    private void updateEntity(UserDto userDto, UserEntity entity) {
-        if (userDto.getFirstname() != null) {
-            entity.setFirstname(userDto.getFirstname());
+    //Сбой соединения, таймаут или блокировка пройдут сами - такие записи нельзя отправлять в DLT
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException || cause instanceof CannotCreateTransactionException
+                    || cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
         }
-        if (userDto.getLastname() != null) {
-            entity.setLastname(userDto.getLastname());
+        return false;
+    }
+
+    //Схлопнутое состояние пользователя в пачке, старшая версия и исходные записи для DLT
+    private static final class Pending {
+        private final UserDto user = new UserDto();
+        private final List<ConsumerRecord<String, UserDto>> records = new ArrayList<>();
+        private Long version;
+
+        void add(UserDto event, Long eventVersion, ConsumerRecord<String, UserDto> record, boolean merge) {
+            if (records.isEmpty() || merge) {
+                user.setId(event.getId());
+                if (records.isEmpty() || event.getFirstname() != null) user.setFirstname(event.getFirstname());
+                if (records.isEmpty() || event.getLastname() != null) user.setLastname(event.getLastname());
+                if (records.isEmpty() || event.getAge() != null) user.setAge(event.getAge());
+                if (eventVersion != null && (version == null || eventVersion > version)) version = eventVersion;
+            }
+            records.add(record);
         }
-        if (userDto.getAge() != null) {
-            entity.setAge(userDto.getAge());
+
+        UserEvent event(UserEventType type) {
+            return new UserEvent(type, user, version);
         }
     }
 }
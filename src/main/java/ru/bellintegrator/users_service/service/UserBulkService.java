@@ -0,0 +1,116 @@
+package ru.bellintegrator.users_service.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.entity.UserIdGenerator;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.mapper.UserMapper;
+import ru.bellintegrator.users_service.model.BulkImportResult;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.repository.UserRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static ru.bellintegrator.users_service.repository.UserSpecification.byFilter;
+
+//Импорт и выгрузка пользователей в NDJSON (одна JSON-запись на строку).
+//Оба направления потоковые: в памяти держится не больше одной пачки.
+@Slf4j
+@Service
+public class UserBulkService {
+
+    private final UserRepository userRepository;
+    private final UserMapper userMapper;
+    private final KafkaTemplate<String, UserDto> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final UserIdGenerator userIdGenerator;
+    private final int batchSize;
+    private final int fetchSize;
+
+    public UserBulkService(UserRepository userRepository, UserMapper userMapper, KafkaTemplate<String, UserDto> kafkaTemplate,
+                           ObjectMapper objectMapper, UserIdGenerator userIdGenerator,
+                           @Value("${users.bulk.batch-size:500}") int batchSize,
+                           @Value("${users.bulk.fetch-size:1000}") int fetchSize) {
+        this.userRepository = userRepository;
+        this.userMapper = userMapper;
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.userIdGenerator = userIdGenerator;
+        this.batchSize = batchSize;
+        this.fetchSize = fetchSize;
+    }
+
+    public BulkImportResult importUsers(InputStream in) throws IOException {
+        long accepted = 0;
+        long rejected = 0;
+        List<CompletableFuture<?>> pending = new ArrayList<>(batchSize);
+        try (MappingIterator<UserDto> users = objectMapper.readerFor(UserDto.class).readValues(in)) {
+            while (users.hasNextValue()) {
+                UserDto userToCreate = users.nextValue();
+                if (userToCreate.getId() != null) {
+                    log.warn("Bulk import line {} has ID: {}. Skipping.", users.getCurrentLocation().getLineNr(), userToCreate.getId());
+                    rejected++;
+                    continue;
+                }
+                userToCreate.setId(userIdGenerator.next());
+                pending.add(kafkaTemplate.send(UserEvents.toRecord(new UserEvent(UserEventType.CREATE, userToCreate, null))));
+                accepted++;
+                if (pending.size() >= batchSize) {
+                    awaitSent(pending);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            awaitSent(pending);
+            throw new IllegalArgumentException("Malformed NDJSON after " + (accepted + rejected) + " records, "
+                    + accepted + " already accepted: " + e.getOriginalMessage(), e);
+        }
+        awaitSent(pending);
+        log.info("Bulk import sent {} CREATE events, rejected {}", accepted, rejected);
+        return new BulkImportResult(accepted, rejected);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportUsers(UserFilter f, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(UserDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long exported = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+             Stream<UserEntity> users = userRepository.streamAll(byFilter(f), fetchSize)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            for (UserEntity user : (Iterable<UserEntity>) users::iterator) {
+                writer.writeValue(generator, userMapper.toDomainUser(user));
+                generator.writeRaw('\n');
+                exported++;
+            }
+            generator.flush();
+        }
+        log.info("Exported {} users for filter: {}", exported, f);
+    }
+
+    //Пачка отправок дожидается подтверждения брокера, чтобы ошибки не терялись, а буфер продюсера не рос
+    private void awaitSent(List<CompletableFuture<?>> pending) {
+        if (pending.isEmpty()) return;
+        kafkaTemplate.flush();
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        pending.clear();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.bellintegrator.users_service.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import ru.bellintegrator.users_service.config.UserKafkaProperties;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+//Параллельная обработка пачки EventListener по дорожкам: элемент попадает в дорожку hash(id) mod lanes,
+//поэтому события одного пользователя обрабатываются одной дорожкой по порядку.
+//run возвращается только после завершения всех дорожек, и контейнер коммитит смещения пачки
+//не раньше, чем применены все её записи. При lanes = 1 всё выполняется в потоке потребителя.
+@Component
+public class UserEventLanes implements DisposableBean {
+
+    private final int lanes;
+    private final ExecutorService executor;
+
+    public UserEventLanes(UserKafkaProperties kafkaProperties) {
+        UserKafkaProperties.Consumer consumer = kafkaProperties.getConsumer();
+        this.lanes = Math.max(1, consumer.getLanes());
+        //каждый поток-потребитель занимает не больше lanes потоков пула одновременно
+        this.executor = lanes > 1
+                ? Executors.newFixedThreadPool(lanes * Math.max(1, consumer.getConcurrency()),
+                Thread.ofPlatform().name("user-event-lane-", 0).daemon().factory())
+                : null;
+    }
+
+    public <T> void run(Collection<T> items, Function<T, UUID> key, Consumer<List<T>> work) {
+        if (items.isEmpty()) return;
+        if (executor == null) {
+            work.accept(new ArrayList<>(items));
+            return;
+        }
+        List<List<T>> split = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) split.add(new ArrayList<>());
+        items.forEach(item -> split.get(Math.floorMod(key.apply(item).hashCode(), lanes)).add(item));
+
+        List<Future<?>> running = split.stream()
+                .filter(lane -> !lane.isEmpty())
+                .<Future<?>>map(lane -> executor.submit(() -> work.accept(lane)))
+                .toList();
+        //ждём все дорожки, даже если одна упала: пачка целиком уйдёт на повтор
+        RuntimeException failure = null;
+        for (Future<?> lane : running) {
+            try {
+                lane.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while applying user events", e);
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtime
+                        ? runtime : new IllegalStateException(e.getCause());
+                if (failure == null) failure = cause;
+                else failure.addSuppressed(cause);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) executor.shutdown();
+    }
+}
@@ -0,0 +1,206 @@
+package ru.bellintegrator.users_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.bellintegrator.users_service.cache.UserFilterIndex;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.kafka.UserEventOffsets;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.mapper.UserMapper;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.repository.UserRepository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static ru.bellintegrator.users_service.repository.UserSpecification.byFilter;
+
+//Наполняет UserFilterIndex. У каждого инстанса своя группа, поэтому индекс получает все партиции.
+//Старт: запоминаются закоммиченные смещения группы users-service (всё до них уже в БД), читается снимок users,
+//и чтение топиков начинается с этих смещений. Повторное применение событий, уже попавших в снимок,
+//даёт то же состояние, что и в БД: create не перезаписывает, update и delete не новее версии строки пропускаются.
+//События, которые БД не применила (DLT) или применила с назначенным id (legacy CREATE), отмечают индекс
+//расходящимся, и снимок перечитывается в фоне, пока таких отметок не останется.
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "users.cache.index", name = "enabled", havingValue = "true")
+public class UserIndexListener implements ConsumerSeekAware, ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    static final String LISTENER_ID = "users-index";
+    static final String DLT_LISTENER_ID = "users-index-dlt";
+
+    private final UserFilterIndex userFilterIndex;
+    private final UserRepository userRepository;
+    private final UserMapper userMapper;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final TransactionTemplate readOnlyTransaction;
+    private final UserCacheProperties.Index properties;
+    private final UserEventOffsets eventOffsets;
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("users-index-reload").daemon().factory());
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile boolean loaded;
+
+    public UserIndexListener(UserFilterIndex userFilterIndex, UserRepository userRepository, UserMapper userMapper,
+                             KafkaListenerEndpointRegistry listenerRegistry, KafkaAdmin kafkaAdmin,
+                             PlatformTransactionManager transactionManager, UserCacheProperties cacheProperties) {
+        this.userFilterIndex = userFilterIndex;
+        this.userRepository = userRepository;
+        this.userMapper = userMapper;
+        this.listenerRegistry = listenerRegistry;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.properties = cacheProperties.getIndex();
+        this.eventOffsets = new UserEventOffsets(kafkaAdmin);
+    }
+
+    //Снимок читается после старта веб-сервера: пока он грузится, getAll обслуживает БД
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        //MANUAL без вызовов acknowledge: смещения групп не коммитятся никогда. Позицию задаёт снимок
+        //(onPartitionsAssigned), а группу без смещений брокер удаляет, как только она пустеет, -
+        //перезапуски не оставляют за собой группы users-index-*
+        MessageListenerContainer deadLetters = Objects.requireNonNull(listenerRegistry.getListenerContainer(DLT_LISTENER_ID));
+        deadLetters.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        deadLetters.start();
+        loadSnapshot();
+        loaded = true;
+        MessageListenerContainer container = Objects.requireNonNull(listenerRegistry.getListenerContainer(LISTENER_ID));
+        container.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        container.start();
+    }
+
+    private void loadSnapshot() {
+        long started = System.currentTimeMillis();
+        Map<TopicPartition, Long> committed = eventOffsets.committed();
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<UserEntity> users = userRepository.streamAll(byFilter(new UserFilter()), properties.getSnapshotFetchSize())) {
+                userFilterIndex.load(users.map(user -> new UserEvent(UserEventType.CREATE, userMapper.toDomainUser(user),
+                        user.getVersion())).iterator(), committed);
+            }
+        });
+        log.info("User filter index loaded {} users in {} ms, replaying events from {}",
+                userFilterIndex.size(), System.currentTimeMillis() - started, committed);
+    }
+
+    //Чтение топиков останавливается на время снимка и продолжается с его смещений (onPartitionsAssigned)
+    private void reload() {
+        MessageListenerContainer container = Objects.requireNonNull(listenerRegistry.getListenerContainer(LISTENER_ID));
+        container.stop();
+        try {
+            loadSnapshot();
+        } finally {
+            container.start();
+        }
+    }
+
+    @KafkaListener(id = LISTENER_ID, topics = {UserEvents.TOPIC, "USER_CREATE", "USER_UPDATE", "USER_DELETE"},
+            groupId = "users-index-${random.uuid}", autoStartup = "false", batch = "true",
+            properties = "enable.auto.commit=false")
+    public void handle(List<ConsumerRecord<String, UserDto>> records) {
+        for (ConsumerRecord<String, UserDto> record : records) {
+            UserEvent event = UserEvents.fromRecord(record);
+            if (event != null && event.user() == null) {
+                //нечитаемая запись (ErrorHandlingDeserializer): EventListener отправил её в DLT
+                log.warn("Unreadable event at {}-{}@{} is not indexed", record.topic(), record.partition(), record.offset());
+            } else if (event != null && event.user().getId() == null && event.type() == UserEventType.CREATE) {
+                //id таких событий назначает EventListener, строка попадёт в индекс со следующим снимком
+                log.warn("Legacy CREATE event without ID at {}-{}@{} is not indexed, snapshot will be reloaded",
+                        record.topic(), record.partition(), record.offset());
+                userFilterIndex.markDiverged(new TopicPartition(record.topic(), record.partition()), record.offset());
+            } else if (event != null) {
+                userFilterIndex.apply(event);
+            }
+            userFilterIndex.advance(new TopicPartition(record.topic(), record.partition()), record.offset() + 1);
+        }
+    }
+
+    //Записи, которые EventListener любого инстанса отправил в DLT: индекс их применил, а БД - нет.
+    //Исходная позиция - в заголовках DLT; записи, которые уже учёл снимок, индекс пропускает, поэтому топики
+    //читаются с начала и DLT, созданный позже подписки, не теряет первых записей. Новые топики DLT подписка по
+    //шаблону находит при обновлении метаданных, поэтому их срок сокращён
+    @KafkaListener(id = DLT_LISTENER_ID, topicPattern = "(user-events|USER_CREATE|USER_UPDATE|USER_DELETE)\\.DLT",
+            groupId = "users-index-dlt-${random.uuid}", autoStartup = "false", batch = "true",
+            properties = {"enable.auto.commit=false", "auto.offset.reset=earliest", "metadata.max.age.ms=5000"})
+    public void handleDeadLetters(List<ConsumerRecord<String, UserDto>> records) {
+        for (ConsumerRecord<String, UserDto> record : records) {
+            Header topic = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC);
+            Header partition = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_PARTITION);
+            Header offset = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET);
+            if (topic == null || partition == null || offset == null) {
+                //без исходной позиции расхождение снимает любой следующий снимок
+                userFilterIndex.markDiverged(new TopicPartition(record.topic(), record.partition()), -1);
+                continue;
+            }
+            TopicPartition original = new TopicPartition(new String(topic.value(), StandardCharsets.UTF_8),
+                    ByteBuffer.wrap(partition.value()).getInt());
+            long originalOffset = ByteBuffer.wrap(offset.value()).getLong();
+            log.warn("Dead-lettered event {}@{} is in the user filter index, snapshot will be reloaded", original, originalOffset);
+            userFilterIndex.markDiverged(original, originalOffset);
+        }
+    }
+
+    //Партиции без смещения в снимке (группа users-service их ещё не читала) читаются с начала
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        assignments.keySet().forEach(partition -> userFilterIndex.position(partition).ifPresentOrElse(
+                offset -> callback.seek(partition.topic(), partition.partition(), offset),
+                () -> callback.seekToBeginning(partition.topic(), partition.partition())));
+    }
+
+    //Если проверка не проходит, согласованность истекает через watermark-ttl и запросы уходят в БД
+    @Scheduled(fixedDelayString = "${users.cache.index.watermark-check-interval:PT1S}")
+    public void checkWatermark() {
+        if (!loaded) return;
+        try {
+            Map<TopicPartition, Long> committed = eventOffsets.committed();
+            long lag = userFilterIndex.confirmWatermark(committed);
+            if (lag > 0) log.debug("User filter index is {} events behind the database", lag);
+            if (userFilterIndex.isReloadNeeded(committed) && reloading.compareAndSet(false, true)) {
+                reloader.execute(() -> {
+                    try {
+                        reload();
+                    } catch (RuntimeException e) {
+                        log.warn("User filter index reload failed", e);
+                    } finally {
+                        reloading.set(false);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            log.warn("User filter index watermark check failed", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        reloader.shutdownNow();
+        eventOffsets.close();
+    }
+}
@@ -0,0 +1,122 @@
+package ru.bellintegrator.users_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.repository.UserOutboxRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Переносит команды из user_outbox в Kafka пачками: отправка всей пачки, flush, ожидание подтверждений,
+//затем удаление строк в той же транзакции. При ошибке транзакция откатывается и пачка уходит повторно
+//на следующем опросе (at-least-once, повторы EventListener применяет идемпотентно).
+@Slf4j
+@Service
+public class UserOutboxRelay {
+
+    private final UserOutboxRepository userOutboxRepository;
+    private final KafkaTemplate<String, UserDto> kafkaTemplate;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private final Duration sendTimeout;
+    private final boolean enabled;
+
+    private final Counter relayed;
+    private final Counter failures;
+    private final Timer batchTimer;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong oldestMillis = new AtomicLong();
+
+    public UserOutboxRelay(UserOutboxRepository userOutboxRepository, KafkaTemplate<String, UserDto> kafkaTemplate,
+                           PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                           @Value("${users.outbox.batch-size:1000}") int batchSize,
+                           @Value("${users.outbox.send-timeout:PT30S}") Duration sendTimeout,
+                           @Value("${users.outbox.relay-enabled:true}") boolean enabled) {
+        this.userOutboxRepository = userOutboxRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.sendTimeout = sendTimeout;
+        this.enabled = enabled;
+        this.relayed = Counter.builder("users.outbox.relayed").description("Commands sent from the outbox to Kafka")
+                .register(meterRegistry);
+        this.failures = Counter.builder("users.outbox.failures").description("Failed outbox relay batches")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("users.outbox.batch").description("Time to send and confirm one outbox batch")
+                .register(meterRegistry);
+        Gauge.builder("users.outbox.pending", pending, AtomicLong::get).description("Commands waiting in the outbox")
+                .register(meterRegistry);
+        TimeGauge.builder("users.outbox.oldest.age", oldestMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Age of the oldest command waiting in the outbox").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${users.outbox.poll-interval:PT0.1S}")
+    public void relay() {
+        if (!enabled) return;
+        try {
+            //полная пачка - в outbox, вероятно, есть ещё
+            int sent;
+            do {
+                sent = relayBatch();
+            } while (sent == batchSize);
+            UserOutboxRepository.Lag lag = userOutboxRepository.lag();
+            pending.set(lag.pending());
+            oldestMillis.set(lag.oldest().toMillis());
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.warn("Outbox relay failed, the batch will be resent on the next poll", e);
+        }
+    }
+
+    int relayBatch() {
+        return Objects.requireNonNull(transaction.execute(status -> {
+            //другой инстанс уже разбирает outbox
+            if (!userOutboxRepository.tryLockRelay()) return 0;
+            List<UserOutboxRepository.Entry> entries = userOutboxRepository.findOldest(batchSize);
+            if (entries.isEmpty()) return 0;
+
+            long started = System.nanoTime();
+            //ключ - id пользователя: события одного пользователя попадают в одну партицию по порядку
+            CompletableFuture<?>[] sends = entries.stream()
+                    .map(entry -> kafkaTemplate.send(UserEvents.toRecord(entry.event())))
+                    .toArray(CompletableFuture[]::new);
+            kafkaTemplate.flush();
+            await(CompletableFuture.allOf(sends));
+            userOutboxRepository.deleteAll(entries.stream().map(UserOutboxRepository.Entry::id).toList());
+
+            batchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            relayed.increment(entries.size());
+            log.debug("Relayed {} outbox commands", entries.size());
+            return entries.size();
+        }));
+    }
+
+    private void await(CompletableFuture<?> sends) {
+        try {
+            sends.get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Kafka acknowledgements", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Kafka did not acknowledge the outbox batch", e);
+        }
+    }
+}
@@ -1,18 +1,27 @@
 package ru.bellintegrator.users_service.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.bellintegrator.users_service.cache.UserExistenceFilter;
+import ru.bellintegrator.users_service.cache.UserFilterIndex;
+import ru.bellintegrator.users_service.cache.UserPageCache;
+import ru.bellintegrator.users_service.model.CountMode;
+import ru.bellintegrator.users_service.model.UserCursor;
 import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEventType;
 import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.entity.UserIdGenerator;
 import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.model.UserScrollPage;
+import ru.bellintegrator.users_service.repository.UserOutboxRepository;
 import ru.bellintegrator.users_service.repository.UserRepository;
 import ru.bellintegrator.users_service.mapper.UserMapper;
 
@@ -20,66 +29,114 @@ import java.util.*;
 
 import static ru.bellintegrator.users_service.repository.UserSpecification.*;
 
+//Каждый публичный метод - таймер users.service с тегами class/method/exception; при попадании в кэш user
+//getUserById не вызывается и в таймер не попадает
 @Slf4j
 @Service
+@Timed(value = "users.service", description = "UserService method latency")
 public class UserService {
 
     private final UserRepository userRepository;
     private final UserMapper userMapper;
-    private final KafkaTemplate<String, UserDto> kafkaTemplate;
+    private final UserOutboxRepository userOutboxRepository;
+    private final UserPageCache userPageCache;
+    private final UserExistenceFilter userExistenceFilter;
+    private final UserFilterIndex userFilterIndex;
+    private final UserIdGenerator userIdGenerator;
 
-    public UserService(UserRepository userRepository, UserMapper userMapper, KafkaTemplate<String, UserDto> kafkaTemplate) {
+    public UserService(UserRepository userRepository, UserMapper userMapper, UserOutboxRepository userOutboxRepository,
+                       UserPageCache userPageCache, UserExistenceFilter userExistenceFilter, UserFilterIndex userFilterIndex,
+                       UserIdGenerator userIdGenerator) {
         this.userRepository = userRepository;
         this.userMapper = userMapper;
-        this.kafkaTemplate = kafkaTemplate;
+        this.userOutboxRepository = userOutboxRepository;
+        this.userPageCache = userPageCache;
+        this.userExistenceFilter = userExistenceFilter;
+        this.userFilterIndex = userFilterIndex;
+        this.userIdGenerator = userIdGenerator;
     }
 
-    @Cacheable(value = "user", key = "#id")
+    @Cacheable(value = "user", key = "#id", sync = true)
     public UserDto getUserById(UUID id) {
-        UserEntity userEntity = userRepository.findById(id).orElseThrow(
+        return userRepository.findDtoById(id).orElseThrow(
                 () -> new NoSuchElementException("Not found user by id = " + id)
         );
-        return userMapper.toDomainUser(userEntity);
     }
 
-    @Cacheable(value = "users", key = "{#f?.firstname, #f?.lastname, #f?.minAge, #f?.maxAge}")
+    //Согласованный с БД индекс в памяти отвечает сам, иначе - кэш страниц и БД
     public Page<UserDto> getAll(UserFilter f, Pageable pageable) {
-        log.info("Fetching user page for filter: {}", f);
+        return userFilterIndex.find(f, pageable)
+                .orElseGet(() -> userPageCache.get(f, pageable, () -> loadPage(f, pageable)));
+    }
+
+    private Page<UserDto> loadPage(UserFilter f, Pageable pageable) {
+        log.atDebug().addKeyValue("filter", f).log("Fetching user page from database");
+        return userRepository.findDtoPage(getSpec(f), pageable);
+    }
+
+    public UserScrollPage scroll(UserFilter f, String cursor, Sort sort, int size, CountMode countMode) {
+        if (size < 1 || size > 1000) throw new IllegalArgumentException("Size must be between 1 and 1000");
+        UserCursor after = cursor != null ? UserCursor.decode(cursor) : null;
+        Sort.Order order = after != null ? after.order() : sort.stream().findFirst().orElse(Sort.Order.asc("id"));
+        if (!UserCursor.SORT_PROPERTIES.contains(order.getProperty()))
+            throw new IllegalArgumentException("Unsupported sort property for scrolling: " + order.getProperty());
+
         Specification<UserEntity> spec = getSpec(f);
-        Page<UserEntity> userEntityPage = userRepository.findAll(spec, pageable);
-        List<UserDto> userListDTO = userEntityPage.stream()
+        List<UserDto> rows = userRepository.findAllOrdered(spec.and(keysetAfter(after)), order, size + 1).stream()
                 .map(userMapper::toDomainUser)
                 .toList();
-        return new PageImpl<>(userListDTO, pageable, userEntityPage.getTotalElements());
+        boolean hasNext = rows.size() > size;
+        List<UserDto> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? UserCursor.after(order, content.get(size - 1)).encode() : null;
+        return new UserScrollPage(content, nextCursor, hasNext, count(f, spec, countMode));
     }
 
-    @CacheEvict(value = {"user", "users"}, allEntries = true)
+    //Команды пишутся в user_outbox в транзакции запроса, в Kafka их переносит UserOutboxRelay.
+    //Кэши инвалидируются в EventListener после применения изменения
+    @Transactional
     public void createUser(UserDto userToCreate) {
         if (userToCreate.getId() != null) throw new IllegalArgumentException("ID must be null for creation");
-        kafkaTemplate.send("USER_CREATE", userToCreate);
-        log.info("Send CREATE event for user: {}", userToCreate);
+        //ID назначается до отправки, чтобы повторная доставка события не создавала дубликатов
+        userToCreate.setId(userIdGenerator.next());
+        userOutboxRepository.append(UserEventType.CREATE, userToCreate);
+        log.atInfo().addKeyValue("id", userToCreate.getId()).log("Queued CREATE event");
     }
 
-    @CacheEvict(value = {"user", "users"}, allEntries = true)
+    @Transactional
     public void updateUser(UserDto userToUpdate) {
         if (userToUpdate.getId() == null) throw new IllegalArgumentException("ID must be not null for update");
-        if (!userRepository.existsById(userToUpdate.getId()))
-            throw new NoSuchElementException("Not found user by id = " + userToUpdate.getId());
-        kafkaTemplate.send("USER_UPDATE", userToUpdate);
-        log.info("Send UPDATE event for user ID: {}", userToUpdate.getId());
+        requireExists(userToUpdate.getId());
+        userOutboxRepository.append(UserEventType.UPDATE, userToUpdate);
+        log.atInfo().addKeyValue("id", userToUpdate.getId()).log("Queued UPDATE event");
     }
 
-    @CacheEvict(value = {"user", "users"}, allEntries = true)
+    //Событие удаления несёт только id: состояние до удаления возвращает DELETE ... RETURNING в EventListener
+    @Transactional
     public void deleteUserById(UUID id) {
-       UserEntity entityToDelete = userRepository.findById(id)
-               .orElseThrow(() -> new NoSuchElementException("Not found user by id = " + id));
-        kafkaTemplate.send("USER_DELETE", userMapper.toDomainUser(entityToDelete));
-        log.info("Send DELETE event for user ID: {}", userMapper.toDomainUser(entityToDelete).getId());
+        requireExists(id);
+        userOutboxRepository.append(UserEventType.DELETE, new UserDto(id, null, null, null));
+        log.atInfo().addKeyValue("id", id).log("Queued DELETE event");
+    }
+
+    //404 только для id, которых точно нет; "возможно есть" публикуется без чтения БД,
+    //событие для несуществующего id при применении ничего не меняет
+    private void requireExists(UUID id) {
+        boolean exists = userExistenceFilter.mightContain(id).orElseGet(() -> userRepository.existsById(id));
+        if (!exists) throw new NoSuchElementException("Not found user by id = " + id);
+    }
+
+    private Long count(UserFilter f, Specification<UserEntity> spec, CountMode countMode) {
+        return switch (countMode) {
+            case NONE -> null;
+            case EXACT -> userRepository.count(spec);
+            case ESTIMATE -> {
+                Long estimate = f.normalized().equals(new UserFilter()) ? userRepository.estimateCount() : null;
+                yield estimate != null && estimate >= 0 ? estimate : null;
+            }
+        };
     }
 
     private Specification<UserEntity> getSpec(UserFilter f) {
-        return Specification.allOf(nameContains("firstname", f.getFirstname()),
-                nameContains("lastname", f.getLastname()), ageContains(f.getMinAge(), f.getMaxAge())
-        );
+        return byFilter(f);
     }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package ru.bellintegrator.users_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.bellintegrator.users_service.cache.UserCacheInvalidator;
+import ru.bellintegrator.users_service.cache.UserExistenceFilter;
+import ru.bellintegrator.users_service.config.UserSnapshotProperties;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.kafka.UserEventOffsets;
+import ru.bellintegrator.users_service.mapper.UserMapper;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.repository.UserCopyRepository;
+import ru.bellintegrator.users_service.repository.UserOutboxRepository;
+import ru.bellintegrator.users_service.repository.UserRepository;
+import ru.bellintegrator.users_service.repository.UserSnapshotRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static ru.bellintegrator.users_service.repository.UserSpecification.byFilter;
+
+//Снимок + повтор. Раз в users.snapshot.interval таблица users пишется в файл вместе со смещениями группы
+//users-service. Восстановление заполняет таблицу из последнего снимка одним COPY и дочитывает из Kafka только
+//события после его смещений, поэтому время зависит от размера таблицы и дельты, а не от всей истории топиков.
+@Slf4j
+@Service
+@ConditionalOnExpression("${users.snapshot.enabled:false} or ${users.snapshot.rebuild.enabled:false}")
+public class UserSnapshotService implements SmartInitializingSingleton, DisposableBean {
+
+    static final String REBUILD_GROUP_ID = "users-rebuild";
+
+    private final UserSnapshotRepository userSnapshotRepository;
+    private final UserCopyRepository userCopyRepository;
+    private final UserOutboxRepository userOutboxRepository;
+    private final UserRepository userRepository;
+    private final UserMapper userMapper;
+    private final EventListener eventListener;
+    private final ConsumerFactory<String, UserDto> consumerFactory;
+    private final UserCacheInvalidator userCacheInvalidator;
+    private final UserExistenceFilter userExistenceFilter;
+    private final TransactionTemplate snapshotTransaction;
+    private final UserSnapshotProperties properties;
+    private final UserEventOffsets eventOffsets;
+
+    public UserSnapshotService(UserSnapshotRepository userSnapshotRepository, UserCopyRepository userCopyRepository,
+                               UserOutboxRepository userOutboxRepository, UserRepository userRepository, UserMapper userMapper, EventListener eventListener,
+                               ConsumerFactory<String, UserDto> consumerFactory, UserCacheInvalidator userCacheInvalidator,
+                               UserExistenceFilter userExistenceFilter, PlatformTransactionManager transactionManager,
+                               KafkaAdmin kafkaAdmin, UserSnapshotProperties properties) {
+        this.userSnapshotRepository = userSnapshotRepository;
+        this.userCopyRepository = userCopyRepository;
+        this.userOutboxRepository = userOutboxRepository;
+        this.userRepository = userRepository;
+        this.userMapper = userMapper;
+        this.eventListener = eventListener;
+        this.consumerFactory = consumerFactory;
+        this.userCacheInvalidator = userCacheInvalidator;
+        this.userExistenceFilter = userExistenceFilter;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.properties = properties;
+        this.eventOffsets = new UserEventOffsets(kafkaAdmin);
+    }
+
+    @Scheduled(initialDelayString = "${users.snapshot.interval:PT1H}", fixedDelayString = "${users.snapshot.interval:PT1H}")
+    public void snapshot() {
+        if (!properties.isEnabled()) return;
+        try {
+            writeSnapshot();
+        } catch (RuntimeException e) {
+            log.warn("User snapshot failed", e);
+        }
+    }
+
+    //Смещения читаются до таблицы: всё до них уже в снимке. Строки могут оказаться новее смещений,
+    //повтор таких событий при восстановлении ничего не меняет - update/delete отсекаются по версии
+    long writeSnapshot() {
+        long started = System.currentTimeMillis();
+        Map<TopicPartition, Long> offsets = eventOffsets.committed();
+        long rows = Objects.requireNonNull(snapshotTransaction.execute(status -> {
+            try (Stream<UserEntity> users = userRepository.streamAll(byFilter(new UserFilter()), properties.getFetchSize())) {
+                return userSnapshotRepository.write(offsets, users.map(user -> new UserEvent(UserEventType.CREATE,
+                        userMapper.toDomainUser(user), user.getVersion())).iterator());
+            }
+        }));
+        log.info("User snapshot of {} rows written to {} in {} ms at offsets {}",
+                rows, properties.getDirectory(), System.currentTimeMillis() - started, offsets);
+        return rows;
+    }
+
+    //Вызывается после создания всех бинов, до запуска потребителей, планировщика и веб-сервера.
+    //Ошибка останавливает старт инстанса, прежнее содержимое users при этом остаётся
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (properties.getRebuild().isEnabled()) rebuild();
+    }
+
+    void rebuild() {
+        long started = System.currentTimeMillis();
+        Map<TopicPartition, Long> from;
+        long loaded;
+        try (UserSnapshotRepository.Reader snapshot = userSnapshotRepository.openLatest().orElseThrow(() ->
+                new IllegalStateException("No user snapshot in " + properties.getDirectory() + " to rebuild from"))) {
+            from = snapshot.offsets();
+            loaded = userCopyRepository.replaceAll(snapshot);
+            log.info("Loaded {} users from {} in {} ms", loaded, snapshot.path(), System.currentTimeMillis() - started);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<TopicPartition, Long> until = new HashMap<>();
+        long replayed = replay(from, until);
+        try {
+            //иначе группа users-service повторно применит те же события - безопасно, но лишняя работа
+            eventOffsets.advance(until);
+        } catch (RuntimeException e) {
+            log.warn("Could not advance offsets of {} after rebuild, replayed events will be applied again",
+                    UserEventOffsets.DATABASE_GROUP_ID, e);
+        }
+        //после повтора: его события тоже несут версии, которые новые команды должны обогнать
+        long nextVersion = userOutboxRepository.advanceVersionsPastUsers();
+        log.info("Outbox versions advanced to {}", nextVersion);
+        userCacheInvalidator.invalidateAll();
+        userExistenceFilter.drop();
+        log.info("Users table rebuilt from {} snapshot rows and {} events in {} ms",
+                loaded, replayed, System.currentTimeMillis() - started);
+    }
+
+    //Читает партиции от смещений снимка до концов, зафиксированных на старте, и применяет пачки тем же
+    //EventListener.handle. Смещения отдельной группы не коммитятся: партиции назначаются вручную
+    long replay(Map<TopicPartition, Long> from, Map<TopicPartition, Long> until) {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        try (Consumer<String, UserDto> consumer = consumerFactory.createConsumer(REBUILD_GROUP_ID, null, null, overrides)) {
+            List<TopicPartition> partitions = UserEventOffsets.TOPICS.stream()
+                    .flatMap(topic -> Optional.ofNullable(consumer.partitionsFor(topic)).orElse(List.of()).stream()
+                            .map(info -> new TopicPartition(topic, info.partition())))
+                    .toList();
+            consumer.assign(partitions);
+            for (TopicPartition partition : partitions) {
+                Long offset = from.get(partition);
+                if (offset != null) consumer.seek(partition, offset);
+                else consumer.seekToBeginning(List.of(partition));
+            }
+            until.putAll(consumer.endOffsets(partitions));
+
+            long replayed = 0;
+            while (partitions.stream().anyMatch(partition -> consumer.position(partition) < until.get(partition))) {
+                List<ConsumerRecord<String, UserDto>> batch = new ArrayList<>();
+                for (ConsumerRecord<String, UserDto> record : consumer.poll(properties.getRebuild().getPollTimeout())) {
+                    if (record.offset() < until.get(new TopicPartition(record.topic(), record.partition()))) {
+                        batch.add(record);
+                    }
+                }
+                if (batch.isEmpty()) continue;
+                eventListener.handle(batch);
+                replayed += batch.size();
+            }
+            return replayed;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        eventOffsets.close();
+    }
+}
@@ -0,0 +1,8 @@
+-- Таблица, которую раньше создавал Hibernate (ddl-auto: update)
+CREATE TABLE IF NOT EXISTS users
+(
+    id        UUID PRIMARY KEY,
+    firstname VARCHAR(255),
+    lastname  VARCHAR(255),
+    age       INTEGER NOT NULL
+);
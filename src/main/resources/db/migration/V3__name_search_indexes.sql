@@ -0,0 +1,10 @@
+-- Индексы по выражениям lower(name), которые строит UserSpecification.nameMatches.
+-- CONCURRENTLY не блокирует запись в users; Flyway выполняет такую миграцию вне транзакции.
+
+-- LIKE '%value%' (NameMatch.CONTAINS)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_firstname_trgm_idx ON users USING gin (lower(firstname) gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_lastname_trgm_idx ON users USING gin (lower(lastname) gin_trgm_ops);
+
+-- LIKE 'value%' (NameMatch.PREFIX) при любой collation базы
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_firstname_prefix_idx ON users (lower(firstname) text_pattern_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_lastname_prefix_idx ON users (lower(lastname) text_pattern_ops);
@@ -0,0 +1,12 @@
+-- Команды пользователей, записанные в транзакции запроса; UserOutboxRelay отправляет их в Kafka и удаляет.
+-- Имена без ограничения длины: слишком длинные значения, как и раньше, отклоняет потребитель (DLT)
+CREATE TABLE IF NOT EXISTS user_outbox
+(
+    id         BIGSERIAL PRIMARY KEY,
+    topic      VARCHAR(64) NOT NULL,
+    user_id    UUID        NOT NULL,
+    firstname  TEXT,
+    lastname   TEXT,
+    age        INTEGER,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
@@ -0,0 +1,6 @@
+-- Версия последнего применённого события: устаревшие и повторные события пропускаются условием version < :version
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- В outbox теперь хранится тип события, топик у всех один (user-events)
+ALTER TABLE user_outbox RENAME COLUMN topic TO event_type;
+UPDATE user_outbox SET event_type = substring(event_type FROM 6) WHERE event_type LIKE 'USER\_%';
@@ -0,0 +1,7 @@
+-- Индексы под keyset-пагинацию GET /users: UserSpecification.sortKey и keysetAfter сортируют и сравнивают
+-- по (ключ, id), где строковый ключ - coalesce(name, ''). Выражения совпадают с запросом дословно,
+-- иначе PostgreSQL не применит индекс. Сортировка по id идёт по первичному ключу.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_firstname_keyset_idx ON users ((coalesce(firstname, '')), id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_lastname_keyset_idx ON users ((coalesce(lastname, '')), id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_age_keyset_idx ON users (age, id);
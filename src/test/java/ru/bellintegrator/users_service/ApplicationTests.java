@@ -4,9 +4,13 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
 import ru.bellintegrator.users_service.model.UserDto;
 
+import java.util.Map;
+
 import static org.mockito.Mockito.mock;
 
 @SpringBootTest
@@ -23,6 +27,12 @@ class ApplicationTests {
             KafkaTemplate<String, UserDto> kafka = mock(KafkaTemplate.class);
             return kafka;
         }
+
+        //продюсер создаётся только при отправке, а её в тестах нет
+        @Bean
+        public ProducerFactory<Object, Object> producerFactory() {
+            return new DefaultKafkaProducerFactory<>(Map.of());
+        }
     }
 
 }
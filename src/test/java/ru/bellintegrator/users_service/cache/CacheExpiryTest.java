@@ -0,0 +1,36 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheExpiryTest {
+
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    @Test
+    void freshUntil_ShouldShortenTtlByAtMostJitter() {
+        assertEquals(TTL.toMillis(), new CacheExpiry(TTL, 0.1, 1, () -> 0).freshUntil(0));
+        assertEquals(TTL.toMillis() - 30_000, new CacheExpiry(TTL, 0.1, 1, () -> 0.5).freshUntil(0));
+        assertTrue(new CacheExpiry(TTL, 0.1, 1).freshUntil(0) > TTL.toMillis() * 0.9);
+    }
+
+    @Test
+    void refreshEarly_ShouldFireOnlyWithinWindowScaledByLoadTime() {
+        //-ln(1 - 0.95) ~ 3: окно раннего обновления ~ 3 * loadMillis * beta до истечения
+        CacheExpiry expiry = new CacheExpiry(TTL, 0, 1, () -> 0.95);
+
+        assertTrue(expiry.refreshEarly(10_000 - 250, 10_000, 100));
+        assertFalse(expiry.refreshEarly(10_000 - 350, 10_000, 100));
+        assertTrue(new CacheExpiry(TTL, 0, 2, () -> 0.95).refreshEarly(10_000 - 350, 10_000, 100));
+    }
+
+    @Test
+    void refreshEarly_ShouldNotFire_WhenDisabledUnknownOrAlreadyStale() {
+        assertFalse(new CacheExpiry(TTL, 0, 0, () -> 0.99).refreshEarly(9_999, 10_000, 100));
+        assertFalse(new CacheExpiry(TTL, 0, 1, () -> 0.99).refreshEarly(9_999, 10_000, 0));
+        assertFalse(new CacheExpiry(TTL, 0, 1, () -> 0.99).refreshEarly(10_000, 10_000, 100));
+    }
+}
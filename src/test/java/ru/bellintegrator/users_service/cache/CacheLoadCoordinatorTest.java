@@ -0,0 +1,103 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CacheLoadCoordinatorTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private MeterRegistry meterRegistry;
+    private CacheLoadCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coordinator = new CacheLoadCoordinator(redisTemplate, new UserCacheProperties(), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coordinator.destroy();
+    }
+
+    @Test
+    void load_ShouldRunOneLoaderForConcurrentMissesOfSameKey() throws Exception {
+        int callers = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> coordinator.load("user", "1", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return "value";
+            }, () -> null)));
+            loading.await();
+            for (int i = 1; i < callers; i++) {
+                results.add(executor.submit(() -> coordinator.load("user", "1", () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                }, () -> null)));
+            }
+            //ожидающие должны успеть встать за идущей загрузкой
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, meterRegistry.counter("users.cache.loads", "cache", "user", "outcome", "loaded").count());
+        assertEquals(callers - 1, meterRegistry.counter("users.cache.loads", "cache", "user", "outcome", "coalesced").count());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void load_ShouldPropagateLoaderFailureAndLoadAgainNextTime() throws Exception {
+        assertThrows(IllegalStateException.class, () -> coordinator.load("user", "1", () -> {
+            throw new IllegalStateException("database down");
+        }, () -> null));
+
+        assertEquals("value", coordinator.load("user", "1", () -> "value", () -> null));
+    }
+
+    @Test
+    void refresh_ShouldSkipKeyAlreadyQueued() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger refreshes = new AtomicInteger();
+
+        coordinator.refresh("user", "1", "stale", () -> {
+            refreshes.incrementAndGet();
+            release.await();
+            done.countDown();
+            return "value";
+        });
+        coordinator.refresh("user", "1", "stale", refreshes::incrementAndGet);
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, refreshes.get());
+        assertEquals(1, meterRegistry.counter("users.cache.refreshes", "cache", "user", "reason", "stale").count());
+    }
+}
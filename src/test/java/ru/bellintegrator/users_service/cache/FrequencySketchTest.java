@@ -0,0 +1,50 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import ru.bellintegrator.users_service.model.NameMatch;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    void top_ShouldKeepMostFrequentKeysAmongManyRareOnes() {
+        FrequencySketch<String> sketch = new FrequencySketch<>(3, 4);
+        for (int round = 0; round < 100; round++) {
+            sketch.record("hot-1");
+            sketch.record("hot-2");
+            if (round % 2 == 0) sketch.record("hot-3");
+            sketch.record("rare-" + round);
+        }
+
+        assertEquals(List.of("hot-1", "hot-2", "hot-3"), sketch.top().subList(0, 3).stream().sorted().toList());
+        assertEquals(3, sketch.top().size());
+        assertTrue(sketch.record("hot-1") >= 101);
+    }
+
+    @Test
+    void decay_ShouldLetNewKeysDisplaceFormerlyHotOnes() {
+        FrequencySketch<String> sketch = new FrequencySketch<>(1, 4);
+        for (int i = 0; i < 64; i++) sketch.record("old");
+        for (int i = 0; i < 6; i++) sketch.decay();
+        for (int i = 0; i < 4; i++) sketch.record("new");
+
+        assertEquals(List.of("new"), sketch.top());
+    }
+
+    @Test
+    void hotPage_ShouldRoundTripNormalizedFilterAndPage() {
+        HotPage page = new HotPage(new UserFilter("Iva", null, 18, null, NameMatch.PREFIX),
+                PageRequest.of(2, 20, Sort.by(Sort.Order.desc("age"), Sort.Order.asc("lastname"))));
+
+        HotPage decoded = HotPage.decode(page.encode());
+
+        assertEquals(page, decoded);
+        assertEquals("iva", decoded.filter().getFirstname());
+    }
+}
@@ -0,0 +1,151 @@
+package ru.bellintegrator.users_service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RefreshingCacheTest {
+
+    private final UUID testId = UUID.fromString("55555555-5555-5555-5555-555555555555");
+    private final UserDto oldUser = new UserDto(testId, "Old", "User", 30);
+    private final UserDto newUser = new UserDto(testId, "New", "User", 31);
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private ConcurrentMapCache delegate;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CacheLoadCoordinator coordinator;
+    private RefreshingCache cache;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new ConcurrentMapCache("user");
+        coordinator = new CacheLoadCoordinator(mock(StringRedisTemplate.class), new UserCacheProperties(),
+                new SimpleMeterRegistry());
+        cache = new RefreshingCache(delegate, new CacheExpiry(Duration.ofMinutes(10), 0, 0), coordinator, null, meterRegistry, now::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coordinator.destroy();
+    }
+
+    @Test
+    void get_ShouldLoadMissAndStoreWithFreshness() {
+        assertEquals(oldUser, cache.get(testId, () -> oldUser));
+
+        CachedValue<?> stored = (CachedValue<?>) delegate.get(testId).get();
+        assertEquals(oldUser, stored.value());
+        assertEquals(1_000 + Duration.ofMinutes(10).toMillis(), stored.freshUntil());
+        assertEquals(oldUser, cache.get(testId, UserDto.class));
+    }
+
+    @Test
+    void get_ShouldServeStaleValueAndRefreshInBackground() throws Exception {
+        cache.put(testId, oldUser);
+        now.addAndGet(Duration.ofMinutes(11).toMillis());
+        CountDownLatch refreshed = new CountDownLatch(1);
+
+        UserDto served = cache.get(testId, () -> {
+            refreshed.countDown();
+            return newUser;
+        });
+
+        assertEquals(oldUser, served);
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        //запись кладётся после возврата загрузчика
+        for (int i = 0; i < 100 && !newUser.equals(cache.get(testId, UserDto.class)); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(newUser, cache.get(testId, UserDto.class));
+    }
+
+    @Test
+    void get_ShouldRefreshHotKeyBeforeExpiry() throws Exception {
+        cache = new RefreshingCache(delegate, new CacheExpiry(Duration.ofMinutes(10), 0, 1, () -> 0.95), coordinator, null, meterRegistry, now::get);
+        delegate.put(testId, new CachedValue<>(oldUser, now.get() + 1_000, 500));
+        CountDownLatch refreshed = new CountDownLatch(1);
+
+        UserDto served = cache.get(testId, () -> {
+            refreshed.countDown();
+            return newUser;
+        });
+
+        assertEquals(oldUser, served);
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void get_ShouldNotStoreValueLoadedAcrossEviction() {
+        UserDto loaded = cache.get(testId, () -> {
+            cache.evict(testId);
+            return oldUser;
+        });
+
+        assertEquals(oldUser, loaded);
+        assertNull(delegate.get(testId));
+    }
+
+    @Test
+    void get_ShouldStoreValue_WhenOtherKeyIsEvictedDuringLoad() {
+        cache.get(testId, () -> {
+            cache.evict(UUID.fromString("66666666-6666-6666-6666-666666666666"));
+            return oldUser;
+        });
+
+        assertNotNull(delegate.get(testId));
+    }
+
+    @Test
+    void get_ShouldNotStoreValue_WhenOtherInstanceInvalidatesKeyDuringLoad() {
+        cache.get(testId, () -> {
+            cache.invalidated(TwoLevelCache.localKey(testId));
+            return oldUser;
+        });
+
+        assertNull(delegate.get(testId));
+    }
+
+    @Test
+    void loadAll_ShouldSkipOnlyKeysInvalidatedDuringLoad() {
+        UUID otherId = UUID.fromString("66666666-6666-6666-6666-666666666666");
+        UserDto otherUser = new UserDto(otherId, "Other", "User", 40);
+
+        int written = cache.loadAll(List.of(testId, otherId), keys -> {
+            cache.evict(testId);
+            return Map.of(testId, oldUser, otherId, otherUser);
+        });
+
+        assertEquals(1, written);
+        assertNull(delegate.get(testId));
+        assertEquals(otherUser, cache.get(otherId, UserDto.class));
+    }
+
+    @Test
+    void get_ShouldPublishCacheMetrics() {
+        cache.get(testId, () -> oldUser);
+        cache.get(testId, () -> newUser);
+        cache.get(UUID.randomUUID());
+        cache.evict(testId);
+
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "user").tag("result", "hit").counter().count());
+        assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "user").tag("result", "miss").counter().count());
+        assertEquals(1, meterRegistry.get("cache.puts").tag("cache", "user").counter().count());
+        assertEquals(1, meterRegistry.get("cache.evictions").tag("cache", "user").counter().count());
+    }
+}
@@ -0,0 +1,111 @@
+package ru.bellintegrator.users_service.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TwoLevelCacheTest {
+
+    private final UUID testId = UUID.fromString("44444444-4444-4444-4444-444444444444");
+    private final UserDto testUserDto = new UserDto(testId, "Test", "User", 30);
+
+    private ConcurrentMapCache remote;
+    private MeterRegistry meterRegistry;
+    private List<String> published;
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        remote = new ConcurrentMapCache("user");
+        meterRegistry = new SimpleMeterRegistry();
+        published = new ArrayList<>();
+        cache = new TwoLevelCache("user", Caffeine.newBuilder().maximumSize(100).build(), remote,
+                published::add, meterRegistry);
+    }
+
+    @Test
+    void get_ShouldPromoteRemoteValueToLocal() {
+        remote.put(testId, testUserDto);
+
+        assertEquals(testUserDto, cache.get(testId, UserDto.class));
+        remote.evict(testId);
+        assertEquals(testUserDto, cache.get(testId, UserDto.class));
+
+        assertEquals(1, count("l1", "hit"));
+        assertEquals(1, count("l1", "miss"));
+        assertEquals(1, count("l2", "hit"));
+    }
+
+    @Test
+    void get_ShouldCountMissOnBothTiers_WhenAbsent() {
+        assertNull(cache.get(testId));
+
+        assertEquals(1, count("l1", "miss"));
+        assertEquals(1, count("l2", "miss"));
+    }
+
+    @Test
+    void getWithLoader_ShouldLoadOnceAndStoreInBothTiers() {
+        assertEquals(testUserDto, cache.get(testId, () -> testUserDto));
+        assertEquals(testUserDto, cache.get(testId, () -> fail("Loader must not be called")));
+
+        Cache.ValueWrapper remoteValue = remote.get(testId);
+        assertNotNull(remoteValue);
+        assertEquals(testUserDto, remoteValue.get());
+    }
+
+    @Test
+    void evict_ShouldRemoveFromBothTiersAndPublishKey() {
+        cache.put(testId, testUserDto);
+
+        cache.evict(testId);
+
+        assertNull(cache.get(testId));
+        assertEquals(List.of(testId.toString()), published);
+        assertEquals(1, meterRegistry.get("cache.puts").tag("cache", "user").counter().count());
+        assertEquals(1, meterRegistry.get("cache.evictions").tag("cache", "user").counter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "user").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void invalidateLocal_ShouldDropOnlyLocalCopy() {
+        cache.put(testId, testUserDto);
+
+        cache.invalidateLocal(testId.toString());
+        cache.get(testId);
+
+        assertEquals(0, count("l1", "hit"));
+        assertEquals(1, count("l2", "hit"));
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    void clear_ShouldPublishNullKey() {
+        cache.put(testId, testUserDto);
+
+        cache.clear();
+
+        assertNull(remote.get(testId));
+        assertEquals(1, published.size());
+        assertNull(published.get(0));
+    }
+
+    private double count(String tier, String result) {
+        return meterRegistry.get("cache.tier.gets")
+                .tag("tier", tier)
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+}
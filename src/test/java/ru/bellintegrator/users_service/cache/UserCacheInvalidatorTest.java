@@ -0,0 +1,115 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserCacheInvalidatorTest {
+
+    @Mock
+    private UserPageCache userPageCache;
+    @Mock
+    private UserCacheWarmer userCacheWarmer;
+
+    private final UUID testId = UUID.fromString("55555555-5555-5555-5555-555555555555");
+    private final String ivanFilter = new UserFilter("iva", null, null, null).cacheKey();
+    private final String adultsFilter = new UserFilter(null, null, 18, null).cacheKey();
+    private final String petrovFilter = new UserFilter(null, "petrov", null, null).cacheKey();
+
+    private ConcurrentMapCacheManager cacheManager;
+    private UserCacheInvalidator invalidator;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = new ConcurrentMapCacheManager("user");
+        invalidator = new UserCacheInvalidator(cacheManager, userPageCache, userCacheWarmer);
+    }
+
+    @Test
+    void invalidate_ShouldEvictUserAndBumpOnlyMatchingFilters() {
+        when(userPageCache.trackedFilters()).thenReturn(Set.of(ivanFilter, adultsFilter, petrovFilter));
+        cacheManager.getCache("user").put(testId, new UserDto());
+
+        invalidator.invalidate(new UserChange(testId,
+                new UserDto(testId, "Ivan", "Sidorov", 17),
+                new UserDto(testId, "Ivan", "Sidorov", 18)));
+
+        assertNull(cacheManager.getCache("user").get(testId));
+        verify(userPageCache).invalidate(argThat(keys -> keys.size() == 2
+                && keys.containsAll(List.of(ivanFilter, adultsFilter))));
+    }
+
+    @Test
+    void invalidate_ShouldKeepUserEntries_WhenUserWasCreated() {
+        when(userPageCache.trackedFilters()).thenReturn(Set.of(petrovFilter));
+        UUID otherId = UUID.randomUUID();
+        cacheManager.getCache("user").put(otherId, new UserDto());
+
+        invalidator.invalidate(UserChange.created(new UserDto(testId, "Ivan", "Ivanov", 30)));
+
+        assertNotNull(cacheManager.getCache("user").get(otherId));
+        verify(userPageCache).invalidate(List.of());
+    }
+
+    @Test
+    void invalidate_ShouldBumpAllFilters_WhenStateIsUnknown() {
+        when(userPageCache.trackedFilters()).thenReturn(Set.of(ivanFilter, petrovFilter));
+
+        invalidator.invalidate(UserChange.deleted(testId, null));
+
+        verify(userPageCache).invalidate(argThat(keys -> keys.size() == 2));
+    }
+
+    @Test
+    void invalidate_ShouldDropMalformedFilterKeys() {
+        String malformed = "a\u001fb\u001fc\u001f\u0000\u001f\u0000\u001fCONTAINS";
+        when(userPageCache.trackedFilters()).thenReturn(Set.of(malformed, petrovFilter));
+
+        invalidator.invalidate(UserChange.created(new UserDto(testId, "Ivan", "Ivanov", 30)));
+
+        verify(userPageCache).invalidate(List.of(malformed));
+        verify(userPageCache).untrack(List.of(malformed));
+    }
+
+    @Test
+    void invalidateAll_ShouldClearCachesAndWarmHotKeysAgain() {
+        cacheManager.getCache("user").put(testId, new UserDto());
+
+        invalidator.invalidateAll();
+
+        assertNull(cacheManager.getCache("user").get(testId));
+        verify(userPageCache).invalidateAll();
+        verify(userCacheWarmer).warmAsync("invalidation");
+    }
+
+    @Test
+    void invalidate_ShouldFallBackToFullInvalidation_WhenRedisFails() {
+        when(userPageCache.trackedFilters()).thenThrow(new RedisConnectionFailureException("Redis is down"));
+        doThrow(new RedisConnectionFailureException("Redis is down")).doNothing().when(userPageCache).invalidateAll();
+        cacheManager.getCache("user").put(testId, new UserDto());
+
+        //изменение уже в БД: сбой не должен вернуть пачку на повтор
+        assertDoesNotThrow(() -> invalidator.invalidate(UserChange.deleted(testId, null)));
+        invalidator.retryFullInvalidation();
+        invalidator.retryFullInvalidation();
+        invalidator.retryFullInvalidation();
+
+        verify(userPageCache, times(2)).invalidateAll();
+        assertNull(cacheManager.getCache("user").get(testId));
+    }
+}
@@ -0,0 +1,61 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.repository.UserRepository;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserExistenceFilterTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+
+    private UserExistenceFilter filter(String cacheType) {
+        return new UserExistenceFilter(redisTemplate, mock(UserRepository.class), mock(PlatformTransactionManager.class),
+                new UserCacheProperties(), cacheType);
+    }
+
+    @Test
+    void offsets_ShouldUseOptimalNumberOfDistinctBitsWithinFilter() {
+        UserExistenceFilter filter = filter("redis");
+        //10 млн id при 1% ложных срабатываний: ~95.9 млн бит и 7 хешей
+        long bits = 95_850_584L;
+
+        for (int i = 0; i < 1000; i++) {
+            String[] offsets = filter.offsets(UUID.randomUUID());
+            assertEquals(7, offsets.length);
+            Set<Long> distinct = new HashSet<>();
+            Arrays.stream(offsets).map(Long::parseLong).forEach(offset -> {
+                assertTrue(offset >= 0 && offset < bits);
+                distinct.add(offset);
+            });
+            assertEquals(7, distinct.size());
+        }
+    }
+
+    @Test
+    void offsets_ShouldDifferForTimeOrderedIdsWithSamePrefix() {
+        UserExistenceFilter filter = filter("redis");
+
+        assertFalse(Arrays.equals(filter.offsets(new UUID(0x0190_0000_0000_7000L, 1)),
+                filter.offsets(new UUID(0x0190_0000_0000_7000L, 2))));
+    }
+
+    @Test
+    void mightContain_ShouldReturnNoAnswer_WhenRedisCacheDisabled() {
+        UserExistenceFilter filter = filter("none");
+
+        assertTrue(filter.mightContain(UUID.randomUUID()).isEmpty());
+        filter.addAll(Set.of(UUID.randomUUID()));
+        filter.rebuildIfStale();
+        verifyNoInteractions(redisTemplate);
+    }
+}
@@ -0,0 +1,139 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import ru.bellintegrator.users_service.config.UserCacheProperties;
+import ru.bellintegrator.users_service.model.NameMatch;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserFilterIndexTest {
+
+    private static final TopicPartition CREATE = new TopicPartition("USER_CREATE", 0);
+
+    private UserFilterIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new UserFilterIndex(new UserCacheProperties());
+    }
+
+    @Test
+    void find_ShouldMatchUserFilterSemantics_ForRandomFilters() {
+        Random random = new Random(42);
+        String[] names = {"Ivan", "Ivanov", "Petrov", "Anna", "Ivanna", "Sidorova", "Li", "I", null};
+        List<UserDto> users = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            users.add(new UserDto(new UUID(0, i), names[random.nextInt(names.length)],
+                    names[random.nextInt(names.length)], random.nextInt(300) - 10));
+        }
+        index.load(users.stream().map(user -> event(UserEventType.CREATE, user, null)).iterator(), Map.of(CREATE, 0L));
+        index.confirmWatermark(Map.of(CREATE, 0L));
+
+        String[] values = {null, "i", "iv", "iva", "van", "ov", "nna", "zzz", "IVAN"};
+        Integer[] ages = {null, -5, 0, 18, 40, 255, 280};
+        for (int i = 0; i < 500; i++) {
+            UserFilter filter = new UserFilter(values[random.nextInt(values.length)], values[random.nextInt(values.length)],
+                    ages[random.nextInt(ages.length)], ages[random.nextInt(ages.length)],
+                    random.nextBoolean() ? NameMatch.PREFIX : NameMatch.CONTAINS);
+            List<UserDto> expected = users.stream().filter(filter::matches).toList();
+
+            Page<UserDto> page = index.find(filter, PageRequest.of(1, 7)).orElseThrow();
+
+            assertEquals(expected.size(), page.getTotalElements(), filter.toString());
+            assertEquals(expected.stream().skip(7).limit(7).toList(), page.getContent(), filter.toString());
+        }
+    }
+
+    @Test
+    void find_ShouldReflectEventsAndSkipStaleVersions() {
+        UUID id = UUID.randomUUID();
+        index.load(Collections.emptyIterator(), Map.of());
+        index.confirmWatermark(Map.of());
+
+        index.apply(event(UserEventType.CREATE, new UserDto(id, "Ivan", "Petrov", null), 1L));
+        index.apply(event(UserEventType.CREATE, new UserDto(id, "Duplicate", "Create", 99), 2L));
+        assertEquals(List.of(new UserDto(id, "Ivan", "Petrov", 0)), find(new UserFilter("iva", null, null, null)));
+
+        index.apply(event(UserEventType.UPDATE, new UserDto(id, null, "Sidorov", 30), 3L));
+        assertEquals(List.of(), find(new UserFilter(null, "petrov", null, null)));
+        assertEquals(List.of(new UserDto(id, "Ivan", "Sidorov", 30)), find(new UserFilter(null, "sid", 30, 30, NameMatch.PREFIX)));
+
+        index.apply(event(UserEventType.UPDATE, new UserDto(id, "Stale", null, null), 3L));
+        index.apply(event(UserEventType.DELETE, new UserDto(id, null, null, null), 2L));
+        assertEquals(List.of(new UserDto(id, "Ivan", "Sidorov", 30)), find(new UserFilter()));
+
+        index.apply(event(UserEventType.DELETE, new UserDto(id, null, null, null), 4L));
+        assertEquals(List.of(), find(new UserFilter()));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void find_ShouldSkipEventsTheDatabaseRejects() {
+        index.load(Collections.emptyIterator(), Map.of());
+        index.confirmWatermark(Map.of());
+
+        index.apply(event(UserEventType.CREATE, new UserDto(UUID.randomUUID(), "x".repeat(256), null, 20), null));
+
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void find_ShouldReturnEmpty_UntilWatermarkReachesDatabaseOffsets() {
+        index.load(List.of(event(UserEventType.CREATE, new UserDto(UUID.randomUUID(), "Ivan", null, 20), 1L)).iterator(),
+                Map.of(CREATE, 5L));
+        assertTrue(index.find(new UserFilter(), PageRequest.of(0, 10)).isEmpty());
+
+        assertEquals(3, index.confirmWatermark(Map.of(CREATE, 8L)));
+        assertTrue(index.find(new UserFilter(), PageRequest.of(0, 10)).isEmpty());
+
+        index.advance(CREATE, 8L);
+        assertEquals(0, index.confirmWatermark(Map.of(CREATE, 8L)));
+        assertEquals(1, index.find(new UserFilter(), PageRequest.of(0, 10)).orElseThrow().getTotalElements());
+        assertTrue(index.find(new UserFilter(), PageRequest.of(0, 10, Sort.by("age"))).isEmpty());
+    }
+
+    @Test
+    void find_ShouldReturnEmpty_WhileDivergedUntilSnapshotCoversTheEvent() {
+        index.load(Collections.emptyIterator(), Map.of(CREATE, 5L));
+        index.advance(CREATE, 8L);
+        index.confirmWatermark(Map.of(CREATE, 8L));
+
+        //событие до снимка уже учтено в нём
+        index.markDiverged(CREATE, 4L);
+        assertTrue(index.find(new UserFilter(), PageRequest.of(0, 10)).isPresent());
+
+        index.markDiverged(CREATE, 6L);
+        assertTrue(index.find(new UserFilter(), PageRequest.of(0, 10)).isEmpty());
+        assertFalse(index.isReloadNeeded(Map.of(CREATE, 6L)));
+        assertTrue(index.isReloadNeeded(Map.of(CREATE, 7L)));
+
+        //снимок, снятый до коммита события, расхождение не снимает
+        index.load(Collections.emptyIterator(), Map.of(CREATE, 6L));
+        index.advance(CREATE, 8L);
+        index.confirmWatermark(Map.of(CREATE, 8L));
+        assertTrue(index.find(new UserFilter(), PageRequest.of(0, 10)).isEmpty());
+
+        index.load(Collections.emptyIterator(), Map.of(CREATE, 8L));
+        index.confirmWatermark(Map.of(CREATE, 8L));
+        assertTrue(index.find(new UserFilter(), PageRequest.of(0, 10)).isPresent());
+    }
+
+    private static UserEvent event(UserEventType type, UserDto user, Long version) {
+        return new UserEvent(type, user, version);
+    }
+
+    private List<UserDto> find(UserFilter filter) {
+        return index.find(filter, PageRequest.of(0, 20)).orElseThrow().getContent();
+    }
+}
@@ -0,0 +1,46 @@
+package ru.bellintegrator.users_service.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserPageCodecTest {
+
+    @Test
+    void encodeDecode_ShouldRoundTripPage() {
+        Pageable pageable = PageRequest.of(3, 2, Sort.by("lastname"));
+        List<UserDto> users = List.of(
+                new UserDto(UUID.randomUUID(), "Иван", "Петров", 30),
+                new UserDto(UUID.randomUUID(), null, "", -1));
+        Page<UserDto> page = new PageImpl<>(users, pageable, 1_000_000_007L);
+
+        Page<UserDto> decoded = UserPageCodec.decode(UserPageCodec.encode(page), pageable);
+
+        assertEquals(users, decoded.getContent());
+        assertEquals(1_000_000_007L, decoded.getTotalElements());
+        assertEquals(pageable, decoded.getPageable());
+    }
+
+    @Test
+    void encode_ShouldBeSmallerThanJson() {
+        UserDto user = new UserDto(UUID.randomUUID(), "Test", "User", 30);
+        Page<UserDto> page = new PageImpl<>(List.of(user), PageRequest.of(0, 1), 1);
+
+        //16 байт id + 2 строки + возраст + заголовок
+        assertTrue(UserPageCodec.encode(page).length < 32);
+    }
+
+    @Test
+    void decode_ShouldRejectUnknownVersion() {
+        assertThrows(IllegalArgumentException.class, () -> UserPageCodec.decode(new byte[]{99}, Pageable.unpaged()));
+    }
+}
@@ -0,0 +1,48 @@
+package ru.bellintegrator.users_service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowQueryDataSourceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private JdbcDataSource target;
+
+    @BeforeEach
+    void setUp() {
+        target = new JdbcDataSource();
+        target.setURL("jdbc:h2:mem:slow_query;DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(target).execute("CREATE TABLE IF NOT EXISTS t (id INT)");
+    }
+
+    @Test
+    void execute_ShouldCountStatementsSlowerThanThreshold_AndKeepResults() throws Exception {
+        SlowQueryDataSource dataSource = new SlowQueryDataSource(target, Duration.ofNanos(1), 0, () -> registry);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.update("INSERT INTO t VALUES (?)", 1);
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM t WHERE id = 1", Integer.class));
+
+        assertEquals(2, registry.counter(SlowQueryDataSource.SLOW_COUNTER).count());
+        try (Connection connection = dataSource.getConnection()) {
+            assertNotNull(connection.unwrap(org.h2.jdbc.JdbcConnection.class));
+        }
+    }
+
+    @Test
+    void execute_ShouldNotCountFastStatements() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SlowQueryDataSource(target, Duration.ofMinutes(1), 1, () -> registry));
+
+        jdbcTemplate.queryForObject("SELECT count(*) FROM t", Integer.class);
+
+        assertEquals(0, registry.counter(SlowQueryDataSource.SLOW_COUNTER).count());
+    }
+}
@@ -11,17 +11,29 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.bellintegrator.users_service.cache.HotKeyTracker;
+import ru.bellintegrator.users_service.model.CountMode;
 import ru.bellintegrator.users_service.model.UserDto;
 import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.model.UserScrollPage;
+import ru.bellintegrator.users_service.model.BulkImportResult;
+import ru.bellintegrator.users_service.service.UserBulkService;
 import ru.bellintegrator.users_service.service.UserService;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -35,6 +47,10 @@ class UserControllerTest {
     private ObjectMapper objectMapper;
     @Autowired
     private UserService userService;
+    @Autowired
+    private UserBulkService userBulkService;
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
 
     @TestConfiguration
     static class TestConfig {
@@ -42,6 +58,16 @@ class UserControllerTest {
         public UserService userService() {
             return mock(UserService.class);
         }
+
+        @Bean
+        public UserBulkService userBulkService() {
+            return mock(UserBulkService.class);
+        }
+
+        @Bean
+        public HotKeyTracker hotKeyTracker() {
+            return mock(HotKeyTracker.class);
+        }
     }
 
     private final UUID testUserId = UUID.fromString("11111111-1111-1111-1111-111111111111");
@@ -49,6 +75,7 @@ class UserControllerTest {
 
     @BeforeEach
     void setUp() {
+        reset(hotKeyTracker);
         testUserDto = new UserDto();
         testUserDto.setId(testUserId);
         testUserDto.setFirstname("Test");
@@ -69,6 +96,18 @@ class UserControllerTest {
                 .andExpect(jsonPath("$.age").value(10));
 
         verify(userService, times(1)).getUserById(testUserId);
+        verify(hotKeyTracker).recordUser(testUserId);
+    }
+
+    @Test
+    void getById_ShouldNotRecordHotKey_WhenUserIsMissing() throws Exception {
+        UUID missingId = UUID.randomUUID();
+        when(userService.getUserById(missingId)).thenThrow(new NoSuchElementException("Not found user by id = " + missingId));
+
+        mockMvc.perform(get("/users/{id}", missingId))
+                .andExpect(status().isNotFound());
+
+        verify(hotKeyTracker, never()).recordUser(missingId);
     }
 
     @Test
@@ -96,6 +135,24 @@ class UserControllerTest {
         verify(userService, times(1)).getAll(any(UserFilter.class), any(Pageable.class));
     }
 
+    @Test
+    void scroll_ShouldReturnSliceWithCursor() throws Exception {
+        UserScrollPage scrollPage = new UserScrollPage(List.of(testUserDto), "next-token", true, null);
+
+        when(userService.scroll(any(UserFilter.class), eq("token"), eq(Sort.by(Sort.Direction.DESC, "lastname")),
+                eq(10), eq(CountMode.ESTIMATE))).thenReturn(scrollPage);
+
+        mockMvc.perform(get("/users/scroll")
+                        .param("cursor", "token")
+                        .param("size", "10")
+                        .param("sort", "lastname,desc")
+                        .param("count", "ESTIMATE"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(testUserId.toString()))
+                .andExpect(jsonPath("$.nextCursor").value("next-token"))
+                .andExpect(jsonPath("$.hasNext").value(true));
+    }
+
     @Test
     void create_ShouldReturnAccepted() throws Exception {
         UserDto userToCreate = new UserDto();
@@ -112,6 +169,36 @@ class UserControllerTest {
         verify(userService, times(1)).createUser(any(UserDto.class));
     }
 
+    @Test
+    void bulkCreate_ShouldReturnImportResult() throws Exception {
+        when(userBulkService.importUsers(any(InputStream.class))).thenReturn(new BulkImportResult(2, 0));
+
+        mockMvc.perform(post("/users/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"firstname\":\"A\"}\n{\"firstname\":\"B\"}\n"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(0));
+    }
+
+    @Test
+    void export_ShouldStreamNdjson() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write((objectMapper.writeValueAsString(testUserDto) + "\n").getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(userBulkService).exportUsers(any(UserFilter.class), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(get("/users/export").param("lastname", "user"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(objectMapper.writeValueAsString(testUserDto) + "\n"));
+    }
+
     @Test
     void update_ShouldReturnAccepted() throws Exception {
         UserDto userToUpdate = new UserDto();
@@ -0,0 +1,68 @@
+package ru.bellintegrator.users_service.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedUserIdGeneratorTest {
+
+    @Test
+    void next_ShouldProduceVersion7WithTimestampInHighBits() {
+        long now = 1_760_000_000_000L;
+        UUID id = new TimeOrderedUserIdGenerator(() -> now).next();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(now, id.getMostSignificantBits() >>> 16);
+    }
+
+    @Test
+    void next_ShouldStayMonotonic_WhenMillisecondRepeatsOverflowsOrGoesBack() {
+        AtomicLong clock = new AtomicLong(1_000);
+        TimeOrderedUserIdGenerator generator = new TimeOrderedUserIdGenerator(clock::get);
+        List<UUID> ids = new ArrayList<>();
+        //5000 id за одну мс - больше 4096 значений счётчика
+        for (int i = 0; i < 5000; i++) ids.add(generator.next());
+        clock.set(500);
+        for (int i = 0; i < 10; i++) ids.add(generator.next());
+        clock.set(2_000);
+        ids.add(generator.next());
+
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0, "at " + i);
+        }
+        assertEquals(2_000, ids.getLast().getMostSignificantBits() >>> 16);
+    }
+
+    @Test
+    void next_ShouldBeUniqueAndOrderedPerThread_UnderConcurrency() throws InterruptedException {
+        TimeOrderedUserIdGenerator generator = new TimeOrderedUserIdGenerator();
+        Queue<UUID> all = new ConcurrentLinkedQueue<>();
+        Queue<String> unordered = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                UUID previous = generator.next();
+                all.add(previous);
+                for (int i = 0; i < 20_000; i++) {
+                    UUID next = generator.next();
+                    if (previous.compareTo(next) >= 0) unordered.add(previous + " >= " + next);
+                    all.add(next);
+                    previous = next;
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(List.of(), List.copyOf(unordered));
+        assertEquals(8 * 20_001, new HashSet<>(all).size());
+    }
+}
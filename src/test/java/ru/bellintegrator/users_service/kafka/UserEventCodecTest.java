@@ -0,0 +1,86 @@
+package ru.bellintegrator.users_service.kafka;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import ru.bellintegrator.users_service.model.UserDto;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserEventCodecTest {
+
+    private final UserEventSerializer serializer = new UserEventSerializer();
+    private final UserEventDeserializer deserializer = new UserEventDeserializer();
+
+    @Test
+    void encodeDecode_ShouldRoundTripUsers() {
+        UserDto[] users = {
+                new UserDto(UUID.randomUUID(), "Иван", "Петров", 30),
+                new UserDto(UUID.randomUUID(), null, "", Integer.MIN_VALUE),
+                new UserDto(null, "x".repeat(300), null, null),
+                new UserDto(UUID.randomUUID(), null, null, -1)
+        };
+        for (UserDto user : users) {
+            assertEquals(user, UserEventCodec.decode(UserEventCodec.encode(user)));
+        }
+    }
+
+    @Test
+    void deserialize_ShouldReadBothBinaryAndJsonEvents() {
+        UserDto user = new UserDto(UUID.randomUUID(), "Test", "User", 30);
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json;
+        try (JsonSerializer<UserDto> jsonSerializer = new JsonSerializer<>()) {
+            json = jsonSerializer.serialize("USER_CREATE", headers, user);
+        }
+
+        assertEquals(user, deserializer.deserialize("USER_CREATE", serializer.serialize("USER_CREATE", user)));
+        assertEquals(user, deserializer.deserialize("USER_CREATE", headers, json));
+        assertNull(deserializer.deserialize("USER_CREATE", null));
+    }
+
+    @Test
+    void encode_ShouldBeSmallerThanJson() {
+        UserDto user = new UserDto(UUID.randomUUID(), "Test", "User", 30);
+
+        //версия + флаги + 16 байт id + 2 строки + возраст
+        assertEquals(29, UserEventCodec.encode(user).length);
+    }
+
+    @Test
+    void decode_ShouldRejectUnknownVersion() {
+        assertThrows(SerializationException.class, () -> UserEventCodec.decode(new byte[]{99, 0}));
+    }
+
+    @Test
+    void decode_ShouldRejectCorruptedEvents() {
+        byte[] encoded = UserEventCodec.encode(new UserDto(UUID.randomUUID(), "Test", "User", 30));
+
+        for (int length = 1; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(SerializationException.class, () -> UserEventCodec.decode(truncated), "length " + length);
+        }
+        assertThrows(SerializationException.class, () -> UserEventCodec.decode(Arrays.copyOf(encoded, encoded.length + 1)));
+        //неизвестный флаг, длина firstname больше записи, длина с переполнением int, ненулевой лишний байт varint
+        assertThrows(SerializationException.class, () -> UserEventCodec.decode(new byte[]{1, 16}));
+        assertThrows(SerializationException.class, () -> UserEventCodec.decode(new byte[]{1, 2, 100, 'a'}));
+        assertThrows(SerializationException.class, () -> UserEventCodec.decode(new byte[]{1, 2, -1, -1, -1, -1, 15}));
+        assertThrows(SerializationException.class, () -> UserEventCodec.decode(new byte[]{1, 8, -128, 0}));
+    }
+
+    @Test
+    void errorHandlingDeserializer_ShouldReturnNullWithExceptionHeader_ForCorruptedEvent() {
+        RecordHeaders headers = new RecordHeaders();
+        try (ErrorHandlingDeserializer<UserDto> errorHandling = new ErrorHandlingDeserializer<>(deserializer)) {
+            assertNull(errorHandling.deserialize(UserEvents.TOPIC, headers, new byte[]{1, 2, 100, 'a'}));
+        }
+
+        assertNotNull(headers.lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER));
+    }
+}
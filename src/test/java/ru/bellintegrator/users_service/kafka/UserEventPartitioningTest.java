@@ -0,0 +1,64 @@
+package ru.bellintegrator.users_service.kafka;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import ru.bellintegrator.users_service.config.UserKafkaProperties.ProducerPreset;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//С любым пресетом продюсера все события пользователя попадают в одну партицию user-events.
+//Пропускная способность пресетов - ProducerThroughputBenchmark в профиле jmh
+@EmbeddedKafka(partitions = 4, topics = UserEvents.TOPIC)
+class UserEventPartitioningTest {
+
+    private static final int USERS = 50;
+    private static final int EVENTS_PER_USER = 4;
+
+    @Test
+    void presets_ShouldKeepEachUserOnOnePartition(EmbeddedKafkaBroker broker) throws Exception {
+        for (ProducerPreset preset : ProducerPreset.values()) {
+            Map<String, Object> configs = new HashMap<>(preset.settings());
+            configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+            configs.put(ProducerConfig.ACKS_CONFIG, "all");
+            configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            DefaultKafkaProducerFactory<String, UserDto> producerFactory = new DefaultKafkaProducerFactory<>(configs,
+                    new StringSerializer(), new UserEventSerializer());
+            KafkaTemplate<String, UserDto> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+            try {
+                List<CompletableFuture<SendResult<String, UserDto>>> sends = new ArrayList<>(USERS * EVENTS_PER_USER);
+                for (int event = 0; event < EVENTS_PER_USER; event++) {
+                    for (int i = 0; i < USERS; i++) {
+                        UserDto user = new UserDto(new UUID(i, i), "Name" + event, null, event);
+                        sends.add(kafkaTemplate.send(UserEvents.toRecord(new UserEvent(UserEventType.UPDATE, user, (long) event))));
+                    }
+                }
+                kafkaTemplate.flush();
+                CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+
+                Map<String, Set<Integer>> partitions = new HashMap<>();
+                for (CompletableFuture<SendResult<String, UserDto>> send : sends) {
+                    SendResult<String, UserDto> result = send.join();
+                    partitions.computeIfAbsent(result.getProducerRecord().key(), key -> new HashSet<>())
+                            .add(result.getRecordMetadata().partition());
+                }
+                assertEquals(USERS, partitions.size());
+                assertTrue(partitions.values().stream().allMatch(p -> p.size() == 1), preset.name());
+            } finally {
+                producerFactory.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ru.bellintegrator.users_service.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSamplingFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private LogSamplingFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new LogSamplingFilter();
+        filter.addRule(rule("ru.example", 1, 100));
+        filter.addRule(rule("ru.example.Noisy", 1, 2));
+        filter.addRule(rule("ru.example.Muted", 0, 0));
+        filter.start();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.INFO);
+    }
+
+    @Test
+    void decide_ShouldLimitInfoPerSecond_ByLongestMatchingPrefix() {
+        Logger noisy = context.getLogger("ru.example.Noisy");
+
+        assertEquals(FilterReply.NEUTRAL, decide(noisy, Level.INFO));
+        assertEquals(FilterReply.NEUTRAL, decide(noisy, Level.INFO));
+        assertEquals(FilterReply.DENY, decide(noisy, Level.INFO));
+        //WARN и выше правило не ограничивает, как и логгеры вне правил
+        assertEquals(FilterReply.NEUTRAL, decide(noisy, Level.WARN));
+        assertEquals(FilterReply.NEUTRAL, decide(context.getLogger("ru.example.Other"), Level.INFO));
+        assertEquals(FilterReply.NEUTRAL, decide(context.getLogger("ru.examples.Noisy"), Level.INFO));
+    }
+
+    @Test
+    void decide_ShouldDropAllSampledOutEvents_AndIgnoreDisabledLevels() {
+        Logger muted = context.getLogger("ru.example.Muted");
+
+        assertEquals(FilterReply.DENY, decide(muted, Level.INFO));
+        //DEBUG выключен уровнем логгера - решение остаётся за ним
+        assertEquals(FilterReply.NEUTRAL, decide(muted, Level.DEBUG));
+    }
+
+    @Test
+    void tryAcquire_ShouldStartNewWindowEverySecond() {
+        LogSamplingFilter.Rule rule = rule("ru.example", 1, 1);
+
+        assertTrue(rule.tryAcquire(10));
+        assertFalse(rule.tryAcquire(10));
+        assertTrue(rule.tryAcquire(11));
+    }
+
+    private FilterReply decide(Logger logger, Level level) {
+        return filter.decide(null, logger, level, "message", null, null);
+    }
+
+    private static LogSamplingFilter.Rule rule(String logger, double sampleRate, int permitsPerSecond) {
+        LogSamplingFilter.Rule rule = new LogSamplingFilter.Rule();
+        rule.setLogger(logger);
+        rule.setSampleRate(sampleRate);
+        rule.setPermitsPerSecond(permitsPerSecond);
+        return rule;
+    }
+}
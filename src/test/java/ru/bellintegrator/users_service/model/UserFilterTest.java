@@ -0,0 +1,70 @@
+package ru.bellintegrator.users_service.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserFilterTest {
+
+    private final UUID testId = UUID.fromString("55555555-5555-5555-5555-555555555555");
+
+    @Test
+    void filterCacheKey_ShouldRoundTripNulls() {
+        UserFilter filter = new UserFilter("", null, 10, null);
+
+        assertEquals(filter, UserFilter.fromCacheKey(filter.cacheKey()));
+    }
+
+    @Test
+    void normalizedFilter_ShouldIgnoreCaseAndInvertedAgeRange() {
+        UserFilter filter = new UserFilter("IvAn", null, 40, 20);
+
+        assertEquals(new UserFilter("ivan", null, null, null), filter.normalized());
+    }
+
+    @Test
+    void filterCacheKey_ShouldReadKeysWrittenBeforeMatchMode() {
+        assertEquals(new UserFilter("iva", null, 10, null, NameMatch.CONTAINS),
+                UserFilter.fromCacheKey("iva\u001f\u0000\u001f10\u001f\u0000"));
+    }
+
+    @Test
+    void prefixFilter_ShouldMatchOnlyNameStarts() {
+        UserFilter filter = new UserFilter(null, "Pet", null, null, NameMatch.PREFIX);
+
+        assertTrue(filter.matches(new UserDto(testId, null, "petrov", 20)));
+        assertFalse(filter.matches(new UserDto(testId, null, "Sapetov", 20)));
+        assertNotEquals(filter.normalized().cacheKey(), new UserFilter(null, "pet", null, null).normalized().cacheKey());
+    }
+
+    @Test
+    void containsFilter_ShouldMatchShortValuesAsPrefix() {
+        UserFilter shortValue = new UserFilter(null, "ov", null, null, NameMatch.CONTAINS);
+        UserFilter longValue = new UserFilter(null, "tov", null, null, NameMatch.CONTAINS);
+
+        assertTrue(shortValue.matches(new UserDto(testId, null, "Ovechkin", 20)));
+        assertFalse(shortValue.matches(new UserDto(testId, null, "Petrov", 20)));
+        assertTrue(longValue.matches(new UserDto(testId, null, "Sapetov", 20)));
+        assertEquals(NameMatch.PREFIX, NameMatch.CONTAINS.forValue("ov"));
+        assertEquals(NameMatch.CONTAINS, NameMatch.CONTAINS.forValue("tov"));
+    }
+
+    @Test
+    void filterCacheKey_ShouldRoundTripControlCharactersOfKeyFormat() {
+        UserFilter filter = new UserFilter("a\u001fb\u001ec", "\u0000", 10, null, NameMatch.PREFIX);
+        UserFilter escaped = new UserFilter("\u001bs", "\u001b", null, null);
+
+        assertEquals(5, filter.cacheKey().split("\u001f", -1).length);
+        assertFalse(filter.cacheKey().contains("\u001e"));
+        assertEquals(filter, UserFilter.fromCacheKey(filter.cacheKey()));
+        assertEquals(escaped, UserFilter.fromCacheKey(escaped.cacheKey()));
+    }
+
+    @Test
+    void fromCacheKey_ShouldRejectMalformedKeys() {
+        assertThrows(IllegalArgumentException.class, () -> UserFilter.fromCacheKey("a\u001fb\u001fc\u001f\u0000\u001f\u0000\u001fCONTAINS"));
+        assertThrows(IllegalArgumentException.class, () -> UserFilter.fromCacheKey("a\u001b\u001f\u0000\u001f\u0000\u001f\u0000"));
+    }
+}
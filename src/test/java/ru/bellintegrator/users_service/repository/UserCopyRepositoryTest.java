@@ -0,0 +1,50 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.junit.jupiter.api.Test;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCopyRepositoryTest {
+
+    @Test
+    void writeBinary_ShouldProducePostgresBinaryCopyTuples() throws IOException {
+        UUID id = UUID.fromString("33333333-3333-3333-3333-333333333333");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = UserCopyRepository.writeBinary(List.of(
+                new UserEvent(UserEventType.CREATE, new UserDto(id, "Ян", null, 30), 5L)).iterator(), out);
+
+        assertEquals(1, rows);
+        ByteBuffer copy = ByteBuffer.wrap(out.toByteArray());
+        byte[] signature = new byte[11];
+        copy.get(signature);
+        assertEquals("PGCOPY\n\377\r\n\0", new String(signature, StandardCharsets.ISO_8859_1));
+        assertEquals(0, copy.getInt());
+        assertEquals(0, copy.getInt());
+
+        assertEquals(5, copy.getShort());
+        assertEquals(16, copy.getInt());
+        assertEquals(id, new UUID(copy.getLong(), copy.getLong()));
+        byte[] firstname = new byte[copy.getInt()];
+        copy.get(firstname);
+        assertEquals("Ян", new String(firstname, StandardCharsets.UTF_8));
+        assertEquals(-1, copy.getInt());
+        assertEquals(4, copy.getInt());
+        assertEquals(30, copy.getInt());
+        assertEquals(8, copy.getInt());
+        assertEquals(5L, copy.getLong());
+
+        assertEquals(-1, copy.getShort());
+        assertFalse(copy.hasRemaining());
+    }
+}
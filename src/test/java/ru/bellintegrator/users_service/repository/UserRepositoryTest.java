@@ -0,0 +1,143 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.model.NameMatch;
+import ru.bellintegrator.users_service.model.UserCursor;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserFilter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.bellintegrator.users_service.repository.UserSpecification.*;
+
+@DataJpaTest
+class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        String[] lastnames = {"Petrov", null, "Ivanov", "Petrov", "Sidorov", null, "Ivanov", "Petrov", "Abramov"};
+        for (int i = 0; i < lastnames.length; i++) {
+            userRepository.save(new UserEntity(UUID.randomUUID(), "Name" + i, lastnames[i], 20 + i % 3));
+        }
+    }
+
+    @Test
+    void findAllOrdered_ShouldScrollThroughAllUsersByKeyset_WhenSortedByNullableColumn() {
+        for (Sort.Direction direction : Sort.Direction.values()) {
+            Sort.Order order = new Sort.Order(direction, "lastname");
+            List<UserEntity> scrolled = scrollAll(order, 2);
+
+            Comparator<UserEntity> expectedOrder = Comparator
+                    .comparing((UserEntity u) -> Objects.requireNonNullElse(u.getLastname(), ""))
+                    .thenComparing(u -> u.getId().toString());
+            List<UserEntity> expected = userRepository.findAll().stream()
+                    .sorted(direction.isAscending() ? expectedOrder : expectedOrder.reversed())
+                    .toList();
+            assertEquals(ids(expected), ids(scrolled));
+        }
+    }
+
+    @Test
+    void findAllOrdered_ShouldApplyFilterTogetherWithKeyset() {
+        List<UserEntity> scrolled = new ArrayList<>();
+        Sort.Order order = Sort.Order.asc("age");
+        UserCursor cursor = null;
+        do {
+            List<UserEntity> page = userRepository.findAllOrdered(
+                    Specification.allOf(ageContains(21, null), keysetAfter(cursor)), order, 2);
+            scrolled.addAll(page);
+            cursor = page.size() < 2 ? null : UserCursor.after(order, toDto(page.get(page.size() - 1)));
+        } while (cursor != null);
+
+        assertEquals(6, scrolled.size());
+        assertTrue(scrolled.stream().allMatch(u -> u.getAge() >= 21));
+        assertEquals(scrolled.size(), scrolled.stream().map(UserEntity::getId).distinct().count());
+    }
+
+    @Test
+    void streamAll_ShouldStreamFilteredUsersAndDetachThem() {
+        entityManager.flush();
+        entityManager.clear();
+
+        List<UserEntity> streamed;
+        try (Stream<UserEntity> users = userRepository.streamAll(byFilter(new UserFilter(null, "petrov", null, null)), 2)) {
+            streamed = users.toList();
+        }
+
+        assertEquals(3, streamed.size());
+        assertTrue(streamed.stream().allMatch(u -> "Petrov".equals(u.getLastname())));
+        assertTrue(streamed.stream().noneMatch(entityManager.getEntityManager()::contains));
+    }
+
+    @Test
+    void findAll_ShouldMatchNamesByPrefixOrSubstring_AndTreatWildcardsLiterally() {
+        userRepository.save(new UserEntity(UUID.randomUUID(), "Name%", "Ivanov_", 40));
+
+        assertEquals(3, userRepository.findAll(byFilter(new UserFilter(null, "iv", null, null, NameMatch.PREFIX))).size());
+        assertEquals(0, userRepository.findAll(byFilter(new UserFilter(null, "nov", null, null, NameMatch.PREFIX))).size());
+        assertEquals(3, userRepository.findAll(byFilter(new UserFilter(null, "nov", null, null, NameMatch.CONTAINS))).size());
+        assertEquals(0, userRepository.findAll(byFilter(new UserFilter(null, "ov", null, null, NameMatch.CONTAINS))).size());
+        assertEquals(1, userRepository.findAll(byFilter(new UserFilter("me%", null, null, null))).size());
+        assertEquals(1, userRepository.findAll(byFilter(new UserFilter(null, "ov_", null, null))).size());
+    }
+
+    @Test
+    void findDtoPage_ShouldProjectSortedPageAndCountWithoutManagedEntities() {
+        entityManager.flush();
+        entityManager.clear();
+
+        Page<UserDto> page = userRepository.findDtoPage(byFilter(new UserFilter(null, "petrov", null, null)),
+                PageRequest.of(0, 2, Sort.by("firstname")));
+
+        assertEquals(3, page.getTotalElements());
+        assertEquals(List.of("Name0", "Name3"), page.getContent().stream().map(UserDto::getFirstname).toList());
+        assertTrue(page.getContent().stream().allMatch(u -> u.getId() != null && "Petrov".equals(u.getLastname())));
+        UserDto first = page.getContent().get(0);
+        assertEquals(first, userRepository.findDtoById(first.getId()).orElseThrow());
+        assertTrue(userRepository.findDtoById(UUID.randomUUID()).isEmpty());
+        assertEquals(0, entityManager.getEntityManager().unwrap(SessionImplementor.class)
+                .getPersistenceContext().getNumberOfManagedEntities());
+    }
+
+    private List<UserEntity> scrollAll(Sort.Order order, int size) {
+        List<UserEntity> scrolled = new ArrayList<>();
+        UserCursor cursor = null;
+        do {
+            String token = cursor != null ? cursor.encode() : null;
+            List<UserEntity> page = userRepository.findAllOrdered(
+                    keysetAfter(token != null ? UserCursor.decode(token) : null), order, size);
+            scrolled.addAll(page);
+            cursor = page.size() < size ? null : UserCursor.after(order, toDto(page.get(page.size() - 1)));
+        } while (cursor != null);
+        return scrolled;
+    }
+
+    private static UserDto toDto(UserEntity entity) {
+        return new UserDto(entity.getId(), entity.getFirstname(), entity.getLastname(), entity.getAge());
+    }
+
+    private static List<Object> ids(List<UserEntity> users) {
+        return users.stream().map(u -> (Object) u.getId()).toList();
+    }
+}
@@ -0,0 +1,77 @@
+package ru.bellintegrator.users_service.repository;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.bellintegrator.users_service.config.UserSnapshotProperties;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSnapshotRepositoryTest {
+
+    @TempDir
+    private Path directory;
+
+    private UserSnapshotProperties properties;
+    private UserSnapshotRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        properties = new UserSnapshotProperties();
+        properties.setDirectory(directory.resolve("snapshots"));
+        properties.setBlockSize(7);
+        repository = new UserSnapshotRepository(properties);
+    }
+
+    @Test
+    void openLatest_ShouldReadBackRowsAndOffsets_AcrossBlocks() throws IOException {
+        List<UserEvent> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            users.add(new UserEvent(UserEventType.CREATE, new UserDto(UUID.randomUUID(),
+                    i % 3 == 0 ? null : "Иван" + i, i % 5 == 0 ? null : "Petrov", i - 5), (long) i * 10));
+        }
+        Map<TopicPartition, Long> offsets = Map.of(new TopicPartition("user-events", 0), 42L,
+                new TopicPartition("user-events", 3), 7L);
+
+        assertEquals(30, repository.write(offsets, users.iterator()));
+
+        try (UserSnapshotRepository.Reader snapshot = repository.openLatest().orElseThrow()) {
+            assertEquals(offsets, snapshot.offsets());
+            List<UserEvent> read = new ArrayList<>();
+            snapshot.forEachRemaining(read::add);
+            assertEquals(users, read);
+        }
+    }
+
+    @Test
+    void write_ShouldKeepOnlyRetainedSnapshots() throws Exception {
+        properties.setRetain(2);
+        for (int i = 0; i < 3; i++) {
+            repository.write(Map.of(new TopicPartition("user-events", 0), (long) i), Collections.emptyIterator());
+            Thread.sleep(2);
+        }
+
+        try (Stream<Path> files = Files.list(properties.getDirectory())) {
+            assertEquals(2, files.count());
+        }
+        try (UserSnapshotRepository.Reader snapshot = repository.openLatest().orElseThrow()) {
+            assertEquals(Map.of(new TopicPartition("user-events", 0), 2L), snapshot.offsets());
+            assertFalse(snapshot.hasNext());
+        }
+    }
+
+    @Test
+    void openLatest_ShouldBeEmpty_WhenNoSnapshotWasWritten() {
+        assertTrue(repository.openLatest().isEmpty());
+    }
+}
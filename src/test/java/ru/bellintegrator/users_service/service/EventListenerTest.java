@@ -1,21 +1,45 @@
 package ru.bellintegrator.users_service.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.errors.SerializationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import ru.bellintegrator.users_service.entity.UserEntity;
-import ru.bellintegrator.users_service.mapper.UserMapper;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import ru.bellintegrator.users_service.cache.UserCacheInvalidator;
+import ru.bellintegrator.users_service.cache.UserChange;
+import ru.bellintegrator.users_service.cache.UserExistenceFilter;
+import ru.bellintegrator.users_service.config.UserKafkaProperties;
+import ru.bellintegrator.users_service.entity.TimeOrderedUserIdGenerator;
+import ru.bellintegrator.users_service.entity.UserIdGenerator;
+import ru.bellintegrator.users_service.kafka.UserEvents;
 import ru.bellintegrator.users_service.model.UserDto;
-import ru.bellintegrator.users_service.repository.UserRepository;
-
-import java.util.Optional;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.repository.UserBatchRepository;
+import ru.bellintegrator.users_service.repository.UserCopyRepository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.UUID;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
+import static ru.bellintegrator.users_service.model.UserEventType.*;
 
 @ExtendWith(MockitoExtension.class)
 class EventListenerTest {
@@ -24,115 +48,184 @@ class EventListenerTest {
     private EventListener eventListener;
 
     @Mock
-    private UserRepository userRepository;
+    private UserBatchRepository userBatchRepository;
+
+    @Mock
+    private UserCopyRepository userCopyRepository;
+
+    @Mock
+    private UserCacheInvalidator userCacheInvalidator;
+
+    @Mock
+    private DeadLetterPublishingRecoverer deadLetterRecoverer;
 
     @Mock
-    private UserMapper userMapper;
+    private UserExistenceFilter userExistenceFilter;
+
+    @Spy
+    private UserEventLanes userEventLanes = new UserEventLanes(new UserKafkaProperties());
+
+    @Spy
+    private UserIdGenerator userIdGenerator = new TimeOrderedUserIdGenerator();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     private final UUID testId = UUID.fromString("33333333-3333-3333-3333-333333333333");
+    private final UUID otherId = UUID.fromString("44444444-4444-4444-4444-444444444444");
     private UserDto testUserDto;
 
     @BeforeEach
     void setUp() {
-        testUserDto = new UserDto();
-        testUserDto.setId(testId);
-        testUserDto.setFirstname("Test");
-        testUserDto.setLastname("User");
-        testUserDto.setAge(30);
-
-        UserEntity testUserEntity = new UserEntity();
-        testUserEntity.setId(testId);
-        testUserEntity.setFirstname("Test");
-        testUserEntity.setLastname("User");
-        testUserEntity.setAge(30);
+        testUserDto = new UserDto(testId, "Test", "User", 30);
     }
 
     @Test
-    void handleCreate_ShouldSaveUser_WhenIdIsNull() {
-        UserDto userToCreate = new UserDto();
-        userToCreate.setFirstname("New");
-        userToCreate.setId(null);
-
-        UserEntity newEntity = new UserEntity();
-        newEntity.setId(testId);
-
-        when(userMapper.toUserEntity(userToCreate)).thenReturn(newEntity);
-        when(userRepository.save(newEntity)).thenReturn(newEntity);
-
-        eventListener.handleCreate(userToCreate);
-
-        verify(userMapper, times(1)).toUserEntity(userToCreate);
-        verify(userRepository, times(1)).save(newEntity);
+    void handle_ShouldInsertBatchAndInvalidateInsertedRows() {
+        UserDto other = new UserDto(otherId, "Other", "User", 40);
+        when(userBatchRepository.insertAll(anyList())).thenReturn(List.of(testUserDto));
+
+        eventListener.handle(List.of(record(CREATE, 0, testUserDto, 1L),
+                record(CREATE, 1, other, 2L), record(CREATE, 2, testUserDto, 1L)));
+
+        verify(userBatchRepository, times(1)).insertAll(List.of(new UserEvent(CREATE, testUserDto, 1L),
+                new UserEvent(CREATE, other, 2L)));
+        verify(userExistenceFilter, times(1)).addAll(List.of(testId));
+        verify(userCacheInvalidator, times(1)).invalidate(List.of(UserChange.created(testUserDto)));
+        assertEquals(3, meterRegistry.counter("users.events.received", "topic", UserEvents.TOPIC).count());
+        assertEquals(1, meterRegistry.timer("users.events.apply", "type", "CREATE").count());
+        assertEquals(0, meterRegistry.timer("users.events.apply", "type", "UPDATE").count());
     }
 
     @Test
-    void handleCreate_ShouldSkipProcessing_WhenIdIsNotNull() {
-        UserDto userToCreate = new UserDto();
+    void handle_ShouldCopyLargeCreateBatches() {
+        UserDto other = new UserDto(otherId, "Other", "User", 40);
+        List<UserEvent> events = List.of(new UserEvent(CREATE, testUserDto, 1L), new UserEvent(CREATE, other, 2L));
+        when(userCopyRepository.isWorthCopying(2)).thenReturn(true);
+        when(userCopyRepository.insertAll(events)).thenReturn(List.of(testUserDto, other));
 
-        assertThrows(NullPointerException.class, () -> eventListener.handleCreate(userToCreate));
+        eventListener.handle(List.of(record(CREATE, 0, testUserDto, 1L), record(CREATE, 1, other, 2L)));
 
-        verify(userRepository, never()).save(any(UserEntity.class));
+        verify(userBatchRepository, never()).insertAll(any());
+        verify(userExistenceFilter, times(1)).addAll(List.of(testId, otherId));
+        verify(userCacheInvalidator, times(1)).invalidate(List.of(UserChange.created(testUserDto), UserChange.created(other)));
     }
 
+    @Test
+    void handle_ShouldReadLegacyTopicsAsUnversionedEvents() {
+        UserDto userToCreate = new UserDto(null, "New", null, null);
+
+        eventListener.handle(List.of(new ConsumerRecord<>("USER_CREATE", 0, 0, null, userToCreate),
+                new ConsumerRecord<>("USER_DELETE", 0, 0, null, testUserDto)));
+
+        ArgumentCaptor<List<UserEvent>> events = ArgumentCaptor.captor();
+        verify(userBatchRepository).insertAll(events.capture());
+        UserEvent created = events.getValue().getFirst();
+        assertNotNull(created.user().getId());
+        assertEquals("New", created.user().getFirstname());
+        assertNull(created.version());
+        verify(userBatchRepository).deleteAll(List.of(new UserEvent(DELETE, testUserDto, null)));
+    }
 
     @Test
-    void handleUpdate_ShouldUpdateOnlyFirstName_WhenFoundAndPartialDto() {
-        UserDto partialUpdateDto = new UserDto();
-        partialUpdateDto.setId(testId);
-        partialUpdateDto.setFirstname("UpdatedName");
-        partialUpdateDto.setLastname(null);
-        partialUpdateDto.setAge(null);
-
-        UserEntity existingEntity = new UserEntity();
-        existingEntity.setId(testId);
-        existingEntity.setFirstname("OldName");
-        existingEntity.setLastname("OldSurname");
-        existingEntity.setAge(25);
-
-        when(userRepository.findById(testId)).thenReturn(Optional.of(existingEntity));
-        when(userRepository.save(any(UserEntity.class))).thenReturn(existingEntity);
-
-        eventListener.handleUpdate(partialUpdateDto);
-
-        verify(userRepository, times(1)).findById(testId);
-        verify(userRepository, times(1)).save(existingEntity);
+    void handle_ShouldMergePartialUpdatesForSameIdWithNewestVersion() {
+        UserDto firstNameUpdate = new UserDto(testId, "UpdatedName", null, null);
+        UserDto ageUpdate = new UserDto(testId, null, null, 31);
+        UserEvent merged = new UserEvent(UPDATE, new UserDto(testId, "UpdatedName", null, 31), 8L);
+        UserChange change = new UserChange(testId, new UserDto(testId, "OldName", "OldSurname", 25),
+                new UserDto(testId, "UpdatedName", "OldSurname", 31));
+        when(userBatchRepository.updateAll(List.of(merged))).thenReturn(List.of(change));
+
+        eventListener.handle(List.of(record(UPDATE, 0, firstNameUpdate, 7L), record(UPDATE, 1, ageUpdate, 8L)));
+
+        verify(userBatchRepository, times(1)).updateAll(List.of(merged));
+        verify(userCacheInvalidator, times(1)).invalidate(List.of(change));
     }
 
     @Test
-    void handleUpdate_ShouldSkipProcessing_WhenIdIsNull() {
-        UserDto userToUpdate = new UserDto();
+    void handle_ShouldApplyPhasesInOrder_WhenBatchMixesEventTypes() {
+        when(userBatchRepository.deleteAll(anyList())).thenReturn(List.of(testUserDto));
 
-        eventListener.handleUpdate(userToUpdate);
+        eventListener.handle(List.of(record(CREATE, 0, testUserDto, 1L), record(UPDATE, 1, testUserDto, 2L),
+                record(DELETE, 2, testUserDto, 3L)));
 
-        verify(userRepository, never()).findById(any());
-        verify(userRepository, never()).save(any(UserEntity.class));
+        InOrder order = inOrder(userBatchRepository);
+        order.verify(userBatchRepository).insertAll(List.of(new UserEvent(CREATE, testUserDto, 1L)));
+        order.verify(userBatchRepository).updateAll(List.of(new UserEvent(UPDATE, testUserDto, 2L)));
+        order.verify(userBatchRepository).deleteAll(List.of(new UserEvent(DELETE, testUserDto, 3L)));
+        verify(userCacheInvalidator, times(1)).invalidate(List.of(UserChange.deleted(testId, testUserDto)));
     }
 
     @Test
-    void handleUpdate_ShouldSkipProcessing_WhenUserNotFound() {
-        when(userRepository.findById(testId)).thenReturn(Optional.empty());
+    void handle_ShouldDropUpdateFollowingDeleteOfSameUser() {
+        UserDto lateUpdate = new UserDto(testId, "Revived", null, null);
+        when(userBatchRepository.deleteAll(anyList())).thenReturn(List.of(testUserDto));
+
+        eventListener.handle(List.of(record(DELETE, 0, testUserDto, 11L), record(UPDATE, 1, lateUpdate, 12L)));
+
+        verify(userBatchRepository, never()).updateAll(any());
+        verify(userBatchRepository).deleteAll(List.of(new UserEvent(DELETE, testUserDto, 11L)));
+        verify(userCacheInvalidator, times(1)).invalidate(List.of(UserChange.deleted(testId, testUserDto)));
+    }
 
-        eventListener.handleUpdate(testUserDto);
+    @Test
+    void handle_ShouldSkipEventsWithoutIdOrType() {
+        eventListener.handle(List.of(record(UPDATE, 0, new UserDto(), 1L), record(DELETE, 1, new UserDto(), 2L),
+                new ConsumerRecord<>(UserEvents.TOPIC, 0, 2, null, testUserDto)));
 
-        verify(userRepository, times(1)).findById(testId);
-        verify(userRepository, never()).save(any(UserEntity.class));
+        verifyNoInteractions(userBatchRepository, userCacheInvalidator);
     }
 
+    @Test
+    void handle_ShouldApplyOneByOneAndSendFailedToDlt_WhenBatchFails() {
+        UserDto other = new UserDto(otherId, "Other", null, null);
+        UserEvent failedEvent = new UserEvent(UPDATE, testUserDto, 1L);
+        UserEvent otherEvent = new UserEvent(UPDATE, other, 2L);
+        UserChange change = new UserChange(otherId, new UserDto(otherId, "Old", "User", 20),
+                new UserDto(otherId, "Other", "User", 20));
+        DataIntegrityViolationException failure = new DataIntegrityViolationException("value too long");
+        when(userBatchRepository.updateAll(List.of(failedEvent, otherEvent))).thenThrow(failure);
+        when(userBatchRepository.updateAll(List.of(failedEvent))).thenThrow(failure);
+        when(userBatchRepository.updateAll(List.of(otherEvent))).thenReturn(List.of(change));
+        ConsumerRecord<String, UserDto> failed = record(UPDATE, 0, testUserDto, 1L);
+
+        eventListener.handle(List.of(failed, record(UPDATE, 1, other, 2L)));
+
+        verify(deadLetterRecoverer, times(1)).accept(failed, failure);
+        verify(deadLetterRecoverer, times(1)).accept(any(), any());
+        verify(userCacheInvalidator, times(1)).invalidate(List.of(change));
+    }
 
     @Test
-    void handleDelete_ShouldDeleteUser_WhenFound() {
-        eventListener.handleDelete(testUserDto);
+    void handle_ShouldRethrowWithoutDlt_WhenDatabaseIsUnavailable() {
+        CannotGetJdbcConnectionException outage = new CannotGetJdbcConnectionException("Connection is not available");
+        when(userBatchRepository.updateAll(anyList())).thenThrow(outage);
 
-        verify(userRepository, times(1)).deleteById(testId);
+        assertSame(outage, assertThrows(CannotGetJdbcConnectionException.class, () -> eventListener.handle(List.of(
+                record(UPDATE, 0, testUserDto, 1L), record(UPDATE, 1, new UserDto(otherId, "Other", null, null), 2L)))));
+
+        //пачка не разбирается по одной: каждая попытка ждала бы таймаута пула
+        verify(userBatchRepository, times(1)).updateAll(anyList());
+        verifyNoInteractions(deadLetterRecoverer, userCacheInvalidator);
     }
 
     @Test
-    void handleDelete_ShouldSkipProcessing_WhenIdIsNull() {
-        UserDto userToDelete = new UserDto();
-        userToDelete.setId(null);
+    void handle_ShouldSendUnreadableRecordToDlt_AndApplyTheRest() {
+        ConsumerRecord<String, UserDto> unreadable = record(UPDATE, 0, null, 1L);
+        SerializationUtils.deserializationException(unreadable.headers(), new byte[]{1, 2, 100},
+                new SerializationException("Truncated user event"), false);
+        when(userBatchRepository.updateAll(anyList())).thenReturn(List.of(new UserChange(testId, testUserDto, testUserDto)));
+
+        eventListener.handle(List.of(unreadable, record(UPDATE, 1, testUserDto, 2L)));
 
-        eventListener.handleDelete(userToDelete);
+        verify(deadLetterRecoverer).accept(same(unreadable), any(DeserializationException.class));
+        verify(userBatchRepository).updateAll(argThat(events -> events.size() == 1));
+    }
 
-        verify(userRepository, never()).deleteById(any());
+    private static ConsumerRecord<String, UserDto> record(UserEventType type, long offset, UserDto value, Long version) {
+        ConsumerRecord<String, UserDto> record = new ConsumerRecord<>(UserEvents.TOPIC, 0, offset, null, value);
+        record.headers().add(UserEvents.TYPE_HEADER, type.name().getBytes(StandardCharsets.UTF_8));
+        record.headers().add(UserEvents.VERSION_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(version).array());
+        return record;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package ru.bellintegrator.users_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import ru.bellintegrator.users_service.entity.TimeOrderedUserIdGenerator;
+import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.mapper.UserMapper;
+import ru.bellintegrator.users_service.model.BulkImportResult;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.repository.UserRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserBulkServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private KafkaTemplate<String, UserDto> kafkaTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private UserBulkService userBulkService;
+
+    @BeforeEach
+    void setUp() {
+        userBulkService = new UserBulkService(userRepository, userMapper, kafkaTemplate, objectMapper,
+                new TimeOrderedUserIdGenerator(), 2, 100);
+    }
+
+    @Test
+    void importUsers_ShouldSendCreateEventsInBatches_AndSkipLinesWithId() throws Exception {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+        String ndjson = """
+                {"firstname":"A","age":20}
+                {"firstname":"B"}
+                {"id":"22222222-2222-2222-2222-222222222222","firstname":"C"}
+                {"firstname":"D"}
+                """;
+
+        BulkImportResult result = userBulkService.importUsers(input(ndjson));
+
+        assertEquals(new BulkImportResult(3, 1), result);
+        ArgumentCaptor<ProducerRecord<String, UserDto>> sent = ArgumentCaptor.captor();
+        verify(kafkaTemplate, times(3)).send(sent.capture());
+        assertTrue(sent.getAllValues().stream().allMatch(record -> UserEvents.TOPIC.equals(record.topic())
+                && record.value().getId().toString().equals(record.key())
+                && "CREATE".equals(new String(record.headers().lastHeader(UserEvents.TYPE_HEADER).value(), StandardCharsets.UTF_8))));
+        verify(kafkaTemplate, times(2)).flush();
+    }
+
+    @Test
+    void importUsers_ShouldRejectMalformedLine_AfterFlushingAcceptedUsers() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userBulkService.importUsers(input("{\"firstname\":\"A\"}\n{\"firstname\":\n")));
+
+        assertTrue(e.getMessage().contains("1 already accepted"));
+        verify(kafkaTemplate, times(1)).flush();
+    }
+
+    @Test
+    void exportUsers_ShouldWriteOneJsonObjectPerLine() throws Exception {
+        UUID firstId = UUID.randomUUID();
+        UUID secondId = UUID.randomUUID();
+        UserEntity first = new UserEntity(firstId, "A", "Ivanov", 20);
+        UserEntity second = new UserEntity(secondId, "B", null, 30);
+        when(userRepository.streamAll(any(), eq(100))).thenReturn(Stream.of(first, second));
+        when(userMapper.toDomainUser(first)).thenReturn(new UserDto(firstId, "A", "Ivanov", 20));
+        when(userMapper.toDomainUser(second)).thenReturn(new UserDto(secondId, "B", null, 30));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        userBulkService.exportUsers(new UserFilter(), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(new UserDto(firstId, "A", "Ivanov", 20), objectMapper.readValue(lines[0], UserDto.class));
+        assertEquals(new UserDto(secondId, "B", null, 30), objectMapper.readValue(lines[1], UserDto.class));
+        assertTrue(out.toString(StandardCharsets.UTF_8).endsWith("\n"));
+    }
+
+    private static ByteArrayInputStream input(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,75 @@
+package ru.bellintegrator.users_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.bellintegrator.users_service.config.UserKafkaProperties;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserEventLanesTest {
+
+    private UserEventLanes lanes;
+
+    @AfterEach
+    void tearDown() {
+        lanes.destroy();
+    }
+
+    @Test
+    void run_ShouldKeepEachIdInOneLaneAndProcessEveryItem() {
+        lanes = lanes(4);
+        List<UUID> ids = IntStream.range(0, 1000).mapToObj(i -> UUID.randomUUID()).toList();
+        Map<UUID, String> laneById = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger processed = new AtomicInteger();
+
+        lanes.run(ids, Function.identity(), lane -> {
+            threads.add(Thread.currentThread().getName());
+            lane.forEach(id -> assertNull(laneById.put(id, Thread.currentThread().getName())));
+            processed.addAndGet(lane.size());
+        });
+
+        assertEquals(1000, processed.get());
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("user-event-lane-")));
+        assertTrue(threads.size() > 1);
+    }
+
+    @Test
+    void run_ShouldFinishAllLanesBeforeRethrowingFailure() {
+        lanes = lanes(4);
+        List<UUID> ids = IntStream.range(0, 100).mapToObj(i -> new UUID(0, i)).toList();
+        AtomicInteger processed = new AtomicInteger();
+        UUID failing = ids.getFirst();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> lanes.run(ids, Function.identity(), lane -> {
+            if (lane.contains(failing)) throw new IllegalStateException("lane failed");
+            processed.addAndGet(lane.size());
+        }));
+
+        assertEquals("lane failed", e.getMessage());
+        assertTrue(processed.get() > 0);
+    }
+
+    @Test
+    void run_ShouldUseCallerThread_WhenSingleLane() {
+        lanes = lanes(1);
+        List<String> threads = new ArrayList<>();
+
+        lanes.run(List.of(UUID.randomUUID(), UUID.randomUUID()), Function.identity(),
+                lane -> threads.add(Thread.currentThread().getName()));
+
+        assertEquals(List.of(Thread.currentThread().getName()), threads);
+    }
+
+    private static UserEventLanes lanes(int count) {
+        UserKafkaProperties properties = new UserKafkaProperties();
+        properties.getConsumer().setLanes(count);
+        return new UserEventLanes(properties);
+    }
+}
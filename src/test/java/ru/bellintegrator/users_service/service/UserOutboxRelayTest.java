@@ -0,0 +1,91 @@
+package ru.bellintegrator.users_service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.repository.UserOutboxRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserOutboxRelayTest {
+
+    @Mock
+    private UserOutboxRepository userOutboxRepository;
+    @Mock
+    private KafkaTemplate<String, UserDto> kafkaTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserDto created = new UserDto(UUID.randomUUID(), "New", null, 20);
+    private final UserDto deleted = new UserDto(UUID.randomUUID(), null, null, null);
+    private UserOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = new UserOutboxRelay(userOutboxRepository, kafkaTemplate, transactionManager, meterRegistry,
+                2, Duration.ofSeconds(1), true);
+    }
+
+    @Test
+    void relay_ShouldSendFullBatchesAndDeleteAcknowledgedRows() {
+        when(userOutboxRepository.tryLockRelay()).thenReturn(true);
+        when(userOutboxRepository.findOldest(2)).thenReturn(List.of(
+                new UserOutboxRepository.Entry(1, UserEventType.CREATE, created),
+                new UserOutboxRepository.Entry(2, UserEventType.DELETE, deleted)), List.of());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+        when(userOutboxRepository.lag()).thenReturn(new UserOutboxRepository.Lag(0, Duration.ZERO));
+
+        relay.relay();
+
+        verify(kafkaTemplate).send(UserEvents.toRecord(new UserEvent(UserEventType.CREATE, created, 1L)));
+        verify(kafkaTemplate).send(UserEvents.toRecord(new UserEvent(UserEventType.DELETE, deleted, 2L)));
+        verify(kafkaTemplate, times(1)).flush();
+        verify(userOutboxRepository).deleteAll(List.of(1L, 2L));
+        verify(userOutboxRepository, times(2)).findOldest(2);
+        assertEquals(2, meterRegistry.get("users.outbox.relayed").counter().count());
+        assertEquals(0, meterRegistry.get("users.outbox.pending").gauge().value());
+    }
+
+    @Test
+    void relay_ShouldKeepRowsAndCountFailure_WhenKafkaDoesNotAcknowledge() {
+        when(userOutboxRepository.tryLockRelay()).thenReturn(true);
+        when(userOutboxRepository.findOldest(2)).thenReturn(List.of(new UserOutboxRepository.Entry(1, UserEventType.CREATE, created)));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        relay.relay();
+
+        verify(userOutboxRepository, never()).deleteAll(any());
+        verify(transactionManager).rollback(any());
+        assertEquals(1, meterRegistry.get("users.outbox.failures").counter().count());
+    }
+
+    @Test
+    void relayBatch_ShouldSkip_WhenAnotherInstanceHoldsTheLock() {
+        when(userOutboxRepository.tryLockRelay()).thenReturn(false);
+
+        assertEquals(0, relay.relayBatch());
+
+        verify(userOutboxRepository, never()).findOldest(anyInt());
+        verifyNoInteractions(kafkaTemplate);
+    }
+}
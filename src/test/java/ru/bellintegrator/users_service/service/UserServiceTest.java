@@ -5,20 +5,31 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.kafka.core.KafkaTemplate;
+import ru.bellintegrator.users_service.cache.UserExistenceFilter;
+import ru.bellintegrator.users_service.cache.UserFilterIndex;
+import ru.bellintegrator.users_service.cache.UserPageCache;
+import ru.bellintegrator.users_service.entity.TimeOrderedUserIdGenerator;
 import ru.bellintegrator.users_service.entity.UserEntity;
+import ru.bellintegrator.users_service.entity.UserIdGenerator;
 import ru.bellintegrator.users_service.mapper.UserMapper;
+import ru.bellintegrator.users_service.model.CountMode;
+import ru.bellintegrator.users_service.model.UserCursor;
 import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEventType;
 import ru.bellintegrator.users_service.model.UserFilter;
+import ru.bellintegrator.users_service.model.UserScrollPage;
+import ru.bellintegrator.users_service.repository.UserOutboxRepository;
 import ru.bellintegrator.users_service.repository.UserRepository;
 
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,12 +40,21 @@ class UserServiceTest {
     @InjectMocks
     private UserService userService;
 
+    @Spy
+    private UserIdGenerator userIdGenerator = new TimeOrderedUserIdGenerator();
+
     @Mock
     private UserRepository userRepository;
     @Mock
     private UserMapper userMapper;
     @Mock
-    private KafkaTemplate<String, UserDto> kafkaTemplate;
+    private UserOutboxRepository userOutboxRepository;
+    @Mock
+    private UserPageCache userPageCache;
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
+    @Mock
+    private UserFilterIndex userFilterIndex;
 
     private final UUID testId = UUID.fromString("22222222-2222-2222-2222-222222222222");
     private UserDto testUserDto;
@@ -55,25 +75,25 @@ class UserServiceTest {
 
     @Test
     void getUserById_ShouldReturnUserDto_WhenFound() {
-        when(userRepository.findById(testId)).thenReturn(Optional.of(testUserEntity));
-        when(userMapper.toDomainUser(testUserEntity)).thenReturn(testUserDto);
+        when(userRepository.findDtoById(testId)).thenReturn(Optional.of(testUserDto));
 
         UserDto result = userService.getUserById(testId);
 
         assertNotNull(result);
         assertEquals(testId, result.getId());
 
-        verify(userRepository, times(1)).findById(testId);
-        verify(userMapper, times(1)).toDomainUser(testUserEntity);
+        verify(userRepository, times(1)).findDtoById(testId);
+        verify(userRepository, never()).findById(any());
+        verifyNoInteractions(userMapper);
     }
 
     @Test
     void getUserById_ShouldThrowException_WhenNotFound() {
-        when(userRepository.findById(testId)).thenReturn(Optional.empty());
+        when(userRepository.findDtoById(testId)).thenReturn(Optional.empty());
 
         assertThrows(NoSuchElementException.class, () -> userService.getUserById(testId));
 
-        verify(userRepository, times(1)).findById(testId);
+        verify(userRepository, times(1)).findDtoById(testId);
         verify(userMapper, never()).toDomainUser(any());
     }
 
@@ -82,11 +102,10 @@ class UserServiceTest {
         UserFilter filter = new UserFilter("Test", null, null, null);
         Pageable pageable = PageRequest.of(0, 10);
 
-        List<UserEntity> entityList = List.of(testUserEntity);
-        Page<UserEntity> entityPage = new PageImpl<>(entityList, pageable, 1);
+        Page<UserDto> dtoPage = new PageImpl<>(List.of(testUserDto), pageable, 1);
 
-        when(userRepository.findAll(any(Specification.class), eq(pageable))).thenReturn(entityPage);
-        when(userMapper.toDomainUser(testUserEntity)).thenReturn(testUserDto);
+        when(userPageCache.get(eq(filter), eq(pageable), any())).thenAnswer(inv -> inv.<Supplier<?>>getArgument(2).get());
+        when(userRepository.findDtoPage(any(Specification.class), eq(pageable))).thenReturn(dtoPage);
 
         Page<UserDto> resultPage = userService.getAll(filter, pageable);
 
@@ -94,21 +113,76 @@ class UserServiceTest {
         assertEquals(1, resultPage.getTotalElements());
         assertEquals(testId, resultPage.getContent().get(0).getId());
 
-        verify(userRepository, times(1)).findAll(any(Specification.class), eq(pageable));
-        verify(userMapper, times(1)).toDomainUser(testUserEntity);
+        verify(userRepository, times(1)).findDtoPage(any(Specification.class), eq(pageable));
+        verifyNoInteractions(userMapper);
+        verify(userPageCache, times(1)).get(eq(filter), eq(pageable), any());
+    }
+
+    @Test
+    void getAll_ShouldAnswerFromIndex_WithoutCacheAndDatabase() {
+        UserFilter filter = new UserFilter("Test", null, null, null);
+        Pageable pageable = PageRequest.of(0, 10);
+        Page<UserDto> indexed = new PageImpl<>(List.of(testUserDto), pageable, 1);
+        when(userFilterIndex.find(filter, pageable)).thenReturn(Optional.of(indexed));
+
+        assertSame(indexed, userService.getAll(filter, pageable));
+        verifyNoInteractions(userPageCache, userRepository);
     }
 
     @Test
-    void createUser_ShouldSendKafkaMessage_WhenValid() {
+    void scroll_ShouldReturnNextCursor_WhenMoreRowsExist() {
+        UserEntity secondEntity = new UserEntity(UUID.randomUUID(), "Second", "User", 40);
+        UserDto secondDto = new UserDto(secondEntity.getId(), "Second", "User", 40);
+
+        when(userRepository.findAllOrdered(any(Specification.class), eq(Sort.Order.asc("age")), eq(2)))
+                .thenReturn(List.of(testUserEntity, secondEntity));
+        when(userMapper.toDomainUser(testUserEntity)).thenReturn(testUserDto);
+        when(userMapper.toDomainUser(secondEntity)).thenReturn(secondDto);
+
+        UserScrollPage result = userService.scroll(new UserFilter(), null, Sort.by("age"), 1, CountMode.NONE);
+
+        assertEquals(List.of(testUserDto), result.getContent());
+        assertTrue(result.isHasNext());
+        assertNull(result.getTotalElements());
+        UserCursor cursor = UserCursor.decode(result.getNextCursor());
+        assertEquals(testId, cursor.id());
+        assertEquals("age", cursor.property());
+    }
+
+    @Test
+    void scroll_ShouldUseExactCount_WhenRequested() {
+        when(userRepository.findAllOrdered(any(Specification.class), eq(Sort.Order.asc("id")), eq(21)))
+                .thenReturn(List.of());
+        when(userRepository.count(any(Specification.class))).thenReturn(7L);
+
+        UserScrollPage result = userService.scroll(new UserFilter(), null, Sort.unsorted(), 20, CountMode.EXACT);
+
+        assertFalse(result.isHasNext());
+        assertNull(result.getNextCursor());
+        assertEquals(7L, result.getTotalElements());
+    }
+
+    @Test
+    void scroll_ShouldRejectUnsupportedSortAndSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> userService.scroll(new UserFilter(), null, Sort.by("password"), 20, CountMode.NONE));
+        assertThrows(IllegalArgumentException.class,
+                () -> userService.scroll(new UserFilter(), null, Sort.unsorted(), 0, CountMode.NONE));
+        assertThrows(IllegalArgumentException.class,
+                () -> userService.scroll(new UserFilter(), "not-a-cursor", Sort.unsorted(), 20, CountMode.NONE));
+    }
+
+    @Test
+    void createUser_ShouldQueueOutboxCommand_WhenValid() {
         UserDto userToCreate = new UserDto();
         userToCreate.setFirstname("New");
         userToCreate.setId(null);
 
-        when(kafkaTemplate.send(anyString(), any(UserDto.class))).thenReturn(null);
 
         assertDoesNotThrow(() -> userService.createUser(userToCreate));
 
-        verify(kafkaTemplate, times(1)).send(eq("USER_CREATE"), eq(userToCreate));
+        assertNotNull(userToCreate.getId());
+        verify(userOutboxRepository, times(1)).append(eq(UserEventType.CREATE), eq(userToCreate));
     }
 
     @Test
@@ -118,18 +192,17 @@ class UserServiceTest {
 
         assertThrows(IllegalArgumentException.class, () -> userService.createUser(userToCreate));
 
-        verify(kafkaTemplate, never()).send(anyString(), any(UserDto.class));
+        verify(userOutboxRepository, never()).append(any(), any(UserDto.class));
     }
 
     @Test
-    void updateUser_ShouldSendKafkaMessage_WhenFound() {
+    void updateUser_ShouldQueueOutboxCommand_WhenFound() {
         when(userRepository.existsById(testId)).thenReturn(true);
-        when(kafkaTemplate.send(anyString(), any(UserDto.class))).thenReturn(null);
 
         assertDoesNotThrow(() -> userService.updateUser(testUserDto));
 
         verify(userRepository, times(1)).existsById(testId);
-        verify(kafkaTemplate, times(1)).send(eq("USER_UPDATE"), eq(testUserDto));
+        verify(userOutboxRepository, times(1)).append(eq(UserEventType.UPDATE), eq(testUserDto));
     }
 
     @Test
@@ -140,7 +213,7 @@ class UserServiceTest {
         assertThrows(IllegalArgumentException.class, () -> userService.updateUser(userToUpdate));
 
         verify(userRepository, never()).existsById(any());
-        verify(kafkaTemplate, never()).send(anyString(), any(UserDto.class));
+        verify(userOutboxRepository, never()).append(any(), any(UserDto.class));
     }
 
     @Test
@@ -150,28 +223,48 @@ class UserServiceTest {
         assertThrows(NoSuchElementException.class, () -> userService.updateUser(testUserDto));
 
         verify(userRepository, times(1)).existsById(testId);
-        verify(kafkaTemplate, never()).send(anyString(), any(UserDto.class));
+        verify(userOutboxRepository, never()).append(any(), any(UserDto.class));
     }
 
     @Test
-    void deleteUserById_ShouldSendKafkaMessage_WhenFound() {
-        when(userRepository.findById(testId)).thenReturn(Optional.of(testUserEntity));
-        when(userMapper.toDomainUser(testUserEntity)).thenReturn(testUserDto);
-        when(kafkaTemplate.send(anyString(), any(UserDto.class))).thenReturn(null);
+    void updateUser_ShouldSkipDatabase_WhenExistenceFilterMightContainId() {
+        when(userExistenceFilter.mightContain(testId)).thenReturn(Optional.of(true));
+
+        assertDoesNotThrow(() -> userService.updateUser(testUserDto));
+
+        verify(userRepository, never()).existsById(any());
+        verify(userOutboxRepository, times(1)).append(eq(UserEventType.UPDATE), eq(testUserDto));
+    }
+
+    @Test
+    void deleteUserById_ShouldSendIdOnlyEvent_WithoutReadingUser() {
+        when(userExistenceFilter.mightContain(testId)).thenReturn(Optional.of(true));
 
         assertDoesNotThrow(() -> userService.deleteUserById(testId));
 
-        verify(userRepository, times(1)).findById(testId);
-        verify(kafkaTemplate, times(1)).send(eq("USER_DELETE"), eq(testUserDto));
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).existsById(any());
+        verify(userOutboxRepository, times(1)).append(eq(UserEventType.DELETE), eq(new UserDto(testId, null, null, null)));
     }
 
     @Test
-    void deleteUserById_ShouldThrowException_WhenNotFound() {
-        when(userRepository.findById(testId)).thenReturn(Optional.empty());
+    void deleteUserById_ShouldThrowException_WhenFilterSaysAbsent() {
+        when(userExistenceFilter.mightContain(testId)).thenReturn(Optional.of(false));
 
         assertThrows(NoSuchElementException.class, () -> userService.deleteUserById(testId));
 
-        verify(userRepository, times(1)).findById(testId);
-        verify(kafkaTemplate, never()).send(anyString(), any(UserDto.class));
+        verify(userRepository, never()).existsById(any());
+        verify(userOutboxRepository, never()).append(any(), any(UserDto.class));
+    }
+
+    @Test
+    void deleteUserById_ShouldThrowException_WhenFilterUnavailableAndNotFound() {
+        when(userExistenceFilter.mightContain(testId)).thenReturn(Optional.empty());
+        when(userRepository.existsById(testId)).thenReturn(false);
+
+        assertThrows(NoSuchElementException.class, () -> userService.deleteUserById(testId));
+
+        verify(userRepository, times(1)).existsById(testId);
+        verify(userOutboxRepository, never()).append(any(), any(UserDto.class));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package ru.bellintegrator.users_service.service;
+
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.bellintegrator.users_service.cache.UserCacheInvalidator;
+import ru.bellintegrator.users_service.cache.UserExistenceFilter;
+import ru.bellintegrator.users_service.config.UserSnapshotProperties;
+import ru.bellintegrator.users_service.kafka.UserEvents;
+import ru.bellintegrator.users_service.mapper.UserMapper;
+import ru.bellintegrator.users_service.model.UserDto;
+import ru.bellintegrator.users_service.model.UserEvent;
+import ru.bellintegrator.users_service.model.UserEventType;
+import ru.bellintegrator.users_service.repository.UserCopyRepository;
+import ru.bellintegrator.users_service.repository.UserOutboxRepository;
+import ru.bellintegrator.users_service.repository.UserRepository;
+import ru.bellintegrator.users_service.repository.UserSnapshotRepository;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserSnapshotServiceTest {
+
+    @Mock
+    private UserSnapshotRepository userSnapshotRepository;
+    @Mock
+    private UserCopyRepository userCopyRepository;
+    @Mock
+    private UserOutboxRepository userOutboxRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private EventListener eventListener;
+    @Mock
+    private ConsumerFactory<String, UserDto> consumerFactory;
+    @Mock
+    private UserCacheInvalidator userCacheInvalidator;
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final MockConsumer<String, UserDto> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private final TopicPartition first = new TopicPartition(UserEvents.TOPIC, 0);
+    private final TopicPartition second = new TopicPartition(UserEvents.TOPIC, 1);
+    private UserSnapshotService service;
+
+    @BeforeEach
+    void setUp() {
+        //брокера нет: чтение смещений группы быстро завершается ошибкой
+        service = new UserSnapshotService(userSnapshotRepository, userCopyRepository, userOutboxRepository, userRepository,
+                userMapper, eventListener, consumerFactory, userCacheInvalidator, userExistenceFilter, transactionManager,
+                new KafkaAdmin(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092",
+                        AdminClientConfig.DEFAULT_API_TIMEOUT_MS_CONFIG, 200, AdminClientConfig.REQUEST_TIMEOUT_MS_CONFIG, 200)),
+                new UserSnapshotProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.destroy();
+    }
+
+    @Test
+    void replay_ShouldApplyOnlyEventsBetweenSnapshotAndEndOffsets() {
+        when(consumerFactory.createConsumer(eq(UserSnapshotService.REBUILD_GROUP_ID), isNull(), isNull(), any(Properties.class)))
+                .thenReturn(consumer);
+        consumer.updatePartitions(UserEvents.TOPIC, List.of(partition(0), partition(1)));
+        consumer.updateBeginningOffsets(Map.of(first, 0L, second, 0L));
+        consumer.updateEndOffsets(Map.of(first, 3L, second, 2L));
+        consumer.schedulePollTask(() -> {
+            for (long offset = 0; offset < 4; offset++) consumer.addRecord(record(first, offset));
+            for (long offset = 0; offset < 2; offset++) consumer.addRecord(record(second, offset));
+        });
+        Map<TopicPartition, Long> until = new HashMap<>();
+
+        //во второй партиции снимок событий не видел - она читается с начала
+        long replayed = service.replay(Map.of(first, 2L), until);
+
+        assertEquals(3, replayed);
+        assertEquals(Map.of(first, 3L, second, 2L), until);
+        ArgumentCaptor<List<ConsumerRecord<String, UserDto>>> batch = ArgumentCaptor.captor();
+        verify(eventListener).handle(batch.capture());
+        assertEquals(Set.of("0@2", "1@0", "1@1"), new HashSet<>(batch.getValue().stream()
+                .map(record -> record.partition() + "@" + record.offset()).toList()));
+    }
+
+    @Test
+    void rebuild_ShouldAdvanceOutboxVersionsAfterLoadingAndReplay(@TempDir Path directory) {
+        UserSnapshotProperties properties = new UserSnapshotProperties();
+        properties.setDirectory(directory);
+        UserSnapshotRepository snapshots = new UserSnapshotRepository(properties);
+        snapshots.write(Map.of(first, 0L), List.of(new UserEvent(UserEventType.CREATE,
+                new UserDto(UUID.randomUUID(), "Snap", null, 20), 500L)).iterator());
+        when(userSnapshotRepository.openLatest()).thenAnswer(invocation -> snapshots.openLatest());
+        when(userCopyRepository.replaceAll(any())).thenReturn(1L);
+        when(consumerFactory.createConsumer(eq(UserSnapshotService.REBUILD_GROUP_ID), isNull(), isNull(), any(Properties.class)))
+                .thenReturn(consumer);
+        consumer.updatePartitions(UserEvents.TOPIC, List.of(partition(0)));
+        consumer.updateEndOffsets(Map.of(first, 0L));
+        when(userOutboxRepository.advanceVersionsPastUsers()).thenReturn(501L);
+
+        service.rebuild();
+
+        InOrder inOrder = inOrder(userCopyRepository, userOutboxRepository, userCacheInvalidator);
+        inOrder.verify(userCopyRepository).replaceAll(any());
+        inOrder.verify(userOutboxRepository).advanceVersionsPastUsers();
+        inOrder.verify(userCacheInvalidator).invalidateAll();
+    }
+
+    private static PartitionInfo partition(int partition) {
+        return new PartitionInfo(UserEvents.TOPIC, partition, null, null, null);
+    }
+
+    private static ConsumerRecord<String, UserDto> record(TopicPartition partition, long offset) {
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, null,
+                new UserDto(UUID.randomUUID(), "User" + offset, null, 20));
+    }
+}